@@ -1,9 +1,10 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -13,15 +14,72 @@ import java.util.concurrent.ConcurrentHashMap;
  * The BufferPool is also responsible for locking. When a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
- * 
- * @Threadsafe, all fields are final.
+ *
+ * Which page goes when the pool is full is decided by a pluggable
+ * {@link EvictionPolicy}, CLOCK-sweep by default.
+ *
+ * The page table is split into hash partitions by PageId. Each partition
+ * owns a share of the frames, its own eviction policy state and its own
+ * latch, so page misses on different partitions don't wait for each other.
+ * Writing dirty pages out (flushes, commits, stealing a frame) appends to
+ * the log, and therefore still synchronizes on the BufferPool as the
+ * locking protocol of LogFile requires.
+ *
+ * Pages can be kept off-heap, each partition then owns a {@link FrameArena}
+ * with a frame per page it caches. Heap file pages are read into a frame
+ * instead of being decoded into tuples, and are copied back to the heap when
+ * they leave the pool, since callers may still hold on to them. Only the
+ * before-images of modified pages stay on the heap.
+ *
+ * Sequential scans may be sped up by readahead, see {@link #setReadahead}.
+ * Scans of tables too big to be worth caching read through a small ring of
+ * frames of their own, see {@link #getScanRing}.
+ *
+ * The pool can save the list of pages it caches and reload them at the next
+ * start, see {@link #startWarmRestart}.
+ *
+ * Besides its default cache, the pool may have named caches with frames of
+ * their own, and the Catalog binds tables to them, see
+ * {@link #createCache}. The pages of a table only compete for the frames of
+ * its cache.
+ *
+ * The pool may be resized while in use, see {@link #resize}, and a
+ * {@link SizeAdvisor} can tell which size is worth it.
+ *
+ * Clean heap pages may be evicted to a second tier which keeps them
+ * compressed in memory, see {@link #setSecondTier}.
+ *
+ * Callers that keep using a page across calls pin it (see {@link #pin}), a
+ * pinned page is never evicted. A miss on a partition whose frames are
+ * held by pins waits a while for one of them to be unpinned.
+ *
+ * By default the pool runs NO STEAL/FORCE: dirty pages are never evicted and
+ * are written out when their transaction commits. See
+ * {@link #setStealNoForce} for the STEAL/NO FORCE mode.
+ *
+ * Latches are taken in this order, never the other way around: the
+ * BufferPool monitor (writing pages out, which appends to the log, and
+ * changing the settings that start or stop threads, or the set of
+ * partitions), then the latch of a partition (admission, eviction and its
+ * capacity), then the latch of a page (while it is written out or
+ * modified). Resizes serialize on a lock of their own, taken before the
+ * partition latches. A transaction acquires its page locks from the
+ * LockManager before any latch, and never waits for one while holding a
+ * latch. Lookups in the page table take no latch.
+ *
+ * The partitions, page writer, readahead, second tier, warm restart thread
+ * and size advisor are volatile fields that are replaced while the pool is
+ * in use, and read without a lock; the I/O threads are created under the
+ * BufferPool monitor.
+ *
+ * @Threadsafe
  */
 public class BufferPool {
-  /** Bytes per page, including header. */
+  /** Default bytes per page, including header. */
   public static final int PAGE_SIZE = 4096;
 
-  // TODO(foreverbell): Why this variable is unused?
-  private static int pageSize = PAGE_SIZE;
+  /* Page size of the tables that don't set their own. */
+  private static volatile int pageSize = PAGE_SIZE;
 
   /**
    * Default number of pages passed to the constructor. This is used by
@@ -29,30 +87,759 @@ public class BufferPool {
    * constructor instead. */
   public static final int DEFAULT_PAGES = 50;
 
-  private final int numPages;
-  private final ConcurrentHashMap<PageId, Page> pool;
+  /** How long the background page writer sleeps between two rounds. */
+  static final long WRITER_INTERVAL_MS = 100;
+
+  /** Maximum number of pages the background page writer cleans per round. */
+  static final int WRITER_BATCH_PAGES = 32;
+
+  /** Smallest number of frames worth a partition of its own by default. */
+  static final int MIN_PARTITION_PAGES = 32;
+
+  /** Sequential accesses to a table after which readahead starts. */
+  static final int READAHEAD_TRIGGER = 2;
+
+  /** Readahead window when a sequential scan is first detected. */
+  static final int READAHEAD_MIN_PAGES = 4;
+
+  /** Upper bound of the readahead window, also limited to 1/4 of the pool. */
+  static final int READAHEAD_MAX_PAGES = 64;
+
+  /** Number of threads reading pages ahead. */
+  static final int READAHEAD_THREADS = 2;
+
+  /**
+   * How long a miss waits for a page of its partition to be unpinned, when
+   * the pinned pages are all that keeps it from a frame, before failing.
+   */
+  static final long PIN_WAIT_MS = 1000;
+
+  /** Largest number of frames of a scan ring. */
+  static final int SCAN_RING_PAGES = 16;
+
+  /** Pages a partition gives up at once while the pool shrinks. */
+  static final int SHRINK_BATCH_PAGES = 16;
+
+  /** Number of threads reading the pages getPages misses. */
+  static final int IO_THREADS = 4;
+
+  /** Largest number of adjacent pages written out at once. */
+  static final int WRITE_RUN_PAGES = 64;
+
+  /** How often the list of cached pages is saved for warm restarts. */
+  static final long HOT_PAGES_INTERVAL_MS = 60 * 1000;
+
+  /**
+   * Fraction of the frames of each partition whose pages are saved for warm
+   * restarts, the hottest ones as ranked by its eviction policy.
+   */
+  static final double HOT_PAGES_FRACTION = 0.5;
+
+  /**
+   * Default size of the smallest table scanned through a ring, as a
+   * fraction of the pool: only tables that can't be cached whole.
+   */
+  public static final double DEFAULT_SCAN_RING_FRACTION = 1.0;
+
+  /** Name of the cache of the tables bound to no other. */
+  public static final String DEFAULT_CACHE = "default";
+
+  private final Cache defaultCache;
+  private final ConcurrentHashMap<String, Cache> caches;
+
+  /* The cache of each table accessed so far. */
+  private final ConcurrentHashMap<Integer, Cache> bindings;
+
+  /* The partitions of all caches. */
+  private volatile Partition[] partitions;
+
   private final LockManager lockman;
 
+  private volatile boolean stealNoForce;
+  private volatile PageWriter writer;
+  private volatile Readahead readahead;
+  private volatile double scanRingFraction;
+  private volatile CompressedPageCache secondTier;
+  private volatile HotPageKeeper hotPages;
+  private volatile SizeAdvisor advisor;
+
+  /* Reads the misses of getPages, started on first use. */
+  private ThreadPoolExecutor io;
+
+  /* Serializes resizes. */
+  private final Object resizing;
+
+  /*
+   * Pages whose changes were committed under NO FORCE but not written out
+   * yet. Their after-images are in the log.
+   */
+  private final Set<PageId> committedDirty;
+
+  /* Lock owner used to keep transactions off a page while it's written out. */
+  private final TransactionId cleaner;
+
+  /*
+   * Pages each running transaction may have dirtied, i.e. the pages it
+   * locked exclusively. Commit and abort look at these only.
+   */
+  private final ConcurrentHashMap<TransactionId, Set<PageId>> writeSets;
+
   /**
-   * Creates a BufferPool that caches up to numPages pages.
+   * A hash partition of the page table. Its monitor is the partition latch,
+   * guarding admission and eviction; lookups go without it.
+   */
+  private final class Partition {
+    final ConcurrentHashMap<PageId, Page> pages;
+    final EvictionPolicy policy;
+
+    /* Changed under the partition latch only. */
+    volatile int capacity;
+
+    /* Frames of the pages of this partition, null if kept on heap. */
+    final FrameArena arena;
+
+    final AtomicLong hits;
+    final AtomicLong misses;
+
+    /*
+     * Pages read by scans through their ScanRing. They are not tracked by
+     * the eviction policy, their ring recycles them, or evictPage once the
+     * policy has no victim.
+     */
+    final Set<PageId> ringPages;
+
+    /* Pin counts of the pinned pages, per pinning transaction. */
+    final HashMap<PageId, HashMap<TransactionId, Integer>> pins;
+
+    /* Accepts the pages that may be thrown out without writing them. */
+    final EvictionPolicy.Filter evictable = new EvictionPolicy.Filter() {
+      public boolean canEvict(PageId pid) {
+        Page p = pages.get(pid);
+
+        if (pins.containsKey(pid)) {
+          return false;
+        }
+        // NO STEAL policy implies we should never evict dirty pages.
+        return p == null || (p.isDirty() == null && !committedDirty.contains(pid));
+      }
+    };
+
+    /* Accepts the pages that may be stolen. */
+    final EvictionPolicy.Filter unpinned = new EvictionPolicy.Filter() {
+      public boolean canEvict(PageId pid) {
+        return !pins.containsKey(pid);
+      }
+    };
+
+    Partition(int capacity, EvictionPolicy policy, boolean offHeap) {
+      this.pages = new ConcurrentHashMap<PageId, Page>();
+      this.policy = policy;
+      this.capacity = capacity;
+      this.arena = offHeap ? new FrameArena(capacity, getPageSize()) : null;
+      this.hits = new AtomicLong();
+      this.misses = new AtomicLong();
+      this.pins = new HashMap<PageId, HashMap<TransactionId, Integer>>();
+      this.ringPages = Collections.newSetFromMap(
+          new ConcurrentHashMap<PageId, Boolean>());
+    }
+  }
+
+  /**
+   * A cache of the pool, with frames of its own split between its hash
+   * partitions.
+   */
+  private final class Cache {
+    final String name;
+    final Partition[] partitions;
+
+    /* Changed under the resizing lock only. */
+    volatile int numPages;
+
+    Cache(String name, int numPages, int numPartitions,
+        EvictionPolicy.Factory factory, boolean offHeap) {
+      numPartitions = Math.max(1, Math.min(numPartitions, numPages));
+
+      this.name = name;
+      this.numPages = numPages;
+      this.partitions = new Partition[numPartitions];
+      for (int i = 0; i < numPartitions; ++i) {
+        partitions[i] = new Partition(partitionPages(numPages, numPartitions, i),
+            factory.create(), offHeap);
+      }
+    }
+  }
+
+  /**
+   * Creates a BufferPool that caches up to numPages pages, replaced by the
+   * CLOCK-sweep algorithm.
    *
    * @param numPages Maximum number of pages in this buffer pool.
    */
   public BufferPool(int numPages) {
-    this.numPages = numPages;
-    this.pool = new ConcurrentHashMap<PageId, Page>();
+    this(numPages, defaultPartitions(numPages), ClockEvictionPolicy.factory());
+  }
+
+  /**
+   * Creates a BufferPool that caches up to numPages pages in a single
+   * partition.
+   *
+   * @param numPages Maximum number of pages in this buffer pool.
+   *
+   * @param policy The policy choosing pages to evict, it must not be shared
+   * with another BufferPool.
+   */
+  public BufferPool(int numPages, final EvictionPolicy policy) {
+    this(numPages, 1, new EvictionPolicy.Factory() {
+      public EvictionPolicy create() {
+        return policy;
+      }
+    });
+  }
+
+  /**
+   * Creates a BufferPool that caches up to numPages pages.
+   *
+   * @param numPages Maximum number of pages in this buffer pool.
+   *
+   * @param numPartitions Number of hash partitions of the page table, at
+   * most numPages. The frames are split evenly between them.
+   *
+   * @param factory Creates the eviction policy of each partition.
+   */
+  public BufferPool(int numPages, int numPartitions,
+      EvictionPolicy.Factory factory) {
+    this(numPages, numPartitions, factory, false);
+  }
+
+  /**
+   * Creates a BufferPool that caches up to numPages pages.
+   *
+   * @param numPages Maximum number of pages in this buffer pool.
+   *
+   * @param numPartitions Number of hash partitions of the page table, at
+   * most numPages. The frames are split evenly between them.
+   *
+   * @param factory Creates the eviction policy of each partition.
+   *
+   * @param offHeap Whether pages are kept in direct memory allocated up
+   * front, rather than on the Java heap.
+   */
+  public BufferPool(int numPages, int numPartitions,
+      EvictionPolicy.Factory factory, boolean offHeap) {
+    this.defaultCache = new Cache(DEFAULT_CACHE, numPages, numPartitions,
+        factory, offHeap);
+    this.caches = new ConcurrentHashMap<String, Cache>();
+    this.caches.put(DEFAULT_CACHE, defaultCache);
+    this.bindings = new ConcurrentHashMap<Integer, Cache>();
+    this.partitions = defaultCache.partitions;
     this.lockman = new LockManager();
+    this.stealNoForce = false;
+    this.writer = null;
+    this.committedDirty = Collections.newSetFromMap(
+        new ConcurrentHashMap<PageId, Boolean>());
+    this.cleaner = new TransactionId();
+    this.writeSets = new ConcurrentHashMap<TransactionId, Set<PageId>>();
+    this.scanRingFraction = DEFAULT_SCAN_RING_FRACTION;
+    this.secondTier = null;
+    this.hotPages = null;
+    this.advisor = null;
+    this.resizing = new Object();
+  }
+
+  /* Returns the share of numPages pages of the i-th of n partitions. */
+  private static int partitionPages(int numPages, int n, int i) {
+    return numPages / n + (i < numPages % n ? 1 : 0);
+  }
+
+  /**
+   * Returns the default number of partitions of a pool with numPages pages:
+   * a couple per processor, as long as each gets a fair share of frames.
+   */
+  static int defaultPartitions(int numPages) {
+    int cpus = Runtime.getRuntime().availableProcessors();
+
+    return Math.max(1, Math.min(2 * cpus, numPages / MIN_PARTITION_PAGES));
+  }
+
+  /** Returns the number of hash partitions of the default cache. */
+  public int getNumPartitions() {
+    return defaultCache.partitions.length;
+  }
+
+  /** Returns the maximum number of pages of the default cache. */
+  public int getNumPages() {
+    return defaultCache.numPages;
+  }
+
+  /**
+   * Returns the maximum number of pages of the specified cache.
+   *
+   * @throws NoSuchElementException If the cache doesn't exist.
+   */
+  public int getNumPages(String cache) throws NoSuchElementException {
+    return getCache(cache).numPages;
+  }
+
+  /** Returns the number of pages cached. */
+  public int getNumCachedPages() {
+    int n = 0;
+
+    for (Partition part : partitions) {
+      n += part.pages.size();
+    }
+    return n;
+  }
+
+  /**
+   * Returns the memory budget of the default cache, in bytes, counted in
+   * pages of the default page size.
+   */
+  public long getSizeBytes() {
+    return (long) getNumPages() * getPageSize();
+  }
+
+  /**
+   * Resizes the default cache to the number of pages that fit in the
+   * specified budget.
+   *
+   * @see #resize.
+   */
+  public void setSizeBytes(long bytes) {
+    resize((int) Math.min(Integer.MAX_VALUE, bytes / getPageSize()));
+  }
+
+  /**
+   * Resizes the default cache while in use, keeping the cached pages that
+   * still fit.
+   *
+   * Growing takes effect at once. Shrinking evicts pages
+   * SHRINK_BATCH_PAGES at a time per partition, letting other threads in
+   * between, and returns once done. Dirty and pinned pages are not evicted,
+   * a partition holding more of them than its new share stays over it until
+   * they are written or unpinned.
+   *
+   * Frames of an off-heap pool are allocated as it grows, but stay reserved
+   * when it shrinks.
+   *
+   * @param numPages New maximum number of pages, at least one per partition.
+   */
+  public void resize(int numPages) {
+    resize(defaultCache, numPages);
+  }
+
+  /**
+   * Resizes the specified cache while in use.
+   *
+   * @see #resize(int).
+   *
+   * @throws NoSuchElementException If the cache doesn't exist.
+   */
+  public void resizeCache(String cache, int numPages)
+      throws NoSuchElementException {
+    resize(getCache(cache), numPages);
+  }
+
+  private void resize(Cache cache, int numPages) {
+    Partition[] partitions = cache.partitions;
+
+    if (numPages < partitions.length) {
+      throw new IllegalArgumentException("a cache of " + partitions.length +
+          " partitions needs at least as many pages");
+    }
+
+    synchronized (resizing) {
+      cache.numPages = numPages;
+
+      boolean shrinking = true;
+      while (shrinking) {
+        shrinking = false;
+        for (int i = 0; i < partitions.length; ++i) {
+          Partition part = partitions[i];
+          int target = partitionPages(numPages, partitions.length, i);
+
+          synchronized (part) {
+            if (target >= part.capacity) {
+              if (part.arena != null && target > part.arena.getNumFrames()) {
+                part.arena.grow(target - part.arena.getNumFrames());
+              }
+              part.capacity = target;
+              continue;
+            }
+            part.capacity = Math.max(target, part.capacity - SHRINK_BATCH_PAGES);
+            while (part.pages.size() > part.capacity && evictPage(part)) {
+            }
+            shrinking |= part.capacity > target;
+          }
+        }
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Sets the advisor recording the page accesses of this pool, to suggest a
+   * size.
+   *
+   * @param advisor The advisor, null to stop recording.
+   */
+  public void setSizeAdvisor(SizeAdvisor advisor) {
+    this.advisor = advisor;
+  }
+
+  /** Returns the size advisor of this pool, or null. */
+  public SizeAdvisor getSizeAdvisor() {
+    return advisor;
+  }
+
+  /**
+   * Creates a named cache with numPages frames of its own, on top of those
+   * of the default cache, whose pages are replaced by the CLOCK-sweep
+   * algorithm. If the cache exists, it is resized.
+   *
+   * The tables the Catalog binds to the cache use it from then on, unless
+   * the pool already read pages of theirs into another cache: the cache of
+   * a table is looked up the first time one of its pages is read.
+   *
+   * @see Catalog#setCacheName.
+   */
+  public void createCache(String name, int numPages) {
+    createCache(name, numPages, ClockEvictionPolicy.factory());
+  }
+
+  /**
+   * Creates a named cache.
+   *
+   * @param factory Creates the eviction policy of each partition of the
+   * cache.
+   *
+   * @see #createCache(String, int).
+   */
+  public void createCache(String name, int numPages,
+      EvictionPolicy.Factory factory) {
+    synchronized (this) {
+      if (!caches.containsKey(name)) {
+        Cache cache = new Cache(name, numPages, defaultPartitions(numPages),
+            factory, isOffHeap());
+        List<Partition> all = new ArrayList<Partition>(Arrays.asList(partitions));
+
+        all.addAll(Arrays.asList(cache.partitions));
+        partitions = all.toArray(new Partition[0]);
+        caches.put(name, cache);
+        return;
+      }
+    }
+    resizeCache(name, numPages);
+  }
+
+  /** Returns the names of the caches of this pool, the default one included. */
+  public Set<String> getCacheNames() {
+    return Collections.unmodifiableSet(caches.keySet());
+  }
+
+  /** Returns the name of the cache the pages of the specified table go to. */
+  public String getCacheName(int tableId) {
+    return cacheOf(tableId).name;
+  }
+
+  private Cache getCache(String name) throws NoSuchElementException {
+    Cache cache = caches.get(name);
+
+    if (cache == null) {
+      throw new NoSuchElementException("no cache " + name);
+    }
+    return cache;
+  }
+
+  /* Returns the cache of a table, as bound by the catalog when first asked. */
+  private Cache cacheOf(int tableId) {
+    Cache cache = bindings.get(tableId);
+
+    if (cache == null) {
+      String name = Database.getCatalog().getCacheName(tableId);
+      Cache named = name == null ? null : caches.get(name);
+
+      bindings.putIfAbsent(tableId, named == null ? defaultCache : named);
+      cache = bindings.get(tableId);
+    }
+    return cache;
+  }
+
+  /** Returns true if pages are kept off-heap. */
+  public boolean isOffHeap() {
+    return defaultCache.partitions[0].arena != null;
+  }
+
+  private Partition partitionOf(PageId pid) {
+    Partition[] partitions = cacheOf(pid.getTableId()).partitions;
+    int h = pid.hashCode();
+
+    h ^= h >>> 16;
+    return partitions[(h & 0x7fffffff) % partitions.length];
+  }
+
+  /** Returns the cached copy of the specified page, or null. */
+  private Page lookup(PageId pid) {
+    return partitionOf(pid).pages.get(pid);
   }
   
+  /**
+   * Returns the default page size of the database, in bytes, used by the
+   * tables that don't set a page size of their own.
+   */
   public static int getPageSize() {
-    return PAGE_SIZE;
+    return pageSize;
+  }
+
+  /**
+   * Returns the page size of the specified table: its own if it is a
+   * HeapFile, the default page size otherwise.
+   */
+  public static int getPageSize(int tableId) {
+    DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+
+    return file instanceof HeapFile ? ((HeapFile) file).getPageSize() : pageSize;
   }
 
-  // THIS FUNCTION SHOULD ONLY BE USED FOR TESTING!!
+  /**
+   * Sets the default page size of the database. Tables opened before keep
+   * their page size, and the off-heap arenas of pools created before keep
+   * the size of their frames.
+   */
   public static void setPageSize(int pageSize) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("page size must be positive");
+    }
     BufferPool.pageSize = pageSize;
   }
 
+  /** Sets the default page size back to PAGE_SIZE. */
+  public static void resetPageSize() {
+    BufferPool.pageSize = PAGE_SIZE;
+  }
+
+  /**
+   * Switches between NO STEAL/FORCE (the default) and STEAL/NO FORCE buffer
+   * management.
+   *
+   * Under STEAL/NO FORCE the log is the source of durability: a committing
+   * transaction only appends the after-images of its pages to the log, which
+   * the commit record forces to disk, and leaves the pages to a background
+   * writer. Dirty pages of running transactions may be written out, after
+   * their log records, to make room for new pages, so a transaction can
+   * touch more pages than the pool holds. Aborts must then go through
+   * {@link LogFile#logAbort}, which rolls back the pages written out.
+   */
+  public void setStealNoForce(boolean enabled) throws IOException {
+    PageWriter stopped = null;
+
+    synchronized (this) {
+      if (enabled == stealNoForce) {
+        return;
+      }
+      stealNoForce = enabled;
+      if (enabled) {
+        writer = new PageWriter();
+        writer.start();
+      } else {
+        stopped = writer;
+        writer = null;
+      }
+    }
+
+    // Outside the monitor, the writer may be waiting for it.
+    if (stopped != null) {
+      stopped.halt();
+      // FORCE never leaves committed pages behind, catch up with NO FORCE.
+      cleanCommittedPages(Integer.MAX_VALUE);
+    }
+  }
+
+  /** Returns true if the pool runs STEAL/NO FORCE. */
+  public boolean isStealNoForce() {
+    return stealNoForce;
+  }
+
+  /**
+   * Turns readahead on or off. With readahead on, once a table is read
+   * page after page, the pages that follow are loaded into the pool in the
+   * background. The number of pages read ahead doubles while the scan goes
+   * on, up to READAHEAD_MAX_PAGES or a quarter of the pool. Pools of less
+   * than 4 pages never read ahead.
+   */
+  public synchronized void setReadahead(boolean enabled) {
+    if (enabled == (readahead != null)) {
+      return;
+    }
+    if (enabled) {
+      int numPages = getNumPages();
+
+      if (numPages / 4 >= 1) {
+        readahead = new Readahead(Math.min(READAHEAD_MAX_PAGES, numPages / 4));
+      }
+    } else {
+      readahead.shutdown();
+      readahead = null;
+    }
+  }
+
+  /** Returns true if readahead is on. */
+  public boolean isReadahead() {
+    return readahead != null;
+  }
+
+  /** Returns the number of pages loaded by readahead. */
+  public long getPrefetchCount() {
+    Readahead r = readahead;
+
+    return r == null ? 0 : r.prefetched.get();
+  }
+
+  /**
+   * Sets the size of the smallest table that sequential scans read through
+   * a ScanRing, as a fraction of the pool. Double.POSITIVE_INFINITY turns
+   * scan rings off.
+   */
+  public void setScanRingFraction(double fraction) {
+    scanRingFraction = fraction;
+  }
+
+  /**
+   * Returns a new ring for a sequential scan over a table of the specified
+   * number of pages, or null if the table is small enough to be cached by
+   * the default cache.
+   */
+  public ScanRing getScanRing(int tablePages) {
+    return getScanRing(defaultCache, tablePages);
+  }
+
+  /**
+   * Returns a new ring for a sequential scan over the specified table, or
+   * null if the table is small enough to be cached by its cache.
+   */
+  public ScanRing getScanRing(int tableId, int tablePages) {
+    return getScanRing(cacheOf(tableId), tablePages);
+  }
+
+  private ScanRing getScanRing(Cache cache, int tablePages) {
+    if (tablePages <= scanRingFraction * cache.numPages) {
+      return null;
+    }
+
+    // The pages of a ring may all hash to one partition, so it is sized by
+    // the smallest one rather than by the cache.
+    int capacity = Integer.MAX_VALUE;
+    for (Partition part : cache.partitions) {
+      capacity = Math.min(capacity, part.capacity);
+    }
+    return new ScanRing(Math.max(2, Math.min(SCAN_RING_PAGES, capacity / 8)));
+  }
+
+  /**
+   * Gives back the frames of a ring when its scan is done. Its pages leave
+   * the pool, unless they were used by others or are dirty.
+   */
+  public void releaseScanRing(ScanRing ring) {
+    for (PageId pid : ring.clear()) {
+      recycle(pid);
+    }
+  }
+
+  /**
+   * Sets the second-tier cache of this pool: clean heap pages the pool
+   * evicts are kept there compressed, and a miss looks there before going
+   * to disk. Pages read through a ScanRing don't go to the second tier.
+   *
+   * @param tier The cache, null to turn the second tier off.
+   */
+  public void setSecondTier(CompressedPageCache tier) {
+    secondTier = tier;
+  }
+
+  /** Returns the second-tier cache, or null if there is none. */
+  public CompressedPageCache getSecondTier() {
+    return secondTier;
+  }
+
+  /**
+   * Turns on warm restarts. The pages listed in the specified file, the
+   * hottest pages cached when it was last saved, are loaded back in the
+   * background, in the order they lie on disk, until the pool is full. From
+   * then on the list is saved to the file every HOT_PAGES_INTERVAL_MS and on
+   * {@link #saveHotPages}: in each partition, the pages its eviction policy
+   * would keep longest, up to HOT_PAGES_FRACTION of its frames.
+   *
+   * Call once the catalog is loaded, pages of unknown tables are skipped.
+   *
+   * @param file The list of pages, which may not exist yet.
+   */
+  public synchronized void startWarmRestart(File file) {
+    if (hotPages != null) {
+      return;
+    }
+    hotPages = new HotPageKeeper(file);
+    hotPages.start();
+  }
+
+  /**
+   * Saves the list of the hottest cached pages for the next warm restart,
+   * if warm restarts are on and the pages of the last run are loaded.
+   */
+  public void saveHotPages() throws IOException {
+    HotPageKeeper k = hotPages;
+
+    if (k != null) {
+      k.save();
+    }
+  }
+
+  /** Returns the number of pages loaded back by the warm restart. */
+  public long getWarmedCount() {
+    HotPageKeeper k = hotPages;
+
+    return k == null ? 0 : k.warmed.get();
+  }
+
+  /**
+   * Returns true once the pages listed at the last run are loaded back, or
+   * no more can be.
+   */
+  public boolean isWarm() {
+    HotPageKeeper k = hotPages;
+
+    return k != null && k.warm;
+  }
+
+  /**
+   * Stops the background threads of this buffer pool. Cached pages are not
+   * written out.
+   */
+  public void shutdown() {
+    PageWriter stopped;
+    HotPageKeeper keeper;
+
+    synchronized (this) {
+      stopped = writer;
+      writer = null;
+      if (readahead != null) {
+        readahead.shutdown();
+        readahead = null;
+      }
+      keeper = hotPages;
+      hotPages = null;
+      if (io != null) {
+        // Not shutdownNow(), interrupts would close the channels read from.
+        io.shutdown();
+        io = null;
+      }
+    }
+    if (stopped != null) {
+      stopped.halt();
+    }
+    if (keeper != null) {
+      keeper.halt();
+    }
+  }
+
   /**
    * Retrieve the specified page with the associated permissions.
    *
@@ -73,6 +860,20 @@ public class BufferPool {
    */
   public Page getPage(TransactionId tid, PageId pid, Permissions perm)
       throws TransactionAbortedException, DbException {
+    return getPage(tid, pid, perm, null);
+  }
+
+  /**
+   * Retrieve the specified page with the associated permissions, on behalf
+   * of a sequential scan. A page read only is read into the ring of the
+   * scan, if any, rather than among the shared pages.
+   *
+   * @param ring The ring of the scan, or null.
+   *
+   * @see #getPage(TransactionId, PageId, Permissions).
+   */
+  public Page getPage(TransactionId tid, PageId pid, Permissions perm,
+      ScanRing ring) throws TransactionAbortedException, DbException {
     Page page;
 
     // Try to acquire the lock for this transaction.
@@ -80,21 +881,469 @@ public class BufferPool {
       lockman.acquireShared(tid, pid);
     } else {
       lockman.acquireExclusive(tid, pid);
+      addToWriteSet(tid, pid);
+      ring = null;
+    }
+
+    SizeAdvisor a = advisor;
+    if (a != null) {
+      a.recordAccess(pid);
+    }
+
+    // Readahead would read the pages of a ring scan among the shared ones.
+    Readahead r = ring == null ? readahead : null;
+    if (r != null) {
+      r.access(pid);
     }
 
-    page = pool.get(pid);
+    Partition part = partitionOf(pid);
+    page = part.pages.get(pid);
 
+    if (page == null && r != null && r.await(pid)) {
+      // Just loaded by readahead.
+      page = part.pages.get(pid);
+    }
     if (page != null) {
-       return page;
+      part.hits.incrementAndGet();
+      if (ring == null) {
+        // Another ring's page becomes shared.
+        part.ringPages.remove(pid);
+        part.policy.recordAccess(pid);
+      }
+      return page;
+    }
+
+    if (ring != null) {
+      part.misses.incrementAndGet();
+      page = readPage(part, pid);
+
+      // Make room by recycling a frame of the ring, if it is full.
+      PageId oldest = ring.takeOldest();
+      if (oldest != null) {
+        recycle(oldest);
+      }
+      while (true) {
+        Page admitted = admit(part, page, false, ring);
+
+        if (admitted == null) {
+          // No clean frame, shrink the ring before stealing any.
+          oldest = ring.poll();
+          if (oldest != null) {
+            recycle(oldest);
+            continue;
+          }
+          admitted = admit(part, page, true, ring);
+        }
+        ring.add(pid);
+        return admitted;
+      }
+    }
+
+    part.misses.incrementAndGet();
+    PageWriter w = writer;
+    if (w != null && committedDirty.size() > getNumPages() / 4) {
+      // Clean pages ahead of eviction.
+      w.wakeUp();
+    }
+    // Read outside of the partition latch, so that misses on the same
+    // partition overlap their I/O.
+    return admit(part, readPage(part, pid), true, null);
+  }
+
+  /**
+   * Retrieves the specified pages with the associated permissions, like
+   * getPage does, but the pages missing from the pool are read all at once
+   * by the I/O threads of the pool, so that many reads are in flight rather
+   * than one. Locks are acquired in the order of pids, before any read, and
+   * the pages read are added to the pool as they complete.
+   *
+   * @param pids The IDs of the requested pages, which may repeat.
+   *
+   * @return The pages, in the order of pids.
+   *
+   * @see #getPage(TransactionId, PageId, Permissions).
+   */
+  public List<Page> getPages(TransactionId tid, List<PageId> pids,
+      Permissions perm) throws TransactionAbortedException, DbException {
+    HashMap<PageId, Page> found = new HashMap<PageId, Page>();
+    LinkedHashSet<PageId> misses = new LinkedHashSet<PageId>();
+
+    for (PageId pid : pids) {
+      if (perm == Permissions.READ_ONLY) {
+        lockman.acquireShared(tid, pid);
+      } else {
+        lockman.acquireExclusive(tid, pid);
+        addToWriteSet(tid, pid);
+      }
+
+      SizeAdvisor a = advisor;
+      if (a != null) {
+        a.recordAccess(pid);
+      }
+      if (found.containsKey(pid) || misses.contains(pid)) {
+        continue;
+      }
+
+      Partition part = partitionOf(pid);
+      Page page = part.pages.get(pid);
+      if (page != null) {
+        part.hits.incrementAndGet();
+        part.ringPages.remove(pid);
+        part.policy.recordAccess(pid);
+        found.put(pid, page);
+      } else {
+        part.misses.incrementAndGet();
+        misses.add(pid);
+      }
+    }
+
+    if (!misses.isEmpty()) {
+      PageWriter w = writer;
+      if (w != null && committedDirty.size() > getNumPages() / 4) {
+        w.wakeUp();
+      }
+    }
+    if (misses.size() == 1) {
+      PageId pid = misses.iterator().next();
+      Partition part = partitionOf(pid);
+
+      found.put(pid, admit(part, readPage(part, pid), true, null));
+    } else if (!misses.isEmpty()) {
+      // The locks held keep writers off the pages while they are read.
+      CompletionService<Page> reads = new ExecutorCompletionService<Page>(getIo());
+      for (final PageId pid : misses) {
+        reads.submit(new Callable<Page>() {
+          public Page call() {
+            return readPage(partitionOf(pid), pid);
+          }
+        });
+      }
+      for (int i = 0; i < misses.size(); ++i) {
+        Page page = takeRead(reads);
+        PageId pid = page.getId();
+
+        found.put(pid, admit(partitionOf(pid), page, true, null));
+      }
+    }
+
+    ArrayList<Page> ret = new ArrayList<Page>(pids.size());
+    for (PageId pid : pids) {
+      ret.add(found.get(pid));
+    }
+    return ret;
+  }
+
+  /* Returns the next page read for getPages, rethrowing its failure. */
+  private static Page takeRead(CompletionService<Page> reads)
+      throws DbException {
+    try {
+      return reads.take().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DbException("interrupted while reading pages");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new DbException("failed to read page: " + cause);
+    }
+  }
+
+  /* Returns the executor of the reads of getPages, starting it if needed. */
+  private synchronized ExecutorService getIo() {
+    if (io == null) {
+      io = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "BufferPool I/O");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+      // Pools replaced by tests are not always shut down.
+      io.allowCoreThreadTimeOut(true);
+    }
+    return io;
+  }
+
+  /**
+   * Reads a page from the second tier or its file, to be admitted to the
+   * specified partition.
+   */
+  private Page readPage(Partition part, PageId pid) {
+    DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+    CompressedPageCache tier = secondTier;
+
+    if (tier != null && file instanceof HeapFile) {
+      byte[] data = tier.get(pid, getPageSize(pid.getTableId()));
+
+      if (data != null) {
+        HeapPageId hpid = new HeapPageId(pid.getTableId(), pid.pageNumber());
+        return ((HeapFile) file).createPage(hpid, ByteBuffer.wrap(data));
+      }
+    }
+    // Heap pages are not decoded, and only copied into an arena frame once
+    // admitted.
+    return file.readPage(pid);
+  }
+
+  /**
+   * Adds a page read from disk to its partition, evicting pages of the
+   * partition as needed.
+   *
+   * @param steal Whether a dirty page may be written out to make room,
+   * under STEAL.
+   *
+   * @param ring The scan ring the page is read into, or null.
+   *
+   * @return The cached page, which is not the page passed in if another
+   * reader loaded the same page meanwhile, or null if there is no room and
+   * steal is false.
+   */
+  private Page admit(Partition part, Page page, boolean steal, ScanRing ring)
+      throws DbException {
+    PageId pid = page.getId();
+    long deadline = 0;
+
+    while (true) {
+      synchronized (part) {
+        Page cached = part.pages.get(pid);
+
+        if (cached != null) {
+          if (ring == null) {
+            part.policy.recordAccess(pid);
+          }
+          return cached;
+        }
+        while (part.pages.size() >= part.capacity && evictPage(part)) {
+        }
+        if (part.pages.size() < part.capacity) {
+          place(part, page);
+          part.pages.put(pid, page);
+          if (ring == null) {
+            part.policy.recordAccess(pid);
+          } else {
+            part.ringPages.add(pid);
+          }
+          return page;
+        }
+        if (steal && !part.pins.isEmpty() &&
+            (!stealNoForce || part.pins.size() >= part.pages.size())) {
+          // Pinned pages are only held for a while, e.g. by a scan reading
+          // one, so wait for an unpin rather than fail.
+          long now = System.currentTimeMillis();
+          if (deadline == 0) {
+            deadline = now + PIN_WAIT_MS;
+          }
+          if (now < deadline) {
+            try {
+              part.wait(deadline - now);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new DbException("interrupted waiting for a frame");
+            }
+            continue;
+          }
+        }
+      }
+      if (!steal) {
+        return null;
+      }
+      // Every frame of the partition holds a dirty or pinned page.
+      stealFrame(part);
+    }
+  }
+
+  /** Returns the number of getPage calls served from the buffer pool. */
+  public long getHitCount() {
+    long n = 0;
+
+    for (Partition part : partitions) {
+      n += part.hits.get();
+    }
+    return n;
+  }
+
+  /** Returns the number of getPage calls that had to read from disk. */
+  public long getMissCount() {
+    long n = 0;
+
+    for (Partition part : partitions) {
+      n += part.misses.get();
+    }
+    return n;
+  }
+
+  /**
+   * Returns the number of getPage calls served from the specified cache.
+   *
+   * @throws NoSuchElementException If the cache doesn't exist.
+   */
+  public long getHitCount(String cache) throws NoSuchElementException {
+    long n = 0;
+
+    for (Partition part : getCache(cache).partitions) {
+      n += part.hits.get();
+    }
+    return n;
+  }
+
+  /**
+   * Returns the number of getPage calls that missed the specified cache.
+   *
+   * @throws NoSuchElementException If the cache doesn't exist.
+   */
+  public long getMissCount(String cache) throws NoSuchElementException {
+    long n = 0;
+
+    for (Partition part : getCache(cache).partitions) {
+      n += part.misses.get();
+    }
+    return n;
+  }
+
+  /**
+   * Retrieves the specified page like {@link #getPage}, and pins it in the
+   * buffer pool: it is not evicted until unpinned as many times as it was
+   * pinned, or until the transaction completes. The returned page may be
+   * used across calls without looking it up again.
+   *
+   * @param tid The ID of the transaction requesting the page.
+   *
+   * @param pid The ID of the requested page.
+   *
+   * @param perm The requested permissions on the page.
+   */
+  public Page pin(TransactionId tid, PageId pid, Permissions perm)
+      throws TransactionAbortedException, DbException {
+    return pin(tid, pid, perm, null);
+  }
+
+  /**
+   * Retrieves and pins the specified page on behalf of a sequential scan.
+   *
+   * @param ring The ring of the scan, or null.
+   *
+   * @see #pin(TransactionId, PageId, Permissions).
+   * @see #getPage(TransactionId, PageId, Permissions, ScanRing).
+   */
+  public Page pin(TransactionId tid, PageId pid, Permissions perm,
+      ScanRing ring) throws TransactionAbortedException, DbException {
+    Partition part = partitionOf(pid);
+
+    while (true) {
+      Page page = getPage(tid, pid, perm, ring);
+
+      synchronized (part) {
+        // It may have been evicted since, then load it again.
+        if (part.pages.get(pid) == page) {
+          HashMap<TransactionId, Integer> counts = part.pins.get(pid);
+
+          if (counts == null) {
+            counts = new HashMap<TransactionId, Integer>();
+            part.pins.put(pid, counts);
+          }
+          Integer n = counts.get(tid);
+          counts.put(tid, n == null ? 1 : n + 1);
+          return page;
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops one pin of the specified transaction on the specified page. Does
+   * nothing if the transaction holds no pin on it.
+   */
+  public void unpin(TransactionId tid, PageId pid) {
+    Partition part = partitionOf(pid);
+
+    synchronized (part) {
+      HashMap<TransactionId, Integer> counts = part.pins.get(pid);
+      Integer n = counts == null ? null : counts.get(tid);
+
+      if (n == null) {
+        return;
+      }
+      if (n > 1) {
+        counts.put(tid, n - 1);
+      } else {
+        counts.remove(tid);
+        if (counts.isEmpty()) {
+          part.pins.remove(pid);
+          // Wake up misses waiting for a frame, see admit.
+          part.notifyAll();
+        }
+      }
+    }
+  }
+
+  /** Returns the number of pins on the specified page. */
+  public int getPinCount(PageId pid) {
+    Partition part = partitionOf(pid);
+    int n = 0;
+
+    synchronized (part) {
+      HashMap<TransactionId, Integer> counts = part.pins.get(pid);
+
+      if (counts != null) {
+        for (int c : counts.values()) {
+          n += c;
+        }
+      }
     }
+    return n;
+  }
+
+  /** Drops all pins held by the specified transaction. */
+  private void unpinAll(TransactionId tid) {
+    for (Partition part : partitions) {
+      synchronized (part) {
+        Iterator<HashMap<TransactionId, Integer>> iter = part.pins.values().iterator();
 
-    page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-    while (pool.size() >= numPages) {
-      evictPage();
+        while (iter.hasNext()) {
+          HashMap<TransactionId, Integer> counts = iter.next();
+
+          counts.remove(tid);
+          if (counts.isEmpty()) {
+            iter.remove();
+            part.notifyAll();
+          }
+        }
+      }
     }
-    pool.put(pid, page);
+  }
+
+  /**
+   * Takes a page out of its ring. It leaves the pool if nobody else used it
+   * meanwhile, otherwise it joins the shared pages.
+   */
+  private void recycle(PageId pid) {
+    Partition part = partitionOf(pid);
+
+    synchronized (part) {
+      if (!part.ringPages.remove(pid)) {
+        // Shared by now, or discarded.
+        return;
+      }
 
-    return page;
+      Page page = part.pages.get(pid);
+      if (page == null) {
+        return;
+      }
+      if (page.isDirty() != null || committedDirty.contains(pid) ||
+          part.pins.containsKey(pid)) {
+        part.policy.recordAccess(pid);
+        return;
+      }
+      part.pages.remove(pid);
+      detach(part, page);
+    }
   }
 
   /**
@@ -139,30 +1388,72 @@ public class BufferPool {
    */
   public void transactionComplete(TransactionId tid, boolean commit)
       throws IOException {
-    Iterator<Entry<PageId, Page>> iter = pool.entrySet().iterator();
+    Set<PageId> writeSet = writeSets.remove(tid);
 
-    while (iter.hasNext()) {
-      Entry<PageId, Page> next = iter.next();
-      PageId pid = next.getKey();
-      Page p = next.getValue();
+    if (writeSet != null) {
+      ArrayList<Page> committed = new ArrayList<Page>();
 
-      if (tid.equals(p.isDirty())) {
+      for (PageId pid : writeSet) {
+        Partition part = partitionOf(pid);
+        Page p = part.pages.get(pid);
+
+        if (p == null || !tid.equals(p.isDirty())) {
+          continue;
+        }
         // Some tests require flushing dirty pages on transactionComplete.
         if (commit) {
-          flushPage(pid);
-          p.markDirty(false, null);
-          // Use current page contents as the before-image for the next
-          // transaction that modifies this page.
-          p.setBeforeImage();
+          committed.add(p);
         } else { // abort
-          pool.put(pid, p.getBeforeImage());
+          Page before = p.getBeforeImage();
+
+          synchronized (part) {
+            if (part.pages.replace(pid, p, before)) {
+              detach(part, p);
+              place(part, before);
+            }
+          }
+        }
+      }
+      commitPages(committed);
+      if (!commit) {
+        // The pages may have room again, which the free-space maps of
+        // their files don't know.
+        for (PageId pid : writeSet) {
+          HeapFile.invalidateFreeSpace(pid);
         }
       }
     }
 
+    unpinAll(tid);
     lockman.releaseAll(tid);
   }
 
+  /** Records a page the specified transaction may dirty. */
+  private void addToWriteSet(TransactionId tid, PageId pid) {
+    Set<PageId> writeSet = writeSets.get(tid);
+
+    if (writeSet == null) {
+      writeSets.putIfAbsent(tid, Collections.newSetFromMap(
+          new ConcurrentHashMap<PageId, Boolean>()));
+      writeSet = writeSets.get(tid);
+    }
+    writeSet.add(pid);
+  }
+
+  /**
+   * Returns the pages the specified transaction may have dirtied so far:
+   * the pages it got with READ_WRITE permissions, or updated through
+   * insertTuple and deleteTuple.
+   */
+  Set<PageId> getWriteSet(TransactionId tid) {
+    Set<PageId> writeSet = writeSets.get(tid);
+
+    if (writeSet == null) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(writeSet);
+  }
+
   /**
    * Add a tuple to the specified table on behalf of transaction tid.
    *
@@ -187,9 +1478,10 @@ public class BufferPool {
     ps = Database.getCatalog().getDatabaseFile(tableId).insertTuple(tid, t);
     for (Page p : ps) {
       p.markDirty(true, tid);
+      addToWriteSet(tid, p.getId());
       // Reinsert the dirty page into buffer pool, this is necessary if we
       // want to evict a clean page locked by a running transaction.
-      pool.put(p.getId(), p);
+      recache(p);
     }
   }
 
@@ -215,9 +1507,64 @@ public class BufferPool {
     ps = Database.getCatalog().getDatabaseFile(tableId).deleteTuple(tid, t);
     for (Page p : ps) {
       p.markDirty(true, tid);
+      addToWriteSet(tid, p.getId());
       // Reinsert the dirty page into buffer pool, this is necessary if we
       // want to evict a clean page locked by a running transaction.
-      pool.put(p.getId(), p);
+      recache(p);
+    }
+  }
+
+  /** Puts a page modified by a transaction back into its partition. */
+  private void recache(Page p) {
+    Partition part = partitionOf(p.getId());
+
+    synchronized (part) {
+      Page prev = part.pages.put(p.getId(), p);
+
+      if (prev == null) {
+        place(part, p);
+        part.policy.recordAccess(p.getId());
+      } else if (prev != p) {
+        detach(part, prev);
+        place(part, p);
+      }
+    }
+  }
+
+  /**
+   * Moves a page entering a partition into a frame of its arena, if any.
+   * The caller holds the partition latch.
+   */
+  private void place(Partition part, Page page) {
+    if (part.arena == null || !(page instanceof HeapPage)) {
+      return;
+    }
+
+    HeapPage hp = (HeapPage) page;
+    if (part.arena.contains(hp.getFrame()) ||
+        hp.getPageSize() != part.arena.getFrameSize()) {
+      // Pages of another size than the frames stay on the heap.
+      return;
+    }
+    ByteBuffer frame = part.arena.allocate();
+    if (frame != null) {
+      hp.moveTo(frame);
+    }
+  }
+
+  /**
+   * Gives the arena frame of a page leaving a partition back. The page is
+   * copied to the heap first, as it may still be read by whoever got it
+   * from the pool. The caller holds the partition latch.
+   */
+  private void detach(Partition part, Page page) {
+    if (part.arena == null || !(page instanceof HeapPage)) {
+      return;
+    }
+
+    HeapPage hp = (HeapPage) page;
+    if (part.arena.contains(hp.getFrame())) {
+      part.arena.release(hp.moveTo(ByteBuffer.allocate(hp.getPageSize())));
     }
   }
 
@@ -228,9 +1575,12 @@ public class BufferPool {
    * break simpledb if running in NO STEAL mode.
    */
   public synchronized void flushAllPages() throws IOException {
-    for (Page page : pool.values()) {
-      flushPage(page.getId());
+    ArrayList<Page> pages = new ArrayList<Page>();
+
+    for (Partition part : partitions) {
+      pages.addAll(part.pages.values());
     }
+    writePages(pages);
   }
 
   /**
@@ -239,8 +1589,24 @@ public class BufferPool {
    * Needed by the recovery manager to ensure that the buffer pool doesn't
    * keep a rolled back page in its cache.
    */
-  public synchronized void discardPage(PageId pid) {
-    pool.remove(pid);
+  public void discardPage(PageId pid) {
+    Partition part = partitionOf(pid);
+
+    synchronized (part) {
+      Page page = part.pages.remove(pid);
+
+      part.ringPages.remove(pid);
+      part.policy.remove(pid);
+      if (page != null) {
+        detach(part, page);
+      }
+
+      CompressedPageCache tier = secondTier;
+      if (tier != null) {
+        tier.invalidate(pid);
+      }
+    }
+    committedDirty.remove(pid);
   }
 
   /**
@@ -249,66 +1615,736 @@ public class BufferPool {
    * @param pid An ID indicating the page to flush.
    */
   private synchronized void flushPage(PageId pid) throws IOException {
-    Page page = pool.get(pid);
+    Page page = lookup(pid);
 
     if (page == null) {
       throw new IOException("page not in buffer pool.");
     }
 
-    // Append an update record to the log, with a before-image and after-image.
-    TransactionId dirtier = page.isDirty();
-    if (dirtier != null) {
-      Database.getLogFile().logWrite(dirtier, page.getBeforeImage(), page);
-      Database.getLogFile().force();
-    }
+    // Hold the page latch, so the logged after-image is what gets written
+    // even if the dirtier keeps modifying the page.
+    synchronized (page) {
+      // Append an update record to the log, with a before-image and
+      // after-image.
+      TransactionId dirtier = page.isDirty();
+      if (dirtier != null) {
+        Database.getLogFile().logWrite(dirtier, page.getBeforeImage(), page);
+        Database.getLogFile().force();
+      }
 
-    Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+      Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+    }
+    committedDirty.remove(pid);
 
     // Intended being dirty, waiting to be reapped by upstream calls.
     // page.markDirty(false, null);
   }
 
-  /** Write all pages of the specified transaction to disk. */
-  public synchronized void flushPages(TransactionId tid) throws IOException {
-    Iterator<Entry<PageId, Page>> iter = pool.entrySet().iterator();
+  /* Orders pages by table, then page number. */
+  private static final Comparator<Page> PAGE_ORDER = new Comparator<Page>() {
+    public int compare(Page a, Page b) {
+      PageId x = a.getId(), y = b.getId();
+
+      if (x.getTableId() != y.getTableId()) {
+        return x.getTableId() < y.getTableId() ? -1 : 1;
+      }
+      return x.pageNumber() - y.pageNumber();
+    }
+  };
+
+  /**
+   * Flushes the specified pages to disk, like flushPage, in (table, page
+   * number) order. The update records of the dirty pages are logged and
+   * forced once, then runs of adjacent pages of a HeapFile are written with
+   * a single gathering write each.
+   */
+  private synchronized void writePages(List<Page> pages) throws IOException {
+    if (pages.isEmpty()) {
+      return;
+    }
+
+    Collections.sort(pages, PAGE_ORDER);
+
+    // Hold each page latch while logging it, so the logged after-image is
+    // what gets written even if the dirtier keeps modifying the page.
+    ArrayList<byte[]> images = new ArrayList<byte[]>(pages.size());
+    boolean logged = false;
+    for (Page page : pages) {
+      synchronized (page) {
+        TransactionId dirtier = page.isDirty();
+        if (dirtier != null) {
+          Database.getLogFile().logWrite(dirtier, page.getBeforeImage(), page);
+          logged = true;
+        }
+        images.add(page.getPageData());
+      }
+    }
+    if (logged) {
+      Database.getLogFile().force();
+    }
+
+    int start = 0;
+    while (start < pages.size()) {
+      PageId first = pages.get(start).getId();
+      DbFile file = Database.getCatalog().getDatabaseFile(first.getTableId());
+      int end = start + 1;
+
+      if (file instanceof HeapFile) {
+        while (end < pages.size() && end - start < WRITE_RUN_PAGES) {
+          PageId pid = pages.get(end).getId();
 
-    while (iter.hasNext()) {
-      Entry<PageId, Page> next = iter.next();
-      PageId pid = next.getKey();
-      Page p = next.getValue();
+          if (pid.getTableId() != first.getTableId() ||
+              pid.pageNumber() != first.pageNumber() + end - start) {
+            break;
+          }
+          end += 1;
+        }
+        ((HeapFile) file).writePages(first.pageNumber(), images.subList(start, end));
+      } else {
+        file.writePage(pages.get(start));
+      }
+      for (int i = start; i < end; ++i) {
+        committedDirty.remove(pages.get(i).getId());
+      }
+      start = end;
+    }
+  }
 
-      if (tid.equals(p.isDirty())) {
-        flushPage(pid);
-        p.markDirty(false, null);
-        // Use current page contents as the before-image for the next
-        // transaction that modifies this page.
-        p.setBeforeImage();
+  /**
+   * Makes the changes of a committing transaction to its dirty pages
+   * durable, see commitPage. Under FORCE the pages are written out together
+   * by writePages.
+   */
+  private synchronized void commitPages(List<Page> pages) throws IOException {
+    if (stealNoForce) {
+      for (Page p : pages) {
+        commitPage(p.getId(), p);
       }
+      return;
+    }
+
+    writePages(pages);
+    for (Page p : pages) {
+      p.markDirty(false, null);
+      p.setBeforeImage();
+    }
+  }
+
+  /**
+   * Makes the changes of a committing transaction to a page durable. Under
+   * FORCE the page is written out. Under NO FORCE only its after-image is
+   * appended to the log, and the page is left to the background writer.
+   */
+  private synchronized void commitPage(PageId pid, Page p) throws IOException {
+    if (stealNoForce) {
+      // Forced to disk by the commit record.
+      Database.getLogFile().logWrite(p.isDirty(), p.getBeforeImage(), p);
+      committedDirty.add(pid);
+    } else {
+      flushPage(pid);
+    }
+    p.markDirty(false, null);
+    // Use current page contents as the before-image for the next
+    // transaction that modifies this page.
+    p.setBeforeImage();
+  }
+
+  /**
+   * Writes out a page whose changes all belong to committed transactions.
+   * The caller must have forced the log.
+   *
+   * @return false if a running transaction may be modifying the page.
+   */
+  private synchronized boolean writeCommitted(PageId pid, Page page)
+      throws IOException {
+    // A transaction modifies a page under an exclusive lock and marks it
+    // dirty afterwards, a shared lock makes sure we don't catch it halfway.
+    if (!lockman.tryAcquireShared(cleaner, pid)) {
+      return false;
     }
+    try {
+      Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+      committedDirty.remove(pid);
+    } finally {
+      lockman.release(cleaner, pid);
+    }
+    return true;
   }
 
   /**
-   * Discards a page from the buffer pool.
+   * Writes out up to max pages left dirty by NO FORCE commits.
    *
-   * Flushes the page to disk to ensure dirty pages are updated on disk.
+   * @return The number of pages written.
    */
-  private synchronized void evictPage() throws DbException {
-    Iterator<Entry<PageId, Page>> iter = pool.entrySet().iterator();
+  synchronized int cleanCommittedPages(int max) throws IOException {
+    int written = 0;
+
+    if (committedDirty.isEmpty()) {
+      return 0;
+    }
+
+    // Write-ahead logging, the after-images must be on disk first.
+    Database.getLogFile().force();
 
-    while (pool.size() >= numPages && iter.hasNext()) {
-      Entry<PageId, Page> next = iter.next();
-      PageId pid = next.getKey();
-      Page p = next.getValue();
+    Iterator<PageId> iter = committedDirty.iterator();
+    while (written < max && iter.hasNext()) {
+      PageId pid = iter.next();
+      Page page = lookup(pid);
 
-      // NO STEAL policy implies we should never evict dirty pages.
-      if (p.isDirty() != null) {
+      if (page == null) {
+        iter.remove();
+        continue;
+      }
+      if (page.isDirty() != null) {
+        // Written by its new dirtier.
         continue;
       }
-      pool.remove(pid);
+      if (writeCommitted(pid, page)) {
+        written += 1;
+      }
+    }
+    return written;
+  }
+
+  /**
+   * Write all pages of the specified transaction to disk, or only to the log
+   * when running NO FORCE.
+   */
+  public synchronized void flushPages(TransactionId tid) throws IOException {
+    ArrayList<Page> dirty = new ArrayList<Page>();
+
+    for (PageId pid : getWriteSet(tid)) {
+      Page p = lookup(pid);
+
+      if (p != null && tid.equals(p.isDirty())) {
+        dirty.add(p);
+      }
+    }
+    commitPages(dirty);
+  }
+
+  /**
+   * Discards a clean page of the partition from the buffer pool, the victim
+   * is picked by the eviction policy of the partition. Heap pages go to the
+   * second tier, if any. When the policy has none, a clean page of a scan
+   * ring is recycled instead, since its ring may never come back for it.
+   * The caller holds the partition latch.
+   *
+   * @return false if every page of the partition is dirty or pinned.
+   */
+  private boolean evictPage(Partition part) {
+    PageId victim = part.policy.chooseVictim(part.evictable);
+
+    if (victim == null) {
+      return evictRingPage(part);
+    }
+
+    Page page = part.pages.remove(victim);
+    if (page != null) {
+      CompressedPageCache tier = secondTier;
+
+      // Under the latch, so that a later discardPage finds it.
+      if (tier != null && page instanceof HeapPage) {
+        tier.put(victim, page.getPageData());
+      }
+      detach(part, page);
+    }
+    return true;
+  }
+
+  /*
+   * Discards a clean, unpinned page of a scan ring of the partition, which
+   * its ring then finds gone. The caller holds the partition latch.
+   */
+  private boolean evictRingPage(Partition part) {
+    for (PageId pid : part.ringPages) {
+      if (part.evictable.canEvict(pid) && part.ringPages.remove(pid)) {
+        Page page = part.pages.remove(pid);
+
+        if (page != null) {
+          detach(part, page);
+        }
+        return true;
+      }
     }
+    return false;
+  }
 
-    if (pool.size() >= numPages) {
+  /**
+   * Makes room in a partition whose pages are all dirty. Under STEAL a dirty
+   * page is written out (after its log record) and evicted.
+   *
+   * @throws DbException If running NO STEAL, or no page can be written.
+   */
+  private void stealFrame(Partition part) throws DbException {
+    if (!stealNoForce) {
       throw new DbException("running out buffer pool.");
     }
+
+    // Writing out may append to the log, which must be entered through the
+    // BufferPool monitor.
+    synchronized (this) {
+      synchronized (part) {
+        if (part.pages.size() < part.capacity) {
+          return;
+        }
+        for (int i = 0; i < part.capacity; ++i) {
+          PageId victim = part.policy.chooseVictim(part.unpinned);
+
+          if (victim == null) {
+            break;
+          }
+          try {
+            if (stealPage(victim)) {
+              Page page = part.pages.remove(victim);
+
+              if (page != null) {
+                detach(part, page);
+              }
+              return;
+            }
+          } catch (IOException e) {
+            part.policy.recordAccess(victim);
+            throw new DbException("failed to write back page: " + e.getMessage());
+          }
+          // Can't be written right now, keep it.
+          part.policy.recordAccess(victim);
+        }
+      }
+    }
+    throw new DbException("running out buffer pool.");
+  }
+
+  /**
+   * Writes out a page about to be stolen from the pool.
+   *
+   * @return false if the page can't be written right now.
+   */
+  private synchronized boolean stealPage(PageId pid) throws IOException {
+    Page page = lookup(pid);
+
+    if (page == null) {
+      return true;
+    }
+    if (page.isDirty() != null) {
+      // Uncommitted changes, flushPage logs the before-image first.
+      flushPage(pid);
+      return true;
+    }
+    if (!committedDirty.contains(pid)) {
+      return true;
+    }
+    Database.getLogFile().force();
+    return writeCommitted(pid, page);
+  }
+
+  /**
+   * Reads a page into the pool in the background, on behalf of owner. The
+   * page is skipped if it is being written or there is no clean frame for
+   * it.
+   *
+   * @return true if the page was read.
+   */
+  private boolean loadPage(TransactionId owner, PageId pid) {
+    // A shared lock keeps writers off the page between reading it and
+    // caching it, as for any reader. Skip pages being written.
+    if (!lockman.tryAcquireShared(owner, pid)) {
+      return false;
+    }
+    try {
+      Partition part = partitionOf(pid);
+
+      return part.pages.get(pid) == null &&
+          admit(part, readPage(part, pid), false, null) != null;
+    } catch (DbException e) {
+      // Never thrown when not stealing.
+      return false;
+    } catch (IllegalArgumentException e) {
+      // The file went away.
+      return false;
+    } finally {
+      lockman.release(owner, pid);
+    }
+  }
+
+  /**
+   * Detects sequential scans of tables and reads the pages that follow in
+   * the background. Readahead works per table, so concurrent scans of the
+   * same table look random and are not read ahead.
+   */
+  private class Readahead {
+    /* Progress of the sequential scan of a table. */
+    private class Scan {
+      int lastPageNo = -1;
+      int run = 0;
+      int window = 0;
+      /* Pages up to here, excluded, were requested. */
+      int requestedTo = 0;
+    }
+
+    private final int maxWindow;
+    private final ConcurrentHashMap<Integer, Scan> scans;
+    private final ConcurrentHashMap<PageId, FutureTask<Void>> inFlight;
+    private final ExecutorService executor;
+
+    /* Lock owner used to read pages ahead. */
+    private final TransactionId reader;
+    private volatile boolean stopped;
+
+    final AtomicLong prefetched;
+
+    Readahead(int maxWindow) {
+      this.maxWindow = maxWindow;
+      this.scans = new ConcurrentHashMap<Integer, Scan>();
+      this.inFlight = new ConcurrentHashMap<PageId, FutureTask<Void>>();
+      this.executor = Executors.newFixedThreadPool(READAHEAD_THREADS,
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "BufferPool readahead");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+      this.reader = new TransactionId();
+      this.stopped = false;
+      this.prefetched = new AtomicLong();
+    }
+
+    /** Records an access to a page, possibly reading the next pages. */
+    void access(PageId pid) {
+      DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+      if (!(file instanceof HeapFile)) {
+        return;
+      }
+
+      int tableId = pid.getTableId();
+      int pageNo = pid.pageNumber();
+      Scan scan = scans.get(tableId);
+      if (scan == null) {
+        scans.putIfAbsent(tableId, new Scan());
+        scan = scans.get(tableId);
+      }
+
+      int from, to;
+      synchronized (scan) {
+        if (pageNo == scan.lastPageNo + 1) {
+          scan.run += 1;
+        } else if (pageNo != scan.lastPageNo) {
+          scan.run = 0;
+          scan.window = 0;
+          scan.requestedTo = 0;
+        }
+        scan.lastPageNo = pageNo;
+
+        // Read more when the scan gets within half a window of the end of
+        // the pages requested so far.
+        if (scan.run < READAHEAD_TRIGGER ||
+            scan.requestedTo - pageNo > scan.window / 2) {
+          return;
+        }
+        // The pool may have shrunk since.
+        int limit = Math.max(1, Math.min(maxWindow, cacheOf(tableId).numPages / 4));
+        scan.window = scan.window == 0 ? Math.min(READAHEAD_MIN_PAGES, limit)
+            : Math.min(2 * scan.window, limit);
+        from = Math.max(scan.requestedTo, pageNo + 1);
+        to = Math.min(pageNo + 1 + scan.window, ((HeapFile) file).numPages());
+        scan.requestedTo = Math.max(to, scan.requestedTo);
+      }
+
+      // One task per window, loading the pages in order.
+      final List<FutureTask<Void>> batch = new ArrayList<FutureTask<Void>>();
+      for (int i = from; i < to; ++i) {
+        FutureTask<Void> task = prefetchTask(new HeapPageId(tableId, i));
+
+        if (task != null) {
+          batch.add(task);
+        }
+      }
+      if (batch.isEmpty()) {
+        return;
+      }
+      try {
+        executor.execute(new Runnable() {
+          public void run() {
+            for (FutureTask<Void> task : batch) {
+              task.run();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // Shut down meanwhile.
+        inFlight.values().removeAll(batch);
+        for (FutureTask<Void> task : batch) {
+          task.cancel(false);
+        }
+      }
+    }
+
+    /* Returns a task loading the page, null if cached or already in flight. */
+    private FutureTask<Void> prefetchTask(final PageId pid) {
+      if (lookup(pid) != null) {
+        return null;
+      }
+
+      FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+        public void run() {
+          try {
+            load(pid);
+          } finally {
+            inFlight.remove(pid);
+          }
+        }
+      }, null);
+      if (inFlight.putIfAbsent(pid, task) != null) {
+        return null;
+      }
+      return task;
+    }
+
+    private void load(PageId pid) {
+      if (!stopped && loadPage(reader, pid)) {
+        prefetched.incrementAndGet();
+      }
+    }
+
+    /**
+     * Waits for the specified page if it is being read ahead.
+     *
+     * @return true if the page was being read ahead.
+     */
+    boolean await(PageId pid) {
+      FutureTask<Void> task = inFlight.get(pid);
+
+      if (task == null) {
+        return false;
+      }
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        // Read it again.
+      }
+      return true;
+    }
+
+    /* Not shutdownNow(), interrupts would close the channels read from. */
+    void shutdown() {
+      stopped = true;
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Background thread writing out the pages left dirty by NO FORCE commits,
+   * so that eviction mostly finds clean pages.
+   */
+  private class PageWriter extends Thread {
+    private volatile boolean stopped;
+
+    PageWriter() {
+      super("BufferPool page writer");
+      setDaemon(true);
+      this.stopped = false;
+    }
+
+    public void run() {
+      while (!stopped) {
+        try {
+          cleanCommittedPages(WRITER_BATCH_PAGES);
+          synchronized (this) {
+            if (!stopped) {
+              wait(WRITER_INTERVAL_MS);
+            }
+          }
+        } catch (InterruptedException e) {
+          break;
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+
+    synchronized void wakeUp() {
+      notify();
+    }
+
+    /* Not interrupt(), it would close the log file channel mid-force. */
+    void halt() {
+      stopped = true;
+      wakeUp();
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Background thread of warm restarts: loads back the pages listed in the
+   * hot page file, then saves the pages cached to it periodically.
+   *
+   * The file holds the number of pages followed by the table id and page
+   * number of each page, all ints.
+   */
+  private class HotPageKeeper extends Thread {
+    private final File file;
+    private volatile boolean stopped;
+
+    /* Lock owner used to load pages. */
+    private final TransactionId reader;
+
+    /* Set once the pages of the last run are loaded, the list may be saved. */
+    volatile boolean warm;
+
+    final AtomicLong warmed;
+
+    HotPageKeeper(File file) {
+      super("BufferPool warm restart");
+      setDaemon(true);
+      this.file = file;
+      this.stopped = false;
+      this.reader = new TransactionId();
+      this.warm = false;
+      this.warmed = new AtomicLong();
+    }
+
+    public void run() {
+      try {
+        warmUp();
+      } catch (IOException e) {
+        // No usable list, start cold.
+      }
+      warm = true;
+
+      while (!stopped) {
+        try {
+          synchronized (this) {
+            if (!stopped) {
+              wait(HOT_PAGES_INTERVAL_MS);
+            }
+          }
+          if (!stopped) {
+            save();
+          }
+        } catch (InterruptedException e) {
+          break;
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+
+    /* Loads the listed pages, sorted by table and page number. */
+    private void warmUp() throws IOException {
+      if (!file.exists()) {
+        return;
+      }
+
+      List<PageId> pids = new ArrayList<PageId>();
+      DataInputStream in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file)));
+      try {
+        int n = in.readInt();
+
+        for (int i = 0; i < n; ++i) {
+          pids.add(new HeapPageId(in.readInt(), in.readInt()));
+        }
+      } finally {
+        in.close();
+      }
+
+      Collections.sort(pids, new Comparator<PageId>() {
+        public int compare(PageId a, PageId b) {
+          if (a.getTableId() != b.getTableId()) {
+            return a.getTableId() < b.getTableId() ? -1 : 1;
+          }
+          return a.pageNumber() - b.pageNumber();
+        }
+      });
+
+      for (PageId pid : pids) {
+        if (stopped) {
+          return;
+        }
+
+        DbFile f;
+        try {
+          f = Database.getCatalog().getDatabaseFile(pid.getTableId());
+        } catch (NoSuchElementException e) {
+          continue; // The table is gone.
+        }
+        if (!(f instanceof HeapFile)) {
+          continue;
+        }
+        // Don't evict pages traffic already brought in.
+        Partition part = partitionOf(pid);
+        if (pid.pageNumber() >= ((HeapFile) f).numPages() ||
+            part.pages.size() >= part.capacity) {
+          continue;
+        }
+        if (loadPage(reader, pid)) {
+          warmed.incrementAndGet();
+        }
+      }
+    }
+
+    /*
+     * Writes the hottest cached pages of each partition, other than those of
+     * scan rings. The reference states of the policies of two partitions
+     * don't compare, so each one saves its share of the list.
+     */
+    synchronized void save() throws IOException {
+      if (!warm) {
+        // Keep the list of the last run until it is loaded.
+        return;
+      }
+
+      List<PageId> pids = new ArrayList<PageId>();
+      for (Partition part : partitions) {
+        int share = (int) Math.ceil(part.capacity * HOT_PAGES_FRACTION);
+
+        for (PageId pid : part.policy.hottest()) {
+          if (share == 0) {
+            break;
+          }
+          if (part.pages.containsKey(pid) && !part.ringPages.contains(pid)) {
+            pids.add(pid);
+            --share;
+          }
+        }
+      }
+
+      // Replace the list at once, a crash leaves the old one.
+      File tmp = new File(file.getPath() + ".tmp");
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        out.writeInt(pids.size());
+        for (PageId pid : pids) {
+          out.writeInt(pid.getTableId());
+          out.writeInt(pid.pageNumber());
+        }
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(file)) {
+        throw new IOException("can't replace " + file);
+      }
+    }
+
+    /* Not interrupt(), it would close the files being read. */
+    void halt() {
+      stopped = true;
+      synchronized (this) {
+        notify();
+      }
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
   }
 }
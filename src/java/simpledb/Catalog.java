@@ -34,12 +34,16 @@ public class Catalog {
   private final ConcurrentHashMap<Integer, DbInfo> db;
   private final ConcurrentHashMap<String, Integer> nameMap;
 
+  /* Buffer pool cache of the tables bound to a named one. */
+  private final ConcurrentHashMap<Integer, String> cacheMap;
+
   /**
    * Constructor. Creates a new, empty catalog.
    */
   public Catalog() {
     this.db = new ConcurrentHashMap<Integer, DbInfo>();
     this.nameMap = new ConcurrentHashMap<String, Integer>();
+    this.cacheMap = new ConcurrentHashMap<Integer, String>();
   }
 
   /**
@@ -139,16 +143,60 @@ public class Catalog {
   public String getTableName(int tableid) {
     return getDatabaseInfo(tableid).Name;
   }
+
+  /**
+   * Binds a table to a named cache of the buffer pool, its pages then only
+   * compete with those of the other tables of the cache.
+   *
+   * @param cache The name of the cache, null for the default cache.
+   *
+   * @see BufferPool#createCache.
+   */
+  public void setCacheName(int tableid, String cache) {
+    if (cache == null) {
+      cacheMap.remove(tableid);
+    } else {
+      cacheMap.put(tableid, cache);
+    }
+  }
+
+  /**
+   * Returns the name of the buffer pool cache the specified table is bound
+   * to, or null if it uses the default cache.
+   */
+  public String getCacheName(int tableid) {
+    return cacheMap.get(tableid);
+  }
   
-  /** Delete all tables from the catalog. */
+  /** Delete all tables from the catalog, closing their files. */
   public void clear() {
+    for (DbInfo info : db.values()) {
+      if (info.File instanceof HeapFile) {
+        try {
+          ((HeapFile) info.File).close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
     db.clear();
     nameMap.clear();
+    cacheMap.clear();
   }
   
   /**
    * Reads the schema from a file and creates the appropriate tables in the
    * database.
+   *
+   * A table may be followed by "cache name" to bind it to a named cache of
+   * the buffer pool. Such caches are declared by lines of the format
+   * cache name pages. A table followed by "mapped" is read through a
+   * {@link MappedHeapFile}, one followed by "direct" with direct I/O, and
+   * one followed by "pagesize bytes" has pages of that size rather than
+   * the default page size. A table with a "varchar" field, a string kept in
+   * the bytes of its value, is a {@link SlottedFile}. A table followed by
+   * "compress lz" or "compress deflate" is a {@link CompressedHeapFile} of
+   * that codec.
    */
   public void loadSchema(String catalogFile) {
     String line = new String();
@@ -158,7 +206,18 @@ public class Catalog {
       BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
       
       while ((line = br.readLine()) != null) {
-        // Assume line is of the format name (field type, field type, ...).
+        if (line.trim().startsWith("cache ")) {
+          String[] els = line.trim().split("\\s+");
+          int pages = Integer.parseInt(els[2]);
+
+          Database.getBufferPool().createCache(els[1], pages);
+          System.out.println("Added cache : " + els[1] + " of " + pages + " pages");
+          continue;
+        }
+
+        // Assume line is of the format name (field type, field type, ...),
+        // optionally followed by mapped, direct, cache name, pagesize bytes
+        // and compress codec.
         String name = line.substring(0, line.indexOf("(")).trim();
         String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
         String[] els = fields.split(",");
@@ -166,6 +225,7 @@ public class Catalog {
         ArrayList<String> names = new ArrayList<String>();
         ArrayList<Type> types = new ArrayList<Type>();
         String primaryKey = new String();
+        boolean slotted = false;
 
         for (String e : els) {
           String[] els2 = e.trim().split(" ");
@@ -175,6 +235,9 @@ public class Catalog {
             types.add(Type.INT_TYPE);
           } else if (els2[1].trim().toLowerCase().equals("string")) {
             types.add(Type.STRING_TYPE);
+          } else if (els2[1].trim().toLowerCase().equals("varchar")) {
+            types.add(Type.STRING_TYPE);
+            slotted = true;
           } else {
             System.out.println("Unknown type " + els2[1]);
             System.exit(0);
@@ -193,9 +256,64 @@ public class Catalog {
         Type[] typeAr = types.toArray(new Type[0]);
         String[] namesAr = names.toArray(new String[0]);
         TupleDesc t = new TupleDesc(typeAr, namesAr);
-        HeapFile tabHf = new HeapFile(new File(baseFolder + "/" + name + ".dat"), t);
+        String[] options = line.substring(line.indexOf(")") + 1).trim().split("\\s+");
+        String cache = null;
+        boolean mapped = false;
+        boolean direct = false;
+        PageCodec codec = null;
+        int pageSize = BufferPool.getPageSize();
+
+        for (int i = 0; i < options.length; ++i) {
+          if (options[i].equals("cache")) {
+            cache = options[++i];
+          } else if (options[i].equals("mapped")) {
+            mapped = true;
+          } else if (options[i].equals("direct")) {
+            direct = true;
+          } else if (options[i].equals("pagesize")) {
+            pageSize = Integer.parseInt(options[++i]);
+          } else if (options[i].equals("compress")) {
+            String codecName = options[++i];
+            if (codecName.equals("lz")) {
+              codec = new LzPageCodec();
+            } else if (codecName.equals("deflate")) {
+              codec = new DeflatePageCodec();
+            } else {
+              System.out.println("Unknown codec " + codecName);
+              System.exit(0);
+            }
+          } else if (!options[i].isEmpty()) {
+            System.out.println("Unknown table option " + options[i]);
+            System.exit(0);
+          }
+        }
 
+        File tabFile = new File(baseFolder + "/" + name + ".dat");
+        HeapFile tabHf;
+        if (slotted) {
+          if (mapped) {
+            System.out.println("Mapped files not supported for " + name);
+          }
+          if (codec != null) {
+            System.out.println("Compression not supported for " + name);
+          }
+          tabHf = new SlottedFile(tabFile, t, pageSize);
+        } else if (codec != null) {
+          if (mapped) {
+            System.out.println("Mapped files not supported for " + name);
+          }
+          tabHf = new CompressedHeapFile(tabFile, t, codec, pageSize);
+        } else if (mapped) {
+          tabHf = new MappedHeapFile(tabFile, t, MappedHeapFile.DEFAULT_SEGMENT_PAGES, pageSize);
+        } else {
+          tabHf = new HeapFile(tabFile, t, pageSize);
+        }
+
+        if (direct && !tabHf.setDirectIO(true)) {
+          System.out.println("Direct I/O not supported for " + name);
+        }
         addTable(tabHf, name, primaryKey);
+        setCacheName(tabHf.getId(), cache);
 
         System.out.println("Added table : " + name + " with schema " + t);
       }
@@ -205,6 +323,9 @@ public class Catalog {
     } catch (IndexOutOfBoundsException e) {
       System.out.println ("Invalid catalog entry : " + line);
       System.exit(0);
+    } catch (NumberFormatException e) {
+      System.out.println ("Invalid catalog entry : " + line);
+      System.exit(0);
     }
   }
 }
@@ -0,0 +1,129 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * ClockEvictionPolicy implements the CLOCK-sweep replacement algorithm.
+ *
+ * Every frame carries a small usage count which is bumped on each access
+ * (saturating at MAX_USAGE_COUNT). The clock hand sweeps over the frames in
+ * a circle, decrementing the usage counts it passes, and evicts the first
+ * frame it finds whose count already dropped to zero. Pages that keep being
+ * touched therefore survive several sweeps, while pages touched only once
+ * go on the next pass.
+ *
+ * @Threadsafe
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+  /** Upper bound of the usage count of a frame. */
+  static final int MAX_USAGE_COUNT = 5;
+
+  private static class Frame {
+    PageId pid;
+    int usage;
+  }
+
+  /* Frames in clock order, a frame with null pid is free. */
+  private final ArrayList<Frame> ring;
+  private final HashMap<PageId, Frame> frames;
+  private final ArrayDeque<Frame> free;
+  private int hand;
+
+  /** Returns a factory of CLOCK-sweep policies. */
+  public static EvictionPolicy.Factory factory() {
+    return new EvictionPolicy.Factory() {
+      public EvictionPolicy create() {
+        return new ClockEvictionPolicy();
+      }
+    };
+  }
+
+  public ClockEvictionPolicy() {
+    this.ring = new ArrayList<Frame>();
+    this.frames = new HashMap<PageId, Frame>();
+    this.free = new ArrayDeque<Frame>();
+    this.hand = 0;
+  }
+
+  public synchronized void recordAccess(PageId pid) {
+    Frame frame = frames.get(pid);
+
+    if (frame != null) {
+      if (frame.usage < MAX_USAGE_COUNT) {
+        frame.usage += 1;
+      }
+      return;
+    }
+
+    // Admit a new page, reusing a free frame if any.
+    frame = free.poll();
+    if (frame == null) {
+      frame = new Frame();
+      ring.add(frame);
+    }
+    frame.pid = pid;
+    frame.usage = 1;
+    frames.put(pid, frame);
+  }
+
+  public synchronized void remove(PageId pid) {
+    Frame frame = frames.remove(pid);
+
+    if (frame != null) {
+      frame.pid = null;
+      frame.usage = 0;
+      free.add(frame);
+    }
+  }
+
+  public synchronized PageId chooseVictim(Filter filter) {
+    // Every revolution decrements all non-zero usage counts, so after
+    // MAX_USAGE_COUNT + 1 revolutions each frame has been offered at least
+    // once. Give up after that.
+    int limit = ring.size() * (MAX_USAGE_COUNT + 1);
+
+    for (int i = 0; i < limit; ++i) {
+      Frame frame = ring.get(hand);
+
+      hand = (hand + 1) % ring.size();
+      if (frame.pid == null) {
+        continue;
+      }
+      if (frame.usage > 0) {
+        frame.usage -= 1;
+        continue;
+      }
+      if (filter.canEvict(frame.pid)) {
+        PageId victim = frame.pid;
+        remove(victim);
+        return victim;
+      }
+    }
+    return null;
+  }
+
+  /** Ranks the pages by usage count, in clock order from the hand. */
+  public synchronized List<PageId> hottest() {
+    ArrayList<Frame> ranked = new ArrayList<Frame>(frames.size());
+
+    for (int i = 0; i < ring.size(); ++i) {
+      Frame frame = ring.get((hand + i) % ring.size());
+      if (frame.pid != null) {
+        ranked.add(frame);
+      }
+    }
+    // Stable, so that ties stay in clock order.
+    Collections.sort(ranked, new Comparator<Frame>() {
+      public int compare(Frame a, Frame b) {
+        return b.usage - a.usage;
+      }
+    });
+
+    List<PageId> pids = new ArrayList<PageId>(ranked.size());
+    for (Frame frame : ranked) {
+      pids.add(frame.pid);
+    }
+    return pids;
+  }
+}
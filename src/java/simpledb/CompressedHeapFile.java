@@ -0,0 +1,352 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * CompressedHeapFile is a HeapFile whose pages are compressed with a
+ * PageCodec when written and decompressed when read, so that tables of
+ * padded strings and small ints take a fraction of their size on disk.
+ * Pages are the same HeapPages in the BufferPool; only the file differs.
+ *
+ * Each page is kept in an extent of the file, a multiple of EXTENT_ALIGN
+ * bytes with some room for the page to grow, found through a page map in a
+ * sidecar file next to the file: the offset of the extent, a long, the
+ * number of bytes of the page in it and the size of the extent, ints. A
+ * page whose compressed form is no smaller than the page is kept as is,
+ * with a length of the page size, and a page with a length of 0 was never
+ * written and reads as an empty page.
+ *
+ * A page is never written over its extent: it is written to another one,
+ * the first free extent large enough or a new one at the end of the file,
+ * and forced to disk, then the map is switched to it and forced in turn,
+ * and only then is its old extent free, so that a crash at any point leaves
+ * the map pointing to a whole page. The
+ * free extents are found again from the map when the file is opened.
+ *
+ * The file is always read and written through the OS page cache.
+ *
+ * @see PageCodec.
+ */
+public class CompressedHeapFile extends HeapFile {
+
+  /** Extents are multiples of this many bytes. */
+  public static final int EXTENT_ALIGN = 256;
+
+  /* Bytes of an entry of the page map. */
+  private static final int ENTRY_SIZE = 16;
+
+  private final PageCodec codec;
+  private final File mapFile;
+
+  /* The page map, null until loaded. */
+  private long[] offsets;
+  private int[] lengths;
+  private int[] extents;
+  private int size;
+
+  /* Free extents by offset, and the end of the last extent. */
+  private TreeMap<Long, Integer> free;
+  private long end;
+
+  /* Opened on the first write, null once closed. */
+  private RandomAccessFile raf;
+
+  /* Held while the page map is read or changed. */
+  private final Object mapLock = new Object();
+
+  /**
+   * Constructs a compressed heap file backed by the specified file, with
+   * pages of the default page size.
+   */
+  public CompressedHeapFile(File f, TupleDesc td, PageCodec codec) {
+    this(f, td, codec, BufferPool.getPageSize());
+  }
+
+  /**
+   * Constructs a compressed heap file backed by the specified file.
+   *
+   * @param codec Compresses the pages of the file; a file must always be
+   * opened with the codec it was written with.
+   *
+   * @param pageSize Bytes per page, including header.
+   */
+  public CompressedHeapFile(File f, TupleDesc td, PageCodec codec, int pageSize) {
+    super(f, td, pageSize, (int) (mapFile(f).length() / ENTRY_SIZE));
+    this.codec = codec;
+    this.mapFile = mapFile(f);
+  }
+
+  private static File mapFile(File f) {
+    return new File(f.getPath() + ".map");
+  }
+
+  /** Returns the codec of the file. */
+  public PageCodec getCodec() {
+    return codec;
+  }
+
+  /** Returns the number of bytes of the extents of the file, used or free. */
+  public long getStoredBytes() throws IOException {
+    synchronized (mapLock) {
+      load();
+      return end;
+    }
+  }
+
+  /**
+   * Reads and decompresses the specified page into a heap ByteBuffer of one
+   * page, and returns a page that keeps its data in that buffer.
+   */
+  public Page readPage(PageId pid, ByteBuffer frame)
+      throws IllegalArgumentException {
+    int pageNo = pid.pageNumber();
+    long offset;
+    int length;
+
+    try {
+      synchronized (mapLock) {
+        load();
+        offset = pageNo < size ? offsets[pageNo] : 0;
+        length = pageNo < size ? lengths[pageNo] : 0;
+      }
+
+      byte[] data = frame.array();
+      if (length == getPageSize()) {
+        read(ByteBuffer.wrap(data), offset);
+      } else if (length > 0) {
+        byte[] compressed = new byte[length];
+        read(ByteBuffer.wrap(compressed), offset);
+        System.arraycopy(codec.decompress(compressed, getPageSize()), 0,
+            data, 0, getPageSize());
+      }
+      // Never written, the frame is left as is.
+      return createPage(new HeapPageId(pid.getTableId(), pageNo), frame);
+    } catch (IOException e) {
+      throw new IllegalArgumentException();
+    }
+  }
+
+  private void read(ByteBuffer dst, long from) throws IOException {
+    FileChannel ch = getChannel();
+
+    while (dst.hasRemaining()) {
+      if (ch.read(dst, from + dst.position()) < 0) {
+        throw new EOFException("page extent past end of file");
+      }
+    }
+  }
+
+  // See DbFile.java for javadocs.
+  public void writePage(Page page) throws IOException {
+    writePages(page.getId().pageNumber(),
+        Collections.singletonList(page.getPageData()));
+  }
+
+  /**
+   * Writes out consecutive pages, compressing each into its own extent.
+   * The file and the page map are forced to disk once for all of them.
+   *
+   * @param pageNo Number of the first page.
+   * @param pages The data of the pages, as returned by getPageData.
+   */
+  public void writePages(int pageNo, List<byte[]> pages) throws IOException {
+    int n = pages.size();
+    if (n == 0) {
+      return;
+    }
+
+    byte[][] compressed = new byte[n][];
+    long[] newOffsets = new long[n];
+    int[] newExtents = new int[n];
+
+    for (int i = 0; i < n; ++i) {
+      byte[] data = pages.get(i);
+
+      compressed[i] = codec.compress(data);
+      if (compressed[i].length >= data.length) {
+        compressed[i] = data;
+      }
+      // Leave room for the page to grow by an eighth, so that its next
+      // version fits in the extent it leaves.
+      newExtents[i] = align(Math.min(data.length,
+          compressed[i].length + compressed[i].length / 8));
+    }
+    synchronized (mapLock) {
+      load();
+      for (int i = 0; i < n; ++i) {
+        newOffsets[i] = allocate(newExtents[i]);
+      }
+    }
+
+    FileChannel ch = getChannel();
+    for (int i = 0; i < n; ++i) {
+      ByteBuffer src = ByteBuffer.wrap(compressed[i]);
+      while (src.hasRemaining()) {
+        ch.write(src, newOffsets[i] + src.position());
+      }
+    }
+    // The pages are on disk before the map points to them.
+    ch.force(false);
+    setDataLength(ch.size());
+
+    synchronized (mapLock) {
+      load();
+      TreeMap<Long, Integer> old = new TreeMap<Long, Integer>();
+      for (int i = 0; i < n; ++i) {
+        int p = pageNo + i;
+
+        if (p < size && lengths[p] > 0) {
+          old.put(offsets[p], extents[p]);
+        }
+        setEntry(p, newOffsets[i], compressed[i].length, newExtents[i]);
+      }
+      // And the map is on disk before the old extents may be written over.
+      raf.getFD().sync();
+      for (Map.Entry<Long, Integer> e : old.entrySet()) {
+        release(e.getKey(), e.getValue());
+      }
+    }
+  }
+
+  private static int align(int bytes) {
+    return (bytes + EXTENT_ALIGN - 1) / EXTENT_ALIGN * EXTENT_ALIGN;
+  }
+
+  /* Returns the first free extent large enough, or a new one at the end. */
+  private long allocate(int extent) {
+    for (Map.Entry<Long, Integer> e : free.entrySet()) {
+      if (e.getValue() >= extent) {
+        long offset = e.getKey();
+
+        free.remove(offset);
+        if (e.getValue() > extent) {
+          free.put(offset + extent, e.getValue() - extent);
+        }
+        return offset;
+      }
+    }
+
+    long offset = end;
+    end += extent;
+    return offset;
+  }
+
+  /* Frees an extent, merged with the free extents next to it. */
+  private void release(long offset, int extent) {
+    Map.Entry<Long, Integer> before = free.floorEntry(offset);
+    if (before != null && before.getKey() + before.getValue() == offset) {
+      free.remove(before.getKey());
+      offset = before.getKey();
+      extent += before.getValue();
+    }
+    Integer after = free.remove(offset + extent);
+    if (after != null) {
+      extent += after;
+    }
+    free.put(offset, extent);
+  }
+
+  /* Records and writes through the entry of a page. */
+  private void setEntry(int pageNo, long offset, int length, int extent)
+      throws IOException {
+    int from = pageNo;
+
+    if (pageNo >= size) {
+      if (pageNo >= offsets.length) {
+        int n = Math.max(pageNo + 1, offsets.length * 2);
+        offsets = Arrays.copyOf(offsets, n);
+        lengths = Arrays.copyOf(lengths, n);
+        extents = Arrays.copyOf(extents, n);
+      }
+      // Pages in between were never written, their entries stay 0.
+      from = size;
+      size = pageNo + 1;
+    }
+    offsets[pageNo] = offset;
+    lengths[pageNo] = length;
+    extents[pageNo] = extent;
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(baos);
+    for (int i = from; i <= pageNo; ++i) {
+      dos.writeLong(offsets[i]);
+      dos.writeInt(lengths[i]);
+      dos.writeInt(extents[i]);
+    }
+    dos.flush();
+
+    if (raf == null) {
+      raf = new RandomAccessFile(mapFile, "rw");
+    }
+    raf.seek((long) from * ENTRY_SIZE);
+    raf.write(baos.toByteArray());
+  }
+
+  /* Reads the page map from its file, if it wasn't yet. */
+  private void load() throws IOException {
+    if (offsets != null) {
+      return;
+    }
+
+    int n = (int) (mapFile.length() / ENTRY_SIZE);
+    offsets = new long[n];
+    lengths = new int[n];
+    extents = new int[n];
+    if (n > 0) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(mapFile)));
+      try {
+        for (int i = 0; i < n; ++i) {
+          offsets[i] = in.readLong();
+          lengths[i] = in.readInt();
+          extents[i] = in.readInt();
+        }
+      } finally {
+        in.close();
+      }
+    }
+    size = n;
+
+    // The gaps between the extents of the pages are free.
+    TreeMap<Long, Integer> used = new TreeMap<Long, Integer>();
+    for (int i = 0; i < n; ++i) {
+      if (lengths[i] > 0) {
+        used.put(offsets[i], extents[i]);
+      }
+    }
+    free = new TreeMap<Long, Integer>();
+    end = 0;
+    for (Map.Entry<Long, Integer> e : used.entrySet()) {
+      if (e.getKey() > end) {
+        free.put(end, (int) (e.getKey() - end));
+      }
+      end = Math.max(end, e.getKey() + e.getValue());
+    }
+  }
+
+  /** Compressed files are not read with direct I/O. */
+  public boolean setDirectIO(boolean direct) throws IOException {
+    return false;
+  }
+
+  /**
+   * Closes the file and its page map. They are opened again if pages are
+   * read or written afterwards.
+   */
+  public void close() throws IOException {
+    synchronized (mapLock) {
+      if (raf != null) {
+        raf.close();
+        raf = null;
+      }
+      offsets = null;
+      lengths = null;
+      extents = null;
+      size = 0;
+    }
+    super.close();
+  }
+}
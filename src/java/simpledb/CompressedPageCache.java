@@ -0,0 +1,155 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * CompressedPageCache is a second-tier page cache: the BufferPool hands it
+ * the clean pages it evicts, and it keeps their images compressed in memory
+ * so that a later miss on them doesn't go to disk.
+ *
+ * A page leaves this cache when it is read back into the pool, so the two
+ * tiers never hold the same page. Once the compressed images exceed the
+ * byte budget, the pages evicted from the pool the longest ago are dropped.
+ *
+ * @Threadsafe
+ */
+public class CompressedPageCache {
+
+  /* Bytes accounted per entry on top of its data, for the map and key. */
+  public static final int ENTRY_OVERHEAD = 64;
+
+  private final PageCodec codec;
+  private final long budget;
+
+  /* Compressed images, in eviction order from the pool. */
+  private final LinkedHashMap<PageId, byte[]> entries;
+  private long bytes;
+
+  private long hits;
+  private long misses;
+  private long drops;
+
+  /**
+   * Creates a cache.
+   *
+   * @param budget Maximum number of bytes the compressed images take.
+   *
+   * @param codec The codec compressing the images.
+   */
+  public CompressedPageCache(long budget, PageCodec codec) {
+    this.codec = codec;
+    this.budget = budget;
+    this.entries = new LinkedHashMap<PageId, byte[]>();
+    this.bytes = 0;
+  }
+
+  /** Returns the codec compressing the images. */
+  public PageCodec getCodec() {
+    return codec;
+  }
+
+  /** Returns the byte budget of this cache. */
+  public long getBudget() {
+    return budget;
+  }
+
+  /**
+   * Keeps the image of a clean page evicted from the buffer pool, dropping
+   * the oldest pages as needed to stay within budget.
+   */
+  public void put(PageId pid, byte[] data) {
+    byte[] compressed = codec.compress(data);
+
+    synchronized (this) {
+      remove(pid);
+      if (compressed.length + ENTRY_OVERHEAD > budget) {
+        return;
+      }
+      entries.put(pid, compressed);
+      bytes += compressed.length + ENTRY_OVERHEAD;
+
+      Iterator<Map.Entry<PageId, byte[]>> iter = entries.entrySet().iterator();
+      while (bytes > budget) {
+        Map.Entry<PageId, byte[]> eldest = iter.next();
+
+        bytes -= eldest.getValue().length + ENTRY_OVERHEAD;
+        iter.remove();
+        drops += 1;
+      }
+    }
+  }
+
+  /**
+   * Takes the image of a page out of the cache.
+   *
+   * @param length The size of the page image in bytes.
+   *
+   * @return The decompressed image, or null if the page is not cached.
+   */
+  public byte[] get(PageId pid, int length) {
+    byte[] compressed;
+
+    synchronized (this) {
+      compressed = remove(pid);
+      if (compressed == null) {
+        misses += 1;
+        return null;
+      }
+      hits += 1;
+    }
+    return codec.decompress(compressed, length);
+  }
+
+  /**
+   * Forgets a page, whose image on disk changed behind the back of the
+   * buffer pool.
+   */
+  public synchronized void invalidate(PageId pid) {
+    remove(pid);
+  }
+
+  /** Drops all the pages of this cache. */
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  private byte[] remove(PageId pid) {
+    byte[] compressed = entries.remove(pid);
+
+    if (compressed != null) {
+      bytes -= compressed.length + ENTRY_OVERHEAD;
+    }
+    return compressed;
+  }
+
+  /** Returns true if the specified page is cached. */
+  public synchronized boolean contains(PageId pid) {
+    return entries.containsKey(pid);
+  }
+
+  /** Returns the number of pages cached. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** Returns the number of bytes taken by the cached pages. */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /** Returns the number of pages found by {@link #get}. */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /** Returns the number of pages {@link #get} did not find. */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /** Returns the number of pages dropped to stay within budget. */
+  public synchronized long getDropCount() {
+    return drops;
+  }
+}
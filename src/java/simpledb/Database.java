@@ -22,6 +22,8 @@ public class Database {
   private final static String LOGFILENAME = "log";
   private final LogFile _logfile;
 
+  private final static String HOTPAGESFILENAME = "hotpages";
+
   private Database() {
     _catalog = new Catalog();
     _bufferpool = new BufferPool(BufferPool.DEFAULT_PAGES);
@@ -51,16 +53,36 @@ public class Database {
     return _instance.get()._catalog;
   }
 
+  /**
+   * Turns on warm restarts of the buffer pool: the pages it cached at the
+   * last run are loaded back in the background. Call once the catalog is
+   * loaded.
+   *
+   * @see BufferPool#startWarmRestart.
+   */
+  public static void startWarmRestart() {
+    getBufferPool().startWarmRestart(new File(HOTPAGESFILENAME));
+  }
+
   /**
    * Method used for testing. Create a new instance of the buffer pool and
    * return it.
    */
   public static BufferPool resetBufferPool(int pages) {
+    return resetBufferPool(new BufferPool(pages));
+  }
+
+  /**
+   * Method used for testing. Replace the buffer pool with the specified one
+   * and return it.
+   */
+  public static BufferPool resetBufferPool(BufferPool pool) {
     java.lang.reflect.Field bufferPoolF = null;
+    _instance.get()._bufferpool.shutdown();
     try {
       bufferPoolF = Database.class.getDeclaredField("_bufferpool");
       bufferPoolF.setAccessible(true);
-      bufferPoolF.set(_instance.get(), new BufferPool(pages));
+      bufferPoolF.set(_instance.get(), pool);
     } catch (NoSuchFieldException e) {
       e.printStackTrace();
     } catch (SecurityException e) {
@@ -76,6 +98,6 @@ public class Database {
 
   // Reset the database, used for unit tests only.
   public static void reset() {
-    _instance.set(new Database());
+    _instance.getAndSet(new Database())._bufferpool.shutdown();
   }
 }
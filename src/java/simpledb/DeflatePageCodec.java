@@ -0,0 +1,70 @@
+package simpledb;
+
+import java.util.Arrays;
+
+import com.jcraft.jzlib.JZlib;
+import com.jcraft.jzlib.ZStream;
+
+/**
+ * DeflatePageCodec compresses pages with zlib (jzlib). It compresses better
+ * than {@link LzPageCodec} but is several times slower.
+ *
+ * @Threadsafe
+ */
+public class DeflatePageCodec implements PageCodec {
+
+  private final int level;
+
+  /** Creates a codec with the default compression level. */
+  public DeflatePageCodec() {
+    this(JZlib.Z_DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Creates a codec.
+   *
+   * @param level zlib compression level, from 1 (fastest) to 9 (best).
+   */
+  public DeflatePageCodec(int level) {
+    this.level = level;
+  }
+
+  public byte[] compress(byte[] data) {
+    ZStream z = new ZStream();
+    // zlib worst case: a few bytes per 16KB block plus header and trailer.
+    byte[] out = new byte[data.length + data.length / 1000 + 64];
+
+    z.deflateInit(level);
+    z.next_in = data;
+    z.next_in_index = 0;
+    z.avail_in = data.length;
+    z.next_out = out;
+    z.next_out_index = 0;
+    z.avail_out = out.length;
+    int err = z.deflate(JZlib.Z_FINISH);
+    z.deflateEnd();
+    if (err != JZlib.Z_STREAM_END) {
+      throw new IllegalStateException("deflate failed: " + err);
+    }
+    return Arrays.copyOf(out, z.next_out_index);
+  }
+
+  public byte[] decompress(byte[] data, int length) {
+    ZStream z = new ZStream();
+    byte[] out = new byte[length];
+
+    z.inflateInit();
+    z.next_in = data;
+    z.next_in_index = 0;
+    z.avail_in = data.length;
+    z.next_out = out;
+    z.next_out_index = 0;
+    z.avail_out = out.length;
+    int err = z.inflate(JZlib.Z_FINISH);
+    z.inflateEnd();
+    if (err != JZlib.Z_STREAM_END || z.next_out_index != length) {
+      throw new IllegalArgumentException("corrupt deflate page: " + err);
+    }
+    return out;
+  }
+}
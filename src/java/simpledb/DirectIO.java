@@ -0,0 +1,102 @@
+package simpledb;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * DirectIO opens files for I/O that bypasses the OS page cache, with the
+ * DIRECT option of com.sun.nio.file.ExtendedOpenOption, and provides the
+ * block-aligned buffers that such I/O requires. Both are looked up
+ * reflectively, as they aren't available on every JVM; open returns null
+ * where direct I/O isn't supported, so that callers can fall back to
+ * buffered I/O.
+ */
+class DirectIO {
+
+  /** Alignment of the buffers, a multiple of any supported block size. */
+  static final int ALIGNMENT = 4096;
+
+  private static final OpenOption DIRECT;
+  private static final Method ALIGNED_SLICE;
+  private static final Method BLOCK_SIZE;
+
+  static {
+    OpenOption direct = null;
+    Method alignedSlice = null;
+    Method blockSize = null;
+
+    try {
+      Class<?> c = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+      direct = (OpenOption) c.getField("DIRECT").get(null);
+      alignedSlice = ByteBuffer.class.getMethod("alignedSlice", int.class);
+      blockSize = FileStore.class.getMethod("getBlockSize");
+    } catch (Exception e) {
+      direct = null;
+    }
+    DIRECT = direct;
+    ALIGNED_SLICE = alignedSlice;
+    BLOCK_SIZE = blockSize;
+  }
+
+  private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>();
+
+  /** Returns whether this JVM can open files for direct I/O. */
+  static boolean isAvailable() {
+    return DIRECT != null;
+  }
+
+  /**
+   * Opens the specified file for direct I/O of pages of pageSize bytes, for
+   * reading and writing, or for reading only if it is read-only.
+   *
+   * @return The channel, or null if the JVM, the file system or the page
+   * size doesn't allow direct I/O.
+   */
+  static FileChannel open(Path path, int pageSize) {
+    if (DIRECT == null) {
+      return null;
+    }
+
+    try {
+      Path existing = Files.exists(path) ? path : path.toAbsolutePath().getParent();
+      int block = ((Number) BLOCK_SIZE.invoke(Files.getFileStore(existing))).intValue();
+
+      if (block <= 0 || ALIGNMENT % block != 0 || pageSize % block != 0) {
+        return null;
+      }
+      try {
+        return FileChannel.open(path, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE, DIRECT);
+      } catch (AccessDeniedException e) {
+        return FileChannel.open(path, StandardOpenOption.READ, DIRECT);
+      }
+    } catch (Exception e) {
+      // e.g. EINVAL from a file system without O_DIRECT.
+      return null;
+    }
+  }
+
+  /**
+   * Returns an aligned direct buffer of size bytes, cleared. It belongs to
+   * the calling thread and is reused by its next call.
+   */
+  static ByteBuffer buffer(int size) {
+    ByteBuffer buf = buffers.get();
+
+    if (buf == null || buf.capacity() < size) {
+      try {
+        ByteBuffer raw = ByteBuffer.allocateDirect(size + ALIGNMENT);
+        buf = (ByteBuffer) ALIGNED_SLICE.invoke(raw, ALIGNMENT);
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+      buffers.set(buf);
+    }
+    buf.clear();
+    buf.limit(size);
+    return buf;
+  }
+}
@@ -0,0 +1,60 @@
+package simpledb;
+
+import java.util.List;
+
+/**
+ * EvictionPolicy decides which page the BufferPool throws out when it needs
+ * room for a new one. The BufferPool reports every access to a resident page
+ * and every page that leaves the pool for some other reason, and asks the
+ * policy for a victim once it is full.
+ *
+ * Implementations keep their own per-frame reference metadata and must be
+ * safe to call from multiple threads.
+ *
+ * @see BufferPool.
+ */
+public interface EvictionPolicy {
+
+  /**
+   * Filter consulted by {@link #chooseVictim} before a page is picked, e.g.
+   * to skip dirty pages under NO STEAL.
+   */
+  public interface Filter {
+    /** Returns true if the specified page may be evicted right now. */
+    public boolean canEvict(PageId pid);
+  }
+
+  /**
+   * Creates policies of one kind, e.g. one per partition of a buffer pool.
+   */
+  public interface Factory {
+    public EvictionPolicy create();
+  }
+
+  /**
+   * Records an access to the specified page, admitting it to the policy if
+   * it is not tracked yet.
+   */
+  public void recordAccess(PageId pid);
+
+  /**
+   * Forgets the specified page, which has left the buffer pool without
+   * being chosen as a victim (e.g. discarded by the recovery manager).
+   */
+  public void remove(PageId pid);
+
+  /**
+   * Picks a page to evict among those accepted by filter. The returned page
+   * is no longer tracked by the policy.
+   *
+   * @return The page to evict, or null if no tracked page can be evicted.
+   */
+  public PageId chooseVictim(Filter filter);
+
+  /**
+   * Returns the tracked pages ranked by their reference state, the page the
+   * policy would keep longest first, e.g. to save the hottest pages for a
+   * warm restart.
+   */
+  public List<PageId> hottest();
+}
@@ -0,0 +1,112 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * FrameArena is a number of page-sized frames carved out of direct
+ * (off-heap) ByteBuffers. The BufferPool keeps pages in these frames when
+ * running off-heap, so that the garbage collector never has to trace or
+ * copy the cached data.
+ *
+ * A direct ByteBuffer holds at most 2GB, so big arenas are made of several
+ * chunks. The memory is reserved up front and counts against
+ * -XX:MaxDirectMemorySize, not the Java heap. An arena may grow, but never
+ * gives memory back.
+ *
+ * @Threadsafe
+ */
+public class FrameArena {
+
+  /* Largest chunk allocated at once. */
+  private static final int MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+  private final int frameSize;
+  private int numFrames;
+
+  /* Frames handed out, by identity. ByteBuffer.equals compares contents. */
+  private final Set<ByteBuffer> used;
+  private final ArrayDeque<ByteBuffer> free;
+
+  /**
+   * Allocates an arena.
+   *
+   * @param numFrames Number of frames.
+   *
+   * @param frameSize Size of a frame in bytes.
+   */
+  public FrameArena(int numFrames, int frameSize) {
+    this.frameSize = frameSize;
+    this.numFrames = 0;
+    this.used = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+    this.free = new ArrayDeque<ByteBuffer>(numFrames);
+    grow(numFrames);
+  }
+
+  /** Adds the specified number of frames to the arena. */
+  public synchronized void grow(int frames) {
+    int framesPerChunk = MAX_CHUNK_BYTES / frameSize;
+    int left = frames;
+
+    while (left > 0) {
+      int n = Math.min(left, framesPerChunk);
+      ByteBuffer chunk = ByteBuffer.allocateDirect(n * frameSize);
+
+      for (int i = 0; i < n; ++i) {
+        chunk.limit((i + 1) * frameSize);
+        chunk.position(i * frameSize);
+        free.add(chunk.slice());
+      }
+      left -= n;
+    }
+    numFrames += frames;
+  }
+
+  /** Returns the size of a frame in bytes. */
+  public int getFrameSize() {
+    return frameSize;
+  }
+
+  /** Returns the number of frames of this arena. */
+  public synchronized int getNumFrames() {
+    return numFrames;
+  }
+
+  /** Returns the number of frames not handed out. */
+  public synchronized int getNumFree() {
+    return free.size();
+  }
+
+  /**
+   * Hands out a free frame.
+   *
+   * @return The frame, or null if all frames are in use.
+   */
+  public synchronized ByteBuffer allocate() {
+    ByteBuffer frame = free.poll();
+
+    if (frame != null) {
+      used.add(frame);
+    }
+    return frame;
+  }
+
+  /** Returns true if the specified frame is handed out by this arena. */
+  public synchronized boolean contains(ByteBuffer frame) {
+    return used.contains(frame);
+  }
+
+  /**
+   * Returns a frame to the arena. Its contents may be overwritten from now
+   * on.
+   *
+   * @return false if the frame was not handed out by this arena.
+   */
+  public synchronized boolean release(ByteBuffer frame) {
+    if (frame == null || !used.remove(frame)) {
+      return false;
+    }
+    free.add(frame);
+    return true;
+  }
+}
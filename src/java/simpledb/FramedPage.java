@@ -0,0 +1,148 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The frame and before-image of a page that keeps its encoded bytes in a
+ * ByteBuffer frame, shared by HeapPage and SlottedPage.
+ *
+ * getPageData hands out the array of a heap frame without copying it, and
+ * the frame is copied before the page is next modified, so that the array
+ * stays a snapshot. The before-image is likewise only kept once the page is
+ * about to be modified. Subclasses call preserveBeforeImage before each
+ * modification, holding the page's monitor, which is its latch.
+ *
+ * @see HeapPage.
+ */
+abstract class FramedPage implements Page {
+
+  /* Bytes of the page. */
+  final int pageSize;
+
+  /* Encoded contents. */
+  ByteBuffer frame;
+
+  /*
+   * Whether the array of the frame was handed out by getPageData, and must
+   * be copied before the page is next modified.
+   */
+  private boolean shared;
+
+  private byte[] oldData;
+  private final Object oldDataLock = new Object();
+
+  /** Keeps a page of the specified size in the specified frame. */
+  FramedPage(ByteBuffer frame, int pageSize) {
+    this.frame = frame;
+    this.pageSize = pageSize;
+  }
+
+  /*
+   * Keeps a page in the specified bytes, which it shares and copies before
+   * it is modified.
+   */
+  FramedPage(byte[] data, int pageSize) {
+    this(ByteBuffer.wrap(data), pageSize);
+    this.shared = true;
+  }
+
+  /** Returns the size of this page in bytes. */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Returns the bytes of the before-image of this page, shared rather than
+   * copied, for the view returned by getBeforeImage.
+   */
+  synchronized byte[] getBeforeImageData() {
+    byte[] oldDataRef;
+
+    synchronized (oldDataLock) {
+      oldDataRef = oldData;
+    }
+    if (oldDataRef == null) {
+      // Not modified since the before-image was set.
+      oldDataRef = getPageData();
+    }
+    return oldDataRef;
+  }
+
+  public synchronized void setBeforeImage() {
+    // The before-image is copied only when the page is about to be modified,
+    // see preserveBeforeImage.
+    synchronized (oldDataLock) {
+      oldData = null;
+    }
+  }
+
+  /*
+   * Called by the modifications of a page. A frame whose array was handed
+   * out by getPageData, or a read-only frame, e.g. a view of a
+   * MappedHeapFile, is copied to the heap first.
+   */
+  void preserveBeforeImage() {
+    synchronized (oldDataLock) {
+      if (oldData == null) {
+        oldData = getPageData();
+      }
+    }
+    if (shared || frame.isReadOnly()) {
+      frame = ByteBuffer.wrap(copyPageData());
+      shared = false;
+    }
+  }
+
+  /**
+   * Moves the contents of this page into the specified frame, and keeps
+   * them there from now on. Used by the BufferPool to place pages in its
+   * off-heap arena, and to copy them back to the heap before their slot is
+   * reused.
+   *
+   * @return The frame this page was kept in before.
+   */
+  synchronized ByteBuffer moveTo(ByteBuffer dst) {
+    ByteBuffer src = frame;
+    ByteBuffer out = dst.duplicate();
+
+    ByteBuffer in = src.duplicate();
+
+    out.clear();
+    in.clear();
+    out.put(in);
+    frame = dst;
+    shared = false;
+    return src;
+  }
+
+  /** Returns the frame this page is kept in. */
+  synchronized ByteBuffer getFrame() {
+    return frame;
+  }
+
+  /**
+   * Returns the bytes of this page, which the constructor of the page turns
+   * back into an identical page. Used to serialize this page to disk.
+   *
+   * The bytes are not copied when the page is kept in a heap buffer of one
+   * page. The page copies its frame before it is next modified, so the
+   * array is a snapshot; callers must not modify it.
+   */
+  public synchronized byte[] getPageData() {
+    if (frame.hasArray() && frame.arrayOffset() == 0 &&
+        frame.capacity() == pageSize) {
+      shared = true;
+      return frame.array();
+    }
+    return copyPageData();
+  }
+
+  private byte[] copyPageData() {
+    byte[] data = new byte[pageSize];
+    ByteBuffer in = frame.duplicate();
+
+    in.clear();
+    in.get(data);
+    return data;
+  }
+}
@@ -0,0 +1,274 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records, for each page of a HeapFile, a coarse bucket of the
+ * number of its empty slots, so that an insert finds a page with room
+ * without reading the pages before it. The map is kept in a sidecar file
+ * next to the heap file, one byte per page after a header, and buckets are
+ * written through to it as they change.
+ *
+ * The map is a hint: after an abort or a crash it may be out of date, so
+ * the pages it points to are checked, and their buckets corrected when they
+ * turn out to be full. The pages an aborted transaction wrote are forgotten,
+ * since they may have room again, and checked by the next insert that gets
+ * to them. Pages the map doesn't cover yet, e.g. of a table written before
+ * it had a map, are taken to have room until checked.
+ *
+ * The header records the logical number of pages of the data file, which
+ * may be less than its length holds once it grew by an extent, and the
+ * length of the data file when the map was last written. A map whose data
+ * file has another length, e.g. was written again by other means, is of
+ * another file and is started over.
+ */
+class FreeSpaceMap {
+
+  /** Number of buckets; bucket 0 means the page is full. */
+  static final int BUCKETS = 16;
+
+  /* Bucket of a page that was never checked. */
+  private static final byte UNKNOWN = (byte) 0xff;
+
+  /* The header: MAGIC, the number of pages and the length of the data file. */
+  private static final int MAGIC = 0x46534d31;
+  private static final int HEADER_SIZE = 16;
+
+  private final File file;
+
+  /*
+   * Number of pages and length of the data file, and whether the file of
+   * the map is not of it.
+   */
+  private int numPages;
+  private long dataLength;
+  private boolean stale;
+
+  /* Buckets by page number, of the first size pages; null until loaded. */
+  private byte[] buckets;
+  private int size;
+
+  /* Pages whose bucket is not 0. */
+  private final BitSet free = new BitSet();
+
+  /* Opened on the first update, null once closed. */
+  private RandomAccessFile raf;
+
+  FreeSpaceMap(File file) {
+    this.file = file;
+  }
+
+  /** Returns the bucket of a page with the specified numbers of slots. */
+  static int bucket(int empty, int slots) {
+    if (empty <= 0) {
+      return 0;
+    }
+    return 1 + (int) ((long) (empty - 1) * (BUCKETS - 1) / slots);
+  }
+
+  /**
+   * Checks the file of the map against the length of its data file, before
+   * the map is used. A map of another file is started over.
+   *
+   * @param numPages The number of pages of the data file, if the map doesn't
+   * know it.
+   * @return The number of pages of the data file.
+   */
+  synchronized int open(long dataLength, int numPages) {
+    this.dataLength = dataLength;
+    this.numPages = numPages;
+    this.stale = false;
+    if (!file.exists()) {
+      return numPages;
+    }
+
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        int magic = in.readInt();
+        int pages = in.readInt();
+
+        stale = magic != MAGIC || in.readLong() != dataLength;
+        if (!stale) {
+          this.numPages = pages;
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      // Too short, or unreadable.
+      stale = true;
+    }
+    return this.numPages;
+  }
+
+  /** Records the number of pages of the data file, once it grew. */
+  synchronized void setNumPages(int pages) throws IOException {
+    if (pages <= numPages) {
+      return;
+    }
+    numPages = pages;
+
+    RandomAccessFile out = getRaf();
+    out.seek(4);
+    out.writeInt(pages);
+  }
+
+  /** Records the length of the data file, once it changed. */
+  synchronized void setDataLength(long length) throws IOException {
+    if (length == dataLength) {
+      return;
+    }
+    dataLength = length;
+
+    RandomAccessFile out = getRaf();
+    out.seek(8);
+    out.writeLong(length);
+  }
+
+  /** Returns the sidecar file of the map. */
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns the first page from the specified page on that may have room,
+   * or -1 if none of the pages of the file does.
+   *
+   * @param numPages The number of pages of the file.
+   */
+  synchronized int findFree(int from, int numPages) throws IOException {
+    return findFree(from, numPages, 1);
+  }
+
+  /**
+   * Returns the first page from the specified page whose bucket is at least
+   * the specified bucket, or that the map doesn't know, or -1 if none of
+   * the pages of the file is.
+   *
+   * @param numPages The number of pages of the file.
+   */
+  synchronized int findFree(int from, int numPages, int minBucket)
+      throws IOException {
+    load();
+
+    int pageNo = free.nextSetBit(from);
+    while (pageNo >= 0 && pageNo < size &&
+        buckets[pageNo] != UNKNOWN && buckets[pageNo] < minBucket) {
+      pageNo = free.nextSetBit(pageNo + 1);
+    }
+    if (pageNo < 0 || pageNo >= size) {
+      // Not covered by the map.
+      pageNo = Math.max(from, size);
+    }
+    return pageNo < numPages ? pageNo : -1;
+  }
+
+  /** Records the number of empty slots of a page. */
+  synchronized void update(int pageNo, int empty, int slots)
+      throws IOException {
+    load();
+
+    byte b = (byte) bucket(empty, slots);
+    int from = pageNo;
+
+    if (pageNo >= size) {
+      if (pageNo >= buckets.length) {
+        buckets = Arrays.copyOf(buckets, Math.max(pageNo + 1, buckets.length * 2));
+      }
+      for (int i = size; i < pageNo; ++i) {
+        buckets[i] = UNKNOWN;
+        free.set(i);
+      }
+      from = size;
+      size = pageNo + 1;
+    } else if (buckets[pageNo] == b) {
+      return;
+    }
+    buckets[pageNo] = b;
+    free.set(pageNo, b != 0);
+    write(from, pageNo + 1);
+  }
+
+  /**
+   * Forgets the bucket of a page, e.g. restored to an older version, so
+   * that it is checked again.
+   */
+  synchronized void invalidate(int pageNo) throws IOException {
+    load();
+    if (pageNo >= size || buckets[pageNo] == UNKNOWN) {
+      return;
+    }
+    buckets[pageNo] = UNKNOWN;
+    free.set(pageNo);
+    write(pageNo, pageNo + 1);
+  }
+
+  /* Writes through the buckets of the pages from, up to end. */
+  private void write(int from, int end) throws IOException {
+    RandomAccessFile out = getRaf();
+    out.seek(HEADER_SIZE + from);
+    out.write(buckets, from, end - from);
+  }
+
+  /* Opens the file of the map, starting it over if it is of another file. */
+  private RandomAccessFile getRaf() throws IOException {
+    if (raf == null) {
+      raf = new RandomAccessFile(file, "rw");
+    }
+    if (stale || raf.length() < HEADER_SIZE) {
+      raf.setLength(0);
+      raf.writeInt(MAGIC);
+      raf.writeInt(numPages);
+      raf.writeLong(dataLength);
+      // Buckets of the map loaded so far.
+      if (buckets != null) {
+        raf.write(buckets, 0, size);
+      }
+      stale = false;
+    }
+    return raf;
+  }
+
+  /** Reads the map from its file, if it wasn't yet. */
+  private void load() throws IOException {
+    if (buckets != null) {
+      return;
+    }
+
+    byte[] data = new byte[0];
+    if (!stale && file.length() > HEADER_SIZE) {
+      data = new byte[(int) file.length() - HEADER_SIZE];
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        in.skipBytes(HEADER_SIZE);
+        in.readFully(data);
+      } finally {
+        in.close();
+      }
+    }
+    buckets = data;
+    size = data.length;
+    for (int i = 0; i < size; ++i) {
+      if (data[i] != 0) {
+        free.set(i);
+      }
+    }
+  }
+
+  /**
+   * Closes the file of the map. The map is read again from its file when
+   * used afterwards.
+   */
+  synchronized void close() throws IOException {
+    if (raf != null) {
+      raf.close();
+      raf = null;
+    }
+    buckets = null;
+    size = 0;
+    free.clear();
+  }
+}
@@ -1,6 +1,10 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -10,27 +14,116 @@ import java.util.concurrent.atomic.AtomicInteger;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ *
+ * Each HeapFile has its own page size, the default page size of the
+ * database unless set when the file is constructed.
+ *
+ * The file is kept open from its first read or write until close(), and
+ * pages are read and written at their position in the channel, so that
+ * concurrent readers don't share a file pointer.
+ *
+ * The file grows by extents, preallocated with empty pages, rather than a
+ * page at a time: numPages is the logical size of the file, which may be
+ * smaller than its length. The file is truncated back to its logical size
+ * when closed, and the logical size is kept in the header of the
+ * free-space map, so that a file that was not closed opens with its pages
+ * and not with its extents.
+ *
+ * A free-space map, kept in a sidecar file next to the file, records
+ * roughly how much room each page has, so that an insert goes straight to
+ * a page with room rather than reading every page before it.
+ *
+ * With direct I/O on, the file is opened so that its pages bypass the OS
+ * page cache and are only cached by the BufferPool. Where the file system
+ * doesn't support it, the file is read and written through the page cache
+ * as usual.
  * 
  * @see simpledb.HeapPage#HeapPage.
  */
 public class HeapFile implements DbFile {
 
+  /** Default number of pages of the first extent. */
+  public static final int DEFAULT_EXTENT_PAGES = 16;
+
+  /** Default largest extent, 1 MB of 4 KB pages. */
+  public static final int DEFAULT_MAX_EXTENT_PAGES = 256;
+
+  /* Largest number of bytes of zeros written at once when preallocating. */
+  private static final int ZERO_CHUNK = 256 * 1024;
+
   private final File f;
   private final TupleDesc td;
+  private final int pageSize;
   private final AtomicInteger numPages;
 
+  /* Opened on first use, null once closed. */
+  private FileChannel channel;
+
+  /* An extent is as large as the file, within these bounds, in pages. */
+  private volatile int extentPages;
+  private volatile int maxExtentPages;
+
+  /*
+   * Bytes allocated to the file by preallocation, 0 until it first grows,
+   * and the end of the last page written.
+   */
+  private volatile long allocated;
+  private volatile long written;
+
+  /* Held while a gathering write moves the position of the channel. */
+  private final Object positionLock = new Object();
+
+  private final FreeSpaceMap freeSpace;
+
+  /* Whether direct I/O was asked for, and whether channel uses it. */
+  private boolean directIO;
+  private boolean channelDirect;
+
   /**
-   * Constructs a heap file backed by the specified file.
+   * Constructs a heap file backed by the specified file, with pages of the
+   * default page size.
    * 
    * @param f The file that stores the on-disk backing store for this heap
    * file.
+   *
+   * @see BufferPool#getPageSize().
    */
   public HeapFile(File f, TupleDesc td) {
-    final int pageSize = BufferPool.getPageSize();
+    this(f, td, BufferPool.getPageSize());
+  }
 
+  /**
+   * Constructs a heap file backed by the specified file, with pages of the
+   * specified size.
+   *
+   * @param pageSize Bytes per page, including header.
+   */
+  public HeapFile(File f, TupleDesc td, int pageSize) {
+    this(f, td, pageSize, -1);
+  }
+
+  /*
+   * Constructs a heap file of the specified number of pages, for files
+   * whose pages are not stored at their offset, or of the number of pages
+   * in its free-space map, or in the file, if -1.
+   */
+  HeapFile(File f, TupleDesc td, int pageSize, int numPages) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("page size must be positive");
+    }
     this.f = f;
     this.td = td;
-    this.numPages = new AtomicInteger(((int) f.length() + pageSize - 1) / pageSize);
+    this.pageSize = pageSize;
+    this.extentPages = DEFAULT_EXTENT_PAGES;
+    this.maxExtentPages = DEFAULT_MAX_EXTENT_PAGES;
+    this.freeSpace = new FreeSpaceMap(new File(f.getPath() + ".fsm"));
+    if (numPages < 0) {
+      numPages = (int) ((f.length() + pageSize - 1) / pageSize);
+      numPages = this.freeSpace.open(f.length(), numPages);
+    } else {
+      this.freeSpace.open(f.length(), numPages);
+    }
+    this.numPages = new AtomicInteger(numPages);
   }
 
   /**
@@ -62,36 +155,351 @@ public class HeapFile implements DbFile {
     return td;
   }
 
+  /**
+   * Returns the size of the pages of this file in bytes.
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
   // See DbFile.java for javadocs.
   public Page readPage(PageId pid) throws IllegalArgumentException {
-    RandomAccessFile reader = null;
-    byte[] buffer = new byte[BufferPool.getPageSize()]; // all 0
+    // If the page to read exceeds file length, it reads as a new empty page.
+    return readPage(pid, java.nio.ByteBuffer.allocate(pageSize));
+  }
+
+  /**
+   * Returns a page of this file that keeps its data in the specified frame
+   * of one page, without reading it.
+   */
+  Page createPage(HeapPageId pid, ByteBuffer frame) {
+    return new HeapPage(pid, frame);
+  }
+
+  /**
+   * Returns the tuples of a page of this file, read by the specified
+   * transaction.
+   */
+  Iterator<Tuple> tuples(TransactionId tid, Page page)
+      throws DbException, TransactionAbortedException {
+    return ((HeapPage) page).iterator();
+  }
+
+  /** Returns the number of a new page at the end of this file. */
+  int newPageNumber() throws IOException {
+    int pageNo = numPages.getAndIncrement();
+
+    freeSpace.setNumPages(pageNo + 1);
+    return pageNo;
+  }
+
+  /** Returns the free-space map of this file. */
+  FreeSpaceMap getFreeSpaceMap() {
+    return freeSpace;
+  }
+
+  /**
+   * Records the length of the file in its free-space map, for files that
+   * grow other than by extents.
+   */
+  void setDataLength(long length) throws IOException {
+    freeSpace.setDataLength(length);
+  }
+
+  /**
+   * Makes the free-space map of the file of a page check it again, after it
+   * was restored to its version before an aborted transaction.
+   */
+  static void invalidateFreeSpace(PageId pid) throws IOException {
+    DbFile file;
 
     try {
-      int from = pid.pageNumber() * BufferPool.getPageSize();
+      file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+    } catch (NoSuchElementException e) {
+      return; // Not a table of the catalog.
+    }
+    if (file instanceof HeapFile) {
+      ((HeapFile) file).freeSpace.invalidate(pid.pageNumber());
+    }
+  }
 
-      reader = new RandomAccessFile(f, "r");
-      if (from < reader.length()) {
-        reader.seek(from);
-        reader.read(buffer);
-        reader.close();
-      }
-      // If the page to read exceeds file length, allocate a new empty page.
-      return new HeapPage(new HeapPageId(pid.getTableId(), pid.pageNumber()), buffer);
+  /**
+   * Reads the specified page into a heap ByteBuffer of one page, and returns
+   * a page that keeps its data in that buffer.
+   *
+   * @see HeapPage#HeapPage(HeapPageId, java.nio.ByteBuffer).
+   */
+  public Page readPage(PageId pid, java.nio.ByteBuffer frame)
+      throws IllegalArgumentException {
+    try {
+      readPageData(pid, frame.array());
+      return createPage(new HeapPageId(pid.getTableId(), pid.pageNumber()), frame);
     } catch (IOException e) {
       throw new IllegalArgumentException();
     }
   }
 
+  /* Reads a page into buffer, which is left as is past the end of file. */
+  private void readPageData(PageId pid, byte[] buffer) throws IOException {
+    long from = (long) pid.pageNumber() * pageSize;
+
+    try {
+      readPageData(buffer, from);
+    } catch (ClosedByInterruptException e) {
+      throw e;
+    } catch (ClosedChannelException e) {
+      // Closed by close() or an interrupt of another thread, reopen once.
+      readPageData(buffer, from);
+    }
+  }
+
+  private void readPageData(byte[] buffer, long from) throws IOException {
+    FileChannel ch;
+    boolean direct;
+
+    synchronized (this) {
+      ch = getChannel();
+      direct = channelDirect;
+    }
+    if (!direct) {
+      read(ch, ByteBuffer.wrap(buffer, 0, pageSize), from);
+      return;
+    }
+
+    // A single aligned read, it only comes short at the end of file.
+    ByteBuffer dst = DirectIO.buffer(pageSize);
+    ch.read(dst, from);
+    dst.flip();
+    dst.get(buffer, 0, dst.remaining());
+  }
+
+  /* Reads until dst is full or the end of file, reads may come short. */
+  private static void read(FileChannel ch, ByteBuffer dst, long from)
+      throws IOException {
+    while (dst.hasRemaining()) {
+      int n = ch.read(dst, from + dst.position());
+
+      if (n < 0) {
+        break;
+      }
+    }
+  }
+
   // See DbFile.java for javadocs.
   public void writePage(Page page) throws IOException {
-    RandomAccessFile writer = null;
-    int from = page.getId().pageNumber() * BufferPool.getPageSize();
+    byte[] data = page.getPageData();
+    long from = (long) page.getId().pageNumber() * pageSize;
+
+    try {
+      writePageData(data, from);
+    } catch (ClosedByInterruptException e) {
+      throw e;
+    } catch (ClosedChannelException e) {
+      writePageData(data, from);
+    }
+  }
+
+  private void writePageData(byte[] data, long from) throws IOException {
+    allocate(from, from + data.length);
+    writeData(data, from);
+  }
+
+  private void writeData(byte[] data, long from) throws IOException {
+    FileChannel ch;
+    boolean direct;
+
+    synchronized (this) {
+      ch = getChannel();
+      direct = channelDirect;
+    }
+
+    ByteBuffer src;
+    if (direct) {
+      src = DirectIO.buffer(data.length);
+      src.put(data);
+      src.flip();
+    } else {
+      src = ByteBuffer.wrap(data);
+    }
+    while (src.hasRemaining()) {
+      ch.write(src, from + src.position());
+    }
+  }
+
+  /**
+   * Writes out consecutive pages at once, with a single gathering write.
+   *
+   * @param pageNo Number of the first page.
+   * @param pages The data of the pages, as returned by getPageData.
+   */
+  public void writePages(int pageNo, List<byte[]> pages) throws IOException {
+    long from = (long) pageNo * pageSize;
+
+    try {
+      writePagesData(pages, from);
+    } catch (ClosedByInterruptException e) {
+      throw e;
+    } catch (ClosedChannelException e) {
+      writePagesData(pages, from);
+    }
+  }
+
+  private void writePagesData(List<byte[]> pages, long from) throws IOException {
+    FileChannel ch;
+    boolean direct;
+
+    allocate(from, from + (long) pages.size() * pageSize);
+
+    synchronized (this) {
+      ch = getChannel();
+      direct = channelDirect;
+    }
+
+    ByteBuffer[] srcs;
+    if (direct) {
+      // One aligned buffer for the whole run.
+      ByteBuffer src = DirectIO.buffer(pages.size() * pageSize);
+      for (byte[] data : pages) {
+        src.put(data);
+      }
+      src.flip();
+      srcs = new ByteBuffer[] { src };
+    } else {
+      srcs = new ByteBuffer[pages.size()];
+      for (int i = 0; i < srcs.length; ++i) {
+        srcs[i] = ByteBuffer.wrap(pages.get(i));
+      }
+    }
+
+    // FileChannel has no positional gathering write. Positional reads and
+    // writes don't use the position, only other gathering writes do.
+    synchronized (positionLock) {
+      ch.position(from);
+      while (srcs[srcs.length - 1].hasRemaining()) {
+        ch.write(srcs);
+      }
+    }
+  }
+
+  /**
+   * Sets how the file grows: by extents as large as the file already is,
+   * but at least first and at most max pages. Extents of one page grow the
+   * file a page at a time.
+   */
+  public void setExtentPages(int first, int max) {
+    if (first < 1 || max < first) {
+      throw new IllegalArgumentException("invalid extent sizes");
+    }
+    this.extentPages = first;
+    this.maxExtentPages = max;
+  }
+
+  /*
+   * Makes room for a write of the bytes from, up to end. A file growing
+   * past the bytes allocated to it grows by an extent, written with zeros,
+   * i.e. empty pages, so that later writes land in allocated space.
+   */
+  private void allocate(long from, long end) throws IOException {
+    if (end > written) {
+      synchronized (this) {
+        written = Math.max(written, end);
+      }
+      freeSpace.setNumPages((int) ((end + pageSize - 1) / pageSize));
+    }
+    if (end <= allocated) {
+      return;
+    }
+
+    synchronized (this) {
+      long size = getChannel().size();
+
+      if (end <= size) {
+        allocated = Math.max(allocated, size);
+        return;
+      }
+
+      long pages = (size + pageSize - 1) / pageSize;
+      long extent = Math.max(extentPages, Math.min(maxExtentPages, pages));
+      long to = Math.max(end, (pages + extent) * pageSize);
+
+      // The write itself fills from up to end.
+      zero(pages * pageSize, from);
+      zero(end, to);
+      allocated = to;
+      freeSpace.setDataLength(to);
+    }
+  }
+
+  private void zero(long from, long to) throws IOException {
+    while (from < to) {
+      int len = (int) Math.min(to - from, ZERO_CHUNK);
+
+      writeData(new byte[len], from);
+      from += len;
+    }
+  }
+
+  /** Returns the channel of the file, opening it if needed or closed. */
+  synchronized FileChannel getChannel() throws IOException {
+    if (channel == null || !channel.isOpen()) {
+      channel = directIO ? DirectIO.open(f.toPath(), pageSize) : null;
+      channelDirect = channel != null;
+      if (channel == null) {
+        RandomAccessFile raf;
+
+        try {
+          raf = new RandomAccessFile(f, "rw");
+        } catch (FileNotFoundException e) {
+          // A read-only file.
+          raf = new RandomAccessFile(f, "r");
+        }
+        channel = raf.getChannel();
+      }
+    }
+    return channel;
+  }
+
+  /**
+   * Turns direct I/O on or off, from the next read or write on.
+   *
+   * @return Whether the file now uses direct I/O: false when turned off,
+   * or if the JVM or the file system doesn't support it.
+   */
+  public synchronized boolean setDirectIO(boolean direct) throws IOException {
+    if (direct != directIO) {
+      directIO = direct;
+      close();
+    }
+    getChannel();
+    return channelDirect;
+  }
+
+  /** Returns whether the file was last opened with direct I/O. */
+  public synchronized boolean isDirectIO() {
+    return directIO && channelDirect;
+  }
 
-    writer = new RandomAccessFile(f, "rw");
-    writer.seek(from);
-    writer.write(page.getPageData());
-    writer.close();
+  /**
+   * Closes the file. It is opened again if pages are read or written
+   * afterwards.
+   */
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      long logical = Math.max(written,
+          (long) numPages.get() * pageSize);
+
+      // Give back the preallocated pages that were not used.
+      if (allocated > logical && channel.isOpen() && channel.size() > logical) {
+        channel.truncate(logical);
+      }
+      if (channel.isOpen()) {
+        freeSpace.setDataLength(channel.size());
+      }
+      channel.close();
+      channel = null;
+      allocated = 0;
+    }
+    freeSpace.close();
   }
 
   /**
@@ -107,7 +515,9 @@ public class HeapFile implements DbFile {
     int tableId = getId();
     ArrayList<Page> ret = new ArrayList<Page>();
 
-    for (int i = 0; i < numPages.get(); ++i) {
+    // Only the pages the free-space map points to are read.
+    int i = freeSpace.findFree(0, numPages.get());
+    while (i >= 0) {
       HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
           new HeapPageId(tableId, i), Permissions.READ_ONLY);
 
@@ -116,6 +526,7 @@ public class HeapFile implements DbFile {
         page = (HeapPage) Database.getBufferPool().getPage(tid,
             new HeapPageId(tableId, i), Permissions.READ_WRITE);
         page.insertTuple(t);
+        updateFreeSpace(page);
         ret.add(page);
         return ret;
       } else {
@@ -125,14 +536,18 @@ public class HeapFile implements DbFile {
         // the page, such that a concurrent transaction t' which updated p
         // cannot possibly effect the answer or outcome of t.
         Database.getBufferPool().releasePage(tid, new HeapPageId(tableId, i));
+        // The map was out of date.
+        updateFreeSpace(page);
+        i = freeSpace.findFree(i + 1, numPages.get());
       }
     }
 
     // No slots for any page, try to allocate a new one.
-    int newPageIndex = numPages.getAndIncrement();
+    int newPageIndex = newPageNumber();
     HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
         new HeapPageId(tableId, newPageIndex), Permissions.READ_WRITE);
     page.insertTuple(t);
+    updateFreeSpace(page);
     ret.add(page);
 
     return ret;
@@ -146,11 +561,18 @@ public class HeapFile implements DbFile {
         t.getRecordId().getPageId(), Permissions.READ_WRITE);
 
     page.deleteTuple(t);
+    updateFreeSpace(page);
     ret.add(page);
 
     return ret;
   }
 
+  /* Records the number of empty slots of a page in the free-space map. */
+  private void updateFreeSpace(HeapPage page) throws IOException {
+    freeSpace.update(page.getId().pageNumber(), page.getNumEmptySlots(),
+        page.getNumSlots());
+  }
+
   // See DbFile.java for javadocs.
   public DbFileIterator iterator(TransactionId tid) {
     return new HeapFileIterator(tid, this);
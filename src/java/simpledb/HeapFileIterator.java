@@ -2,12 +2,21 @@ package simpledb;
 
 import java.util.*;
 
+/**
+ * Iterates over the tuples of a HeapFile, page by page. The page being
+ * iterated is pinned in the BufferPool until the iterator moves on, so it is
+ * fetched only once. Files too big to be cached are read through a
+ * ScanRing, which keeps the scan from flushing the shared pages out of the
+ * pool.
+ */
 public class HeapFileIterator implements DbFileIterator {
   private final TransactionId tid;
   private final HeapFile hf;
 
   private int pageNo = 0;
   private Iterator<Tuple> tupleIter = null;
+  private PageId pinned = null;
+  private ScanRing ring = null;
 
   HeapFileIterator(TransactionId tid, HeapFile hf) {
     this.tid = tid;
@@ -21,18 +30,33 @@ public class HeapFileIterator implements DbFileIterator {
    * database.
    */
   public void open() throws DbException, TransactionAbortedException {
+    if (ring == null) {
+      ring = Database.getBufferPool().getScanRing(hf.getId(), hf.numPages());
+    }
     pageNo = 0;
-    tupleIter = openPage(pageNo).iterator();
+    tupleIter = openPage(pageNo);
   }
 
-  private HeapPage openPage(int pageNo) 
+  /* Pins a page and returns its tuples. */
+  private Iterator<Tuple> openPage(int pageNo)
       throws DbException, TransactionAbortedException {
     if (pageNo < 0 || pageNo >= hf.numPages()) {
       return null;
     }
+    // Unpin first, the pool may have a single frame.
+    unpin();
     // TODO(foreverbell): Permissions.READ_ONLY is okay?
-    return (HeapPage) Database.getBufferPool()
-      .getPage(tid, new HeapPageId(hf.getId(), pageNo), Permissions.READ_ONLY);
+    PageId pid = new HeapPageId(hf.getId(), pageNo);
+    Page page = Database.getBufferPool().pin(tid, pid, Permissions.READ_ONLY, ring);
+    pinned = pid;
+    return hf.tuples(tid, page);
+  }
+
+  private void unpin() {
+    if (pinned != null) {
+      Database.getBufferPool().unpin(tid, pinned);
+      pinned = null;
+    }
   }
 
   /** Returns true if there are more tuples available. */
@@ -44,9 +68,10 @@ public class HeapFileIterator implements DbFileIterator {
     while (!tupleIter.hasNext()) {
       pageNo += 1;
       if (pageNo >= hf.numPages()) {
+        unpin();
         return false;
       }
-      tupleIter = openPage(pageNo).iterator();
+      tupleIter = openPage(pageNo);
     }
     return true;
   }
@@ -74,6 +99,11 @@ public class HeapFileIterator implements DbFileIterator {
 
   /** Closes the iterator. */
   public void close() {
+    unpin();
+    if (ring != null) {
+      Database.getBufferPool().releaseScanRing(ring);
+      ring = null;
+    }
     pageNo = 0;
     tupleIter = null;
   }
@@ -2,28 +2,33 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and
  * implements the Page interface that is used by BufferPool.
  *
+ * The page's monitor is its latch: modifications and serialization hold it,
+ * so that a page written out concurrently is never caught halfway through
+ * an update.
+ *
+ * A page keeps its encoded bytes in a ByteBuffer frame (a heap buffer, or
+ * e.g. a slot of the off-heap {@link FrameArena} of the BufferPool) and
+ * decodes tuples as they are read. Tuples decode their fields only as they
+ * are accessed, and {@link #getField} reads a single field in place.
+ *
  * @see HeapFile.
  *
  * @see BufferPool.
  */
-public class HeapPage implements Page {
+public class HeapPage extends FramedPage {
 
   private final HeapPageId pid;
   private final TupleDesc td;
-  private final byte header[];
-  private final Tuple tuples[];
   private final int numSlots;
 
   private TransactionId lastDirty;
 
-  private byte[] oldData;
-  private final Byte oldDataLock = new Byte((byte) 0);
-
   /**
    * Create a HeapPage from a set of bytes of data read from disk.
    *
@@ -33,7 +38,10 @@ public class HeapPage implements Page {
    * SlotId starts from 0.
    *
    * Specifically, the number of tuples is equal to:
-   *    floor((BufferPool.getPageSize()*8) / (tuple size * 8 + 1)).
+   *    floor((page size*8) / (tuple size * 8 + 1)).
+   *
+   * Where page size is the page size of the table, see
+   * {@link BufferPool#getPageSize(int)}.
    *
    * Where tuple size is the size of tuples in this database table, which can
    * be determined via {@link Catalog#getTupleDesc}.
@@ -45,38 +53,32 @@ public class HeapPage implements Page {
    *
    * @see Catalog#getTupleDesc.
    *
-   * @see BufferPool#getPageSize.
+   * @see BufferPool#getPageSize(int).
    */
   public HeapPage(HeapPageId id, byte[] data) throws IOException {
+    // The caller may reuse its array.
+    this(id, ByteBuffer.wrap(data.clone()));
+  }
+
+  /**
+   * Create a HeapPage that keeps its data in the specified frame, in the
+   * format described above, without copying it. The frame must hold
+   * exactly one page. Tuples are decoded from the frame whenever they are
+   * read, and encoded into it when inserted. A read-only frame is copied
+   * on the first modification.
+   */
+  public HeapPage(HeapPageId id, ByteBuffer frame) {
+    super(frame, BufferPool.getPageSize(id.getTableId()));
     this.pid = id;
     this.td = Database.getCatalog().getTupleDesc(id.getTableId());
     this.numSlots = getNumTuples();
 
-    DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-    // Allocate and read the header slots of this page.
-    header = new byte[getHeaderSize()];
-    for (int i = 0; i < header.length; i++) {
-      header[i] = dis.readByte();
-    }
-
-    tuples = new Tuple[numSlots];
-    try {
-      // Allocate and read the actual records of this page.
-      for (int i = 0; i < tuples.length; i++) {
-        tuples[i] = readNextTuple(dis, i);
-      }
-    } catch (NoSuchElementException e) {
-      e.printStackTrace();
-    }
-    dis.close();
-
     setBeforeImage();
   }
 
   /** Retrieve the number of tuples on this page. */
   private int getNumTuples() {
-    return (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+    return (pageSize * 8) / (td.getSize() * 8 + 1);
   }
 
   /**
@@ -87,140 +89,30 @@ public class HeapPage implements Page {
     return (numSlots + 7) / 8;
   }
 
-  /** Returns a view of this page before it was modified. Used by recovery. */
-  public HeapPage getBeforeImage(){
-    try {
-      byte[] oldDataRef = null;
-      synchronized (oldDataLock) {
-        oldDataRef = oldData;
-      }
-      return new HeapPage(pid, oldDataRef);
-    } catch (IOException e) {
-      e.printStackTrace();
-      // Should never happen, we parsed it OK before!
-      System.exit(1);
-    }
-    return null;
-  }
-
-  public void setBeforeImage() {
-    synchronized (oldDataLock) {
-      oldData = getPageData().clone();
-    }
-  }
-
-  /**
-   * Returns the PageId associated with this page.
+  /*
+   * Creates a page of the same table as the specified page, kept in the
+   * specified bytes, which it shares and copies before it is modified.
    */
-  public HeapPageId getId() {
-    return pid;
+  private HeapPage(HeapPage page, byte[] data) {
+    super(data, page.pageSize);
+    this.pid = page.pid;
+    this.td = page.td;
+    this.numSlots = page.numSlots;
   }
 
   /**
-   * Suck up tuples from the source file.
+   * Returns a view of this page before it was modified. Used by recovery.
+   * The view shares the preserved bytes rather than copying them.
    */
-  private Tuple readNextTuple(DataInputStream dis, int slotId)
-      throws NoSuchElementException {
-    // If associated bit is not set, read forward to the next tuple, and
-    // return null.
-    if (!isSlotUsed(slotId)) {
-      for (int i = 0; i < td.getSize(); i++) {
-        try {
-          dis.readByte();
-        } catch (IOException e) {
-          throw new NoSuchElementException("error reading empty tuple");
-        }
-      }
-      return null;
-    }
-
-    // Read fields in the tuple.
-    Tuple t = new Tuple(td);
-    RecordId rid = new RecordId(pid, slotId);
-    t.setRecordId(rid);
-    try {
-      for (int j = 0; j < td.numFields(); j++) {
-        Field f = td.getFieldType(j).parse(dis);
-        t.setField(j, f);
-      }
-    } catch (java.text.ParseException e) {
-      e.printStackTrace();
-      throw new NoSuchElementException("parsing error!");
-    }
-
-    return t;
+  public HeapPage getBeforeImage() {
+    return new HeapPage(this, getBeforeImageData());
   }
 
   /**
-   * Generates a byte array representing the contents of this page.
-   * Used to serialize this page to disk.
-   *
-   * The invariant here is that it should be possible to pass the byte
-   * array generated by getPageData to the HeapPage constructor and
-   * have it produce an identical HeapPage object.
-   *
-   * @see #HeapPage.
-   *
-   * @return A byte array correspond to the bytes of this page.
+   * Returns the PageId associated with this page.
    */
-  public byte[] getPageData() {
-    int len = BufferPool.getPageSize();
-    ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-    DataOutputStream dos = new DataOutputStream(baos);
-
-    // Create the header of the page.
-    for (int i = 0; i < header.length; i++) {
-      try {
-        dos.writeByte(header[i]);
-      } catch (IOException e) {
-        // This really shouldn't happen.
-        e.printStackTrace();
-      }
-    }
-
-    // Create the tuples.
-    for (int i = 0; i < tuples.length; i++) {
-      // Empty slot.
-      if (!isSlotUsed(i)) {
-        for (int j = 0; j < td.getSize(); j++) {
-          try {
-            dos.writeByte(0);
-          } catch (IOException e) {
-            e.printStackTrace();
-          }
-        }
-        continue;
-      }
-
-      // Non-empty slot.
-      for (int j = 0; j < td.numFields(); j++) {
-        Field f = tuples[i].getField(j);
-        try {
-          f.serialize(dos);
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-      }
-    }
-
-    // Padding.
-    int zerolen = BufferPool.getPageSize();
-    zerolen -= (header.length + td.getSize() * tuples.length);
-
-    byte[] zeroes = new byte[zerolen];
-    try {
-      dos.write(zeroes, 0, zerolen);
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-
-    try {
-      dos.flush();
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-
-    return baos.toByteArray();
+  public HeapPageId getId() {
+    return pid;
   }
 
   /**
@@ -230,11 +122,18 @@ public class HeapPage implements Page {
    * this method to the HeapPage constructor will create a HeapPage with
    * no valid tuples in it.
    *
-   * @return The returned ByteArray.
+   * @return The returned ByteArray, of the default page size.
    */
   public static byte[] createEmptyPageData() {
-    int len = BufferPool.getPageSize();
-    return new byte[len]; // all 0
+    return createEmptyPageData(BufferPool.getPageSize());
+  }
+
+  /**
+   * Returns a byte array corresponding to an empty HeapPage of a table with
+   * pages of the specified size.
+   */
+  public static byte[] createEmptyPageData(int pageSize) {
+    return new byte[pageSize]; // all 0
   }
 
   /**
@@ -246,7 +145,7 @@ public class HeapPage implements Page {
    *
    * @param t The tuple to delete.
    */
-  public void deleteTuple(Tuple t) throws DbException {
+  public synchronized void deleteTuple(Tuple t) throws DbException {
     RecordId rid = t.getRecordId();
 
     if (!rid.getPageId().equals(pid) ||
@@ -256,7 +155,10 @@ public class HeapPage implements Page {
     if (!isSlotUsed(rid.tupleno())) {
       throw new DbException("tuple slot is already empty");
     }
+    preserveBeforeImage();
     markSlotUsed(rid.tupleno(), false);
+    // Empty slots are all zero.
+    writeSlot(rid.tupleno(), new byte[td.getSize()]);
   }
 
   /**
@@ -268,15 +170,16 @@ public class HeapPage implements Page {
    *
    * @param t The tuple to add.
    */
-  public void insertTuple(Tuple t) throws DbException {
+  public synchronized void insertTuple(Tuple t) throws DbException {
     if (!t.getTupleDesc().equals(td)) {
       throw new DbException("TupleDesc is mismatch");
     }
     for (int i = 0; i < numSlots; ++i) {
       if (!isSlotUsed(i)) {
+        preserveBeforeImage();
         markSlotUsed(i, true);
         t.setRecordId(new RecordId(pid, i));
-        tuples[i] = t;
+        writeSlot(i, encodeTuple(t));
         return;
       }
     }
@@ -307,22 +210,31 @@ public class HeapPage implements Page {
   /**
    * Returns the number of empty slots on this page.
    */
-  public int getNumEmptySlots() {
-    int ret = 0;
+  public synchronized int getNumEmptySlots() {
+    int used = 0;
 
-    for (int i = 0; i < numSlots; ++i) {
-      if (!isSlotUsed(i)) {
-        ++ret;
-      }
+    // Count the bits of the header a byte at a time.
+    for (int i = 0; i < numSlots / 8; ++i) {
+      used += Integer.bitCount(frame.get(i) & 0xff);
+    }
+    if (numSlots % 8 != 0) {
+      used += Integer.bitCount(frame.get(numSlots / 8) & ((1 << (numSlots % 8)) - 1));
     }
-    return ret;
+    return numSlots - used;
+  }
+
+  /** Returns the number of slots on this page. */
+  int getNumSlots() {
+    return numSlots;
   }
 
   /**
    * Returns true if associated slot on this page is filled.
    */
-  public boolean isSlotUsed(int i) {
-    return ((header[i / 8] >> (i % 8)) & 1) == 1;
+  public synchronized boolean isSlotUsed(int i) {
+    byte b = frame.get(i / 8);
+
+    return ((b >> (i % 8)) & 1) == 1;
   }
 
   /**
@@ -330,12 +242,85 @@ public class HeapPage implements Page {
    */
   private void markSlotUsed(int i, boolean value) {
     int n = i / 8, b = i % 8;
+    byte h = frame.get(n);
 
     if (value) {
-      header[n] |= 1 << b;
+      h |= 1 << b;
     } else {
-      header[n] &= ~(1 << b);
+      h &= ~(1 << b);
+    }
+    frame.put(n, h);
+  }
+
+  /**
+   * Returns the tuple in the specified used slot. It keeps a copy of the
+   * bytes of the slot, and decodes its fields only as they are read.
+   */
+  private synchronized Tuple tupleAt(int i) {
+    byte[] data = new byte[td.getSize()];
+    ByteBuffer in = frame.duplicate();
+
+    in.clear();
+    in.position(getHeaderSize() + i * td.getSize());
+    in.get(data);
+
+    Tuple t = new Tuple(td, ByteBuffer.wrap(data));
+    t.setRecordId(new RecordId(pid, i));
+    return t;
+  }
+
+  /**
+   * Returns the value of a field of the tuple in the specified slot, decoded
+   * straight from the bytes of this page, without building the tuple.
+   *
+   * @throws NoSuchElementException If the slot is not used, or the field
+   * is not a valid field reference.
+   *
+   * @param slot The slot of the tuple.
+   *
+   * @param field The index of the field in the tuple.
+   */
+  public synchronized Field getField(int slot, int field)
+      throws NoSuchElementException {
+    if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
+      throw new NoSuchElementException();
+    }
+    return td.getFieldType(field).parse(frame,
+        getHeaderSize() + slot * td.getSize() + td.getFieldOffset(field));
+  }
+
+  /**
+   * Serializes a tuple into the fixed width of a slot. Strings longer than
+   * STRING_LEN, as read from a SlottedFile, are cut to it so they don't run
+   * into the next slot.
+   */
+  private byte[] encodeTuple(Tuple t) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(td.getSize());
+    DataOutputStream dos = new DataOutputStream(baos);
+
+    try {
+      for (int j = 0; j < td.numFields(); j++) {
+        Field f = t.getField(j);
+        if (td.getFieldType(j) == Type.STRING_TYPE) {
+          f = new StringField(((StringField) f).getValue(), Type.STRING_LEN);
+        }
+        f.serialize(dos);
+      }
+      dos.flush();
+    } catch (IOException e) {
+      // This really shouldn't happen.
+      e.printStackTrace();
     }
+    return baos.toByteArray();
+  }
+
+  /* Overwrites the bytes of a slot. */
+  private void writeSlot(int i, byte[] data) {
+    ByteBuffer out = frame.duplicate();
+
+    out.clear();
+    out.position(getHeaderSize() + i * td.getSize());
+    out.put(data);
   }
 
   private class TupleIterator implements Iterator<Tuple> {
@@ -369,7 +354,7 @@ public class HeapPage implements Page {
       if (index >= hp.numSlots) {
         return null;
       }
-      Tuple v = hp.tuples[index];
+      Tuple v = hp.tupleAt(index);
       locateNext();
       return v;
     }
@@ -161,12 +161,16 @@ class LockManager {
   private final Lock mutex;
   private final HashMap<PageId, LockState> lock;
 
+  /* Pages each transaction holds a lock on. */
+  private final HashMap<TransactionId, HashSet<PageId>> held;
+
   /* Lock dependency graph, waiter -> owner. */
   private final HashMap<TransactionId, ArrayList<TransactionId>> graph;
 
   public LockManager() {
     mutex = new ReentrantLock();
     lock = new HashMap<PageId, LockState>();
+    held = new HashMap<TransactionId, HashSet<PageId>>();
     graph = new HashMap<TransactionId, ArrayList<TransactionId>>();
   }
 
@@ -208,6 +212,17 @@ class LockManager {
     return false;
   }
 
+  /* Records a granted lock, the caller holds mutex. */
+  private void addHeld(TransactionId tid, PageId pid) {
+    HashSet<PageId> pids = held.get(tid);
+
+    if (pids == null) {
+      pids = new HashSet<PageId>();
+      held.put(tid, pids);
+    }
+    pids.add(pid);
+  }
+
   public boolean holdsLock(TransactionId tid, PageId pid) {
     mutex.lock();
 
@@ -232,6 +247,12 @@ class LockManager {
       if (lockstate != null) {
         lockstate.release(tid);
       }
+
+      HashSet<PageId> pids = held.get(tid);
+
+      if (pids != null) {
+        pids.remove(pid);
+      }
     } finally {
       mutex.unlock();
     }
@@ -242,8 +263,13 @@ class LockManager {
     mutex.lock();
 
     try {
-      for (LockState lockstate : lock.values()) {
-        lockstate.release(tid);
+      HashSet<PageId> pids = held.remove(tid);
+
+      if (pids == null) {
+        return;
+      }
+      for (PageId pid : pids) {
+        lock.get(pid).release(tid);
       }
     } finally {
       mutex.unlock();
@@ -269,10 +295,36 @@ class LockManager {
         lockstate.wait(true, tid);
       }
     }
+    addHeld(tid, pid);
 
     mutex.unlock();
   }
 
+  /**
+   * Acquires a shared lock if it can be granted right away, never waits.
+   *
+   * @return true if the lock was granted.
+   */
+  public boolean tryAcquireShared(TransactionId tid, PageId pid) {
+    mutex.lock();
+
+    try {
+      LockState lockstate = lock.get(pid);
+
+      if (lockstate == null) {
+        lockstate = new LockState(mutex, graph);
+        lock.put(pid, lockstate);
+      }
+      if (!lockstate.acquireShared(tid)) {
+        return false;
+      }
+      addHeld(tid, pid);
+      return true;
+    } finally {
+      mutex.unlock();
+    }
+  }
+
   public void acquireExclusive(TransactionId tid, PageId pid)
       throws TransactionAbortedException {
     mutex.lock();
@@ -292,6 +344,7 @@ class LockManager {
         lockstate.wait(false, tid);
       }
     }
+    addHeld(tid, pid);
 
     mutex.unlock();
   }
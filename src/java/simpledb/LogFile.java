@@ -274,7 +274,8 @@ public class LogFile {
       }
       pid = (PageId) idConsts[0].newInstance(idArgs);
 
-      Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
+      // The page constructor taking the page id and the bytes of the page.
+      Constructor<?> pageConst = pageClass.getConstructor(idClass, byte[].class);
       int pageSize = raf.readInt();
 
       byte[] pageData = new byte[pageSize];
@@ -284,7 +285,7 @@ public class LogFile {
       pageArgs[0] = pid;
       pageArgs[1] = pageData;
 
-      newPage = (Page) pageConsts[0].newInstance(pageArgs);
+      newPage = (Page) pageConst.newInstance(pageArgs);
 
       // Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = "
       //   + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
@@ -300,6 +301,9 @@ public class LogFile {
     } catch (InvocationTargetException e) {
       e.printStackTrace();
       throw new IOException();
+    } catch (NoSuchMethodException e) {
+      e.printStackTrace();
+      throw new IOException();
     }
     return newPage;
   }
@@ -553,6 +557,7 @@ public class LogFile {
 
       Database.getBufferPool().discardPage(pid);
       Database.getCatalog().getDatabaseFile(tableid).writePage(p);
+      HeapFile.invalidateFreeSpace(pid);
     }
 
     return true;
@@ -566,6 +571,8 @@ public class LogFile {
     try {
       logCheckpoint();  // Simple way to shutdown is to write a checkpoint record.
       raf.close();
+      // Warm up the buffer pool at the next start.
+      Database.getBufferPool().saveHotPages();
     } catch (IOException e) {
       System.out.println("ERROR SHUTTING DOWN -- IGNORING.");
       e.printStackTrace();
@@ -0,0 +1,148 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * LruKEvictionPolicy implements the LRU-K replacement algorithm of O'Neil,
+ * O'Neil and Weikum.
+ *
+ * For every page the policy remembers the logical times of its last K
+ * accesses. The victim is the page whose K-th most recent access lies
+ * furthest in the past (the largest backward K-distance). Pages with fewer
+ * than K accesses have an infinite distance and are evicted first, least
+ * recently used among them first.
+ *
+ * The history of evicted pages is retained for a while, so that a page
+ * which comes back soon after being evicted is not mistaken for a page seen
+ * only once.
+ *
+ * Resident pages are kept sorted in eviction order, so that a victim is the
+ * first page the filter accepts rather than the result of a scan of every
+ * page; a page is moved in the order on each access.
+ *
+ * @Threadsafe
+ */
+public class LruKEvictionPolicy implements EvictionPolicy {
+
+  /* A resident page, and its access times, most recent access first. */
+  private static class Entry {
+    final PageId pid;
+    final long[] history;
+
+    Entry(PageId pid, long[] history) {
+      this.pid = pid;
+      this.history = history;
+    }
+  }
+
+  private final int k;
+  private long clock;
+
+  /* Resident pages, and the same pages in eviction order. */
+  private final HashMap<PageId, Entry> resident;
+  private final TreeSet<Entry> order;
+
+  /* Access history of recently evicted pages, oldest eviction first. */
+  private final LinkedHashMap<PageId, long[]> retained;
+
+  /**
+   * Creates a LRU-K policy.
+   *
+   * @param k Number of accesses remembered per page, must be at least 1.
+   * LRU-1 is plain LRU.
+   */
+  public LruKEvictionPolicy(final int k) {
+    if (k < 1) {
+      throw new IllegalArgumentException("k must be positive");
+    }
+    this.k = k;
+    this.clock = 0;
+    this.resident = new HashMap<PageId, Entry>();
+    // The history of a page only changes while it is out of the order.
+    this.order = new TreeSet<Entry>(new Comparator<Entry>() {
+      public int compare(Entry a, Entry b) {
+        // The largest backward K-distance first, then the least recently
+        // used. No two resident pages were last accessed at the same time.
+        if (a.history[k - 1] != b.history[k - 1]) {
+          return a.history[k - 1] < b.history[k - 1] ? -1 : 1;
+        }
+        return a.history[0] < b.history[0] ? -1
+            : a.history[0] > b.history[0] ? 1 : 0;
+      }
+    });
+    this.retained = new LinkedHashMap<PageId, long[]>() {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<PageId, long[]> eldest) {
+        // Retain about as many histories as there are resident pages.
+        return size() > Math.max(resident.size(), 1);
+      }
+    };
+  }
+
+  /** Creates a LRU-2 policy. */
+  public LruKEvictionPolicy() {
+    this(2);
+  }
+
+  /** Returns a factory of LRU-K policies. */
+  public static EvictionPolicy.Factory factory(final int k) {
+    return new EvictionPolicy.Factory() {
+      public EvictionPolicy create() {
+        return new LruKEvictionPolicy(k);
+      }
+    };
+  }
+
+  public synchronized void recordAccess(PageId pid) {
+    Entry entry = resident.get(pid);
+
+    if (entry == null) {
+      long[] history = retained.remove(pid);
+      if (history == null) {
+        history = new long[k]; // 0 stands for "never accessed".
+      }
+      entry = new Entry(pid, history);
+      resident.put(pid, entry);
+    } else {
+      order.remove(entry);
+    }
+    System.arraycopy(entry.history, 0, entry.history, 1, k - 1);
+    entry.history[0] = ++clock;
+    order.add(entry);
+  }
+
+  public synchronized void remove(PageId pid) {
+    Entry entry = resident.remove(pid);
+
+    if (entry != null) {
+      order.remove(entry);
+    }
+  }
+
+  public synchronized PageId chooseVictim(Filter filter) {
+    Iterator<Entry> it = order.iterator();
+
+    while (it.hasNext()) {
+      Entry entry = it.next();
+
+      if (filter.canEvict(entry.pid)) {
+        it.remove();
+        resident.remove(entry.pid);
+        retained.put(entry.pid, entry.history);
+        return entry.pid;
+      }
+    }
+    return null;
+  }
+
+  /** Ranks the pages by backward K-distance, the smallest first. */
+  public synchronized List<PageId> hottest() {
+    List<PageId> pids = new ArrayList<PageId>(order.size());
+
+    for (Entry entry : order.descendingSet()) {
+      pids.add(entry.pid);
+    }
+    return pids;
+  }
+}
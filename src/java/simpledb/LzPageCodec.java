@@ -0,0 +1,155 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * LzPageCodec is a fast LZ77 compressor in the spirit of LZ4. It only looks
+ * for matches through a small hash table of 4-byte sequences, which is
+ * enough for the long runs of zeros and repeated values of typical pages.
+ *
+ * The compressed form is a series of sequences, each made of:
+ *  - a token byte, the number of literals in the high 4 bits and the match
+ *    length minus 4 in the low 4 bits, 15 meaning that more length bytes
+ *    follow (each adds up to 255, a byte below 255 ends the length);
+ *  - the literal bytes;
+ *  - the offset of the match back from the current position, 2 bytes
+ *    little-endian;
+ *  - the extra match length bytes.
+ * The last sequence only has literals and ends the input.
+ *
+ * @Threadsafe
+ */
+public class LzPageCodec implements PageCodec {
+
+  private static final int MIN_MATCH = 4;
+  private static final int MAX_OFFSET = 0xffff;
+  private static final int HASH_BITS = 12;
+
+  public byte[] compress(byte[] src) {
+    int n = src.length;
+    // Incompressible input costs one length byte per 255 literals.
+    byte[] dst = new byte[n + n / 255 + 16];
+    int[] table = new int[1 << HASH_BITS]; // position + 1, 0 if none
+    int op = 0;
+    int anchor = 0;
+    int i = 0;
+
+    while (i + MIN_MATCH <= n) {
+      int seq = readInt(src, i);
+      int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+      int ref = table[h] - 1;
+
+      table[h] = i + 1;
+      if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+        i += 1;
+        continue;
+      }
+
+      int len = MIN_MATCH;
+      while (i + len < n && src[ref + len] == src[i + len]) {
+        len += 1;
+      }
+      int token = op;
+      op = writeLiterals(dst, op, src, anchor, i - anchor);
+      dst[op++] = (byte) (i - ref);
+      dst[op++] = (byte) ((i - ref) >>> 8);
+      if (len - MIN_MATCH >= 15) {
+        dst[token] |= 15;
+        op = writeLength(dst, op, len - MIN_MATCH - 15);
+      } else {
+        dst[token] |= len - MIN_MATCH;
+      }
+      i += len;
+      anchor = i;
+    }
+    op = writeLiterals(dst, op, src, anchor, n - anchor);
+    return Arrays.copyOf(dst, op);
+  }
+
+  public byte[] decompress(byte[] src, int length) {
+    byte[] dst = new byte[length];
+    int ip = 0;
+    int op = 0;
+
+    try {
+      while (true) {
+        int token = src[ip++] & 0xff;
+        int literals = token >>> 4;
+
+        if (literals == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xff;
+            literals += b;
+          } while (b == 255);
+        }
+        System.arraycopy(src, ip, dst, op, literals);
+        ip += literals;
+        op += literals;
+        if (ip == src.length) {
+          break;
+        }
+
+        int offset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+        int len = token & 0xf;
+
+        ip += 2;
+        if (len == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xff;
+            len += b;
+          } while (b == 255);
+        }
+        len += MIN_MATCH;
+        if (offset == 0 || offset > op || op + len > length) {
+          throw new IllegalArgumentException("corrupt LZ page");
+        }
+        // Byte by byte, the match may overlap what it copies.
+        for (int k = 0; k < len; ++k) {
+          dst[op + k] = dst[op - offset + k];
+        }
+        op += len;
+      }
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("corrupt LZ page");
+    }
+    if (op != length) {
+      throw new IllegalArgumentException("corrupt LZ page");
+    }
+    return dst;
+  }
+
+  /*
+   * Writes the token of a sequence, with its match length left to 0, and
+   * its literals.
+   */
+  private static int writeLiterals(byte[] dst, int op, byte[] src, int from,
+      int literals) {
+    int token = op++;
+
+    if (literals >= 15) {
+      dst[token] = (byte) (15 << 4);
+      op = writeLength(dst, op, literals - 15);
+    } else {
+      dst[token] = (byte) (literals << 4);
+    }
+    System.arraycopy(src, from, dst, op, literals);
+    return op + literals;
+  }
+
+  /* Writes the length bytes following a 15 in the token. */
+  private static int writeLength(byte[] dst, int op, int len) {
+    while (len >= 255) {
+      dst[op++] = (byte) 255;
+      len -= 255;
+    }
+    dst[op++] = (byte) len;
+    return op;
+  }
+
+  private static int readInt(byte[] b, int i) {
+    return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8)
+        | ((b[i + 2] & 0xff) << 16) | ((b[i + 3] & 0xff) << 24);
+  }
+}
@@ -0,0 +1,122 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * MappedHeapFile is a HeapFile that reads its pages through a memory mapping
+ * of the file instead of copying them into new buffers. Meant for
+ * read-mostly tables that fit in the OS page cache.
+ *
+ * The file is mapped read-only in segments of segmentPages pages, each
+ * mapped on first use. Pages are HeapPages kept in a view of the mapping,
+ * and are copied to the heap when they are modified, so that the file only
+ * changes through writePage, as for a HeapFile. The last segment of the
+ * file is mapped again once the file has grown past it.
+ *
+ * @see HeapPage#HeapPage(HeapPageId, ByteBuffer).
+ */
+public class MappedHeapFile extends HeapFile {
+
+  /** Default number of pages per mapped segment, 64 MB of 4 KB pages. */
+  public static final int DEFAULT_SEGMENT_PAGES = 16384;
+
+  private final int segmentPages;
+
+  /* Mapped segments, null until used, and the bytes mapped of each. */
+  private MappedByteBuffer[] segments;
+  private long[] mapped;
+
+  /**
+   * Constructs a mapped heap file with segments of DEFAULT_SEGMENT_PAGES
+   * pages.
+   */
+  public MappedHeapFile(File f, TupleDesc td) {
+    this(f, td, DEFAULT_SEGMENT_PAGES);
+  }
+
+  /**
+   * Constructs a mapped heap file backed by the specified file.
+   *
+   * @param segmentPages Number of pages mapped at once.
+   */
+  public MappedHeapFile(File f, TupleDesc td, int segmentPages) {
+    this(f, td, segmentPages, BufferPool.getPageSize());
+  }
+
+  /**
+   * Constructs a mapped heap file backed by the specified file, with pages
+   * of the specified size.
+   *
+   * @param segmentPages Number of pages mapped at once.
+   *
+   * @param pageSize Bytes per page, including header.
+   */
+  public MappedHeapFile(File f, TupleDesc td, int segmentPages, int pageSize) {
+    super(f, td, pageSize);
+    this.segmentPages = segmentPages;
+    this.segments = new MappedByteBuffer[0];
+    this.mapped = new long[0];
+  }
+
+  /**
+   * Returns the page, kept in a read-only view of the mapping. A page that
+   * isn't all in the file is read like by a HeapFile.
+   */
+  public Page readPage(PageId pid) throws IllegalArgumentException {
+    HeapPageId hpid = new HeapPageId(pid.getTableId(), pid.pageNumber());
+
+    try {
+      ByteBuffer view = view(pid.pageNumber());
+
+      if (view == null) {
+        return super.readPage(pid);
+      }
+      return new HeapPage(hpid, view);
+    } catch (IOException e) {
+      throw new IllegalArgumentException();
+    }
+  }
+
+  /* Returns a view of the page in its segment, or null past end of file. */
+  private synchronized ByteBuffer view(int pageNo) throws IOException {
+    int pageSize = getPageSize();
+    int seg = pageNo / segmentPages;
+    long offset = (long) (pageNo % segmentPages) * pageSize;
+
+    if (seg >= segments.length) {
+      segments = Arrays.copyOf(segments, seg + 1);
+      mapped = Arrays.copyOf(mapped, seg + 1);
+    }
+    if (segments[seg] == null || offset + pageSize > mapped[seg]) {
+      // Not mapped yet, or the file may have grown since.
+      FileChannel ch = getChannel();
+      long start = (long) seg * segmentPages * pageSize;
+      long length = Math.min((long) segmentPages * pageSize, ch.size() - start);
+
+      if (offset + pageSize > length) {
+        return null;
+      }
+      segments[seg] = ch.map(FileChannel.MapMode.READ_ONLY, start, length);
+      mapped[seg] = length;
+    }
+
+    ByteBuffer view = segments[seg].duplicate();
+    view.position((int) offset);
+    view.limit((int) offset + pageSize);
+    return view.slice();
+  }
+
+  /**
+   * Closes the file and drops its mappings, which are unmapped once the
+   * pages kept in them are garbage collected.
+   */
+  public synchronized void close() throws IOException {
+    segments = new MappedByteBuffer[0];
+    mapped = new long[0];
+    super.close();
+  }
+}
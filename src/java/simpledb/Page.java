@@ -43,6 +43,8 @@ public interface Page {
    * generated by getPageData to the Page constructor and have it produce
    * an identical Page object.
    *
+   * The array may be shared with the page, and must not be modified.
+   *
    * @return A byte array correspond to the bytes of this page.
    */
   public byte[] getPageData();
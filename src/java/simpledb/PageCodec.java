@@ -0,0 +1,24 @@
+package simpledb;
+
+/**
+ * PageCodec compresses and decompresses page images, e.g. to keep evicted
+ * pages in memory at a fraction of their size.
+ *
+ * Implementations must be safe to call from multiple threads.
+ *
+ * @see CompressedPageCache.
+ */
+public interface PageCodec {
+
+  /** Returns the compressed form of the specified page image. */
+  public byte[] compress(byte[] data);
+
+  /**
+   * Restores a page image from its compressed form.
+   *
+   * @param length The size of the page image in bytes.
+   *
+   * @throws IllegalArgumentException If data was not produced by this codec.
+   */
+  public byte[] decompress(byte[] data, int length);
+}
@@ -564,7 +564,7 @@ public class Parser {
     p.start(argv);
   }
 
-  static final String usage = "Usage: parser catalogFile [-explain] [-f queryFile]";
+  static final String usage = "Usage: parser catalogFile [-explain] [-warm] [-f queryFile]";
 
   protected void shutdown() {
     System.out.println("Bye");
@@ -578,12 +578,15 @@ public class Parser {
     TableStats.computeStatistics();
 
     String queryFile = null;
+    boolean warm = false;
 
     if (argv.length > 1) {
       for (int i = 1; i < argv.length; i++) {
         if (argv[i].equals("-explain")) {
           explain = true;
           System.out.println("Explain mode enabled.");
+        } else if (argv[i].equals("-warm")) {
+          warm = true;
         } else if (argv[i].equals("-f")) {
           interactive = false;
           if (i++ == argv.length) {
@@ -597,6 +600,11 @@ public class Parser {
         }
       }
     }
+    if (warm) {
+      // After the statistics, whose scans would throw the warmed pages out.
+      Database.startWarmRestart();
+      System.out.println("Warm restart enabled.");
+    }
     if (!interactive) {
       try {
         // curtrans = new Transaction();
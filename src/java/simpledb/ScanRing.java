@@ -0,0 +1,65 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * ScanRing is a small ring of BufferPool frames private to one sequential
+ * scan of a large table. The pages the scan reads into the pool go to its
+ * ring, and once the ring is full the frame of the oldest one is recycled
+ * for the next page, instead of having the eviction policy throw out shared
+ * pages.
+ * A page of the ring that is accessed by someone else in the meantime joins
+ * the shared pages and is left in the pool.
+ *
+ * A ring belongs to a single scan and is not thread-safe.
+ *
+ * @see BufferPool#getScanRing.
+ */
+public class ScanRing {
+
+  private final int size;
+  private final ArrayDeque<PageId> pages;
+
+  ScanRing(int size) {
+    this.size = size;
+    this.pages = new ArrayDeque<PageId>(size);
+  }
+
+  /** Returns the number of frames of this ring. */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Takes the oldest page out of the ring if the ring is full, its frame is
+   * to be recycled for the next page.
+   *
+   * @return The oldest page, or null if the ring is not full.
+   */
+  PageId takeOldest() {
+    return pages.size() >= size ? pages.poll() : null;
+  }
+
+  /**
+   * Takes the oldest page out of the ring, when the pool has no other frame
+   * to spare.
+   *
+   * @return The oldest page, or null if the ring is empty.
+   */
+  PageId poll() {
+    return pages.poll();
+  }
+
+  /** Adds a page read into the ring. */
+  void add(PageId pid) {
+    pages.add(pid);
+  }
+
+  /** Empties the ring, returning the pages it held. */
+  List<PageId> clear() {
+    List<PageId> ret = new ArrayList<PageId>(pages);
+
+    pages.clear();
+    return ret;
+  }
+}
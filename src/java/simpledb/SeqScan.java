@@ -6,6 +6,10 @@ import java.util.*;
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
+ *
+ * Scans of tables bigger than the share of the BufferPool set by
+ * {@link BufferPool#setScanRingFraction} go through a small ring of frames
+ * of their own, so that they don't push the rest of the cached pages out.
  */
 public class SeqScan implements DbIterator {
 
@@ -0,0 +1,188 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * SizeAdvisor estimates the hit rate a BufferPool would have at other
+ * sizes, from the page accesses it records, and suggests a size.
+ *
+ * It simulates an LRU cache of maxPages pages: the pages accessed are kept
+ * in LRU order with the time of their last access, like a list of ghost
+ * entries, and an access to a page last seen d distinct pages ago would be a
+ * hit in any cache of more than d pages. These reuse distances are counted
+ * per size bucket, which gives the hit-rate curve up to maxPages.
+ *
+ * Large sizes are estimated from a sample of the pages, picked by hashing
+ * their ids, so that at most MAX_SAMPLED pages are tracked; distances among
+ * sampled pages are scaled up accordingly.
+ *
+ * The actual pool evicts with its own policy, the curve assumes LRU.
+ *
+ * @Threadsafe
+ */
+public class SizeAdvisor {
+
+  /** Number of size buckets of the hit-rate curve. */
+  public static final int BUCKETS = 64;
+
+  /** Largest number of pages tracked. */
+  static final int MAX_SAMPLED = 4096;
+
+  private final int maxPages;
+  private final int bucketPages;
+
+  /* One page in 2^shift is sampled. */
+  private final int shift;
+  private final int maxSampled;
+
+  /* Sampled pages in LRU order, with the time of their last access. */
+  private final LinkedHashMap<PageId, Integer> last;
+
+  /*
+   * Fenwick tree over the times of last access, counting the pages last
+   * accessed at or before a time. Times are renumbered once it's full.
+   */
+  private final int[] tree;
+  private int clock;
+
+  private final long[] hits;
+  private long accesses;
+
+  /**
+   * Creates an advisor.
+   *
+   * @param maxPages Largest pool size of the curve.
+   */
+  public SizeAdvisor(int maxPages) {
+    int shift = 0;
+
+    while ((maxPages >> shift) > MAX_SAMPLED) {
+      shift += 1;
+    }
+    this.maxPages = maxPages;
+    this.bucketPages = (maxPages + BUCKETS - 1) / BUCKETS;
+    this.shift = shift;
+    this.maxSampled = (maxPages >> shift) + 1;
+    this.last = new LinkedHashMap<PageId, Integer>(16, 0.75f, true);
+    this.tree = new int[4 * maxSampled + 1];
+    this.clock = 0;
+    this.hits = new long[BUCKETS];
+    this.accesses = 0;
+  }
+
+  /** Returns the largest pool size of the curve. */
+  public int getMaxPages() {
+    return maxPages;
+  }
+
+  /** Records an access to the specified page. */
+  public void recordAccess(PageId pid) {
+    int h = pid.hashCode() * 0x9e3779b9;
+
+    if (shift > 0 && (h >>> (32 - shift)) != 0) {
+      return;
+    }
+
+    synchronized (this) {
+      accesses += 1;
+      if (clock + 1 >= tree.length) {
+        renumber();
+      }
+
+      int now = ++clock;
+      Integer prev = last.put(pid, now);
+
+      if (prev != null) {
+        // Distinct sampled pages accessed since, this one included.
+        long distance = count(now - 1) - count(prev) + 1;
+        long pages = distance << shift;
+
+        if (pages <= maxPages) {
+          hits[(int) ((pages - 1) / bucketPages)] += 1;
+        }
+        add(prev, -1);
+      }
+      add(now, 1);
+
+      if (last.size() > maxSampled) {
+        Iterator<Integer> eldest = last.values().iterator();
+
+        add(eldest.next(), -1);
+        eldest.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the estimated fraction of the recorded accesses that a pool of
+   * the specified number of pages would serve, at most that of maxPages.
+   */
+  public synchronized double getHitRatio(int pages) {
+    if (accesses == 0) {
+      return 0;
+    }
+
+    long n = 0;
+    for (int i = 0; i < Math.min(BUCKETS, pages / bucketPages); ++i) {
+      n += hits[i];
+    }
+    return (double) n / accesses;
+  }
+
+  /**
+   * Suggests a pool size: the smallest size of the curve whose hit ratio is
+   * within tolerance of the hit ratio of maxPages pages.
+   *
+   * @param tolerance Hit ratio that may be given up, e.g. 0.01.
+   */
+  public synchronized int suggestPages(double tolerance) {
+    double best = getHitRatio(maxPages);
+
+    for (int i = 1; i < BUCKETS; ++i) {
+      if (getHitRatio(i * bucketPages) >= best - tolerance) {
+        return Math.min(maxPages, i * bucketPages);
+      }
+    }
+    return maxPages;
+  }
+
+  /** Returns the number of accesses recorded, sampled ones only. */
+  public synchronized long getAccessCount() {
+    return accesses;
+  }
+
+  /** Forgets the accesses recorded so far. */
+  public synchronized void reset() {
+    last.clear();
+    Arrays.fill(tree, 0);
+    clock = 0;
+    Arrays.fill(hits, 0);
+    accesses = 0;
+  }
+
+  /* Renumbers the times of last access from 1, in LRU order. */
+  private void renumber() {
+    Arrays.fill(tree, 0);
+    clock = 0;
+    for (Map.Entry<PageId, Integer> e : last.entrySet()) {
+      e.setValue(++clock);
+      add(clock, 1);
+    }
+  }
+
+  private void add(int time, int delta) {
+    for (int i = time; i < tree.length; i += i & -i) {
+      tree[i] += delta;
+    }
+  }
+
+  /* Returns the number of pages last accessed at or before time. */
+  private int count(int time) {
+    int n = 0;
+
+    for (int i = time; i > 0; i -= i & -i) {
+      n += tree[i];
+    }
+    return n;
+  }
+}
@@ -0,0 +1,300 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * SlottedFile is a HeapFile of SlottedPages, which keeps tuples as
+ * variable-length records, so that strings take the bytes of their value
+ * rather than the fixed Type.STRING_TYPE length. It is read and written
+ * like a HeapFile, page by page, and uses its free-space map to find a
+ * page with room for a record.
+ *
+ * A record holds the fields of a tuple in order: an int as 4 bytes, a
+ * string as an unsigned short length followed by its bytes in UTF-8. A
+ * string longer than a quarter of a page is kept on a chain of overflow
+ * pages of the file instead, and the record holds the length 0xffff, the
+ * length of the value and the number of its first overflow page, both
+ * ints. The overflow pages of a value are turned back into empty data
+ * pages when its tuple is deleted.
+ *
+ * Strings read from the file are StringFields of at least Type.STRING_LEN
+ * characters, and of the length of their value if longer.
+ *
+ * @see SlottedPage.
+ */
+public class SlottedFile extends HeapFile {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /* Length of a string kept on overflow pages. */
+  private static final int OVERFLOWED = 0xffff;
+
+  /**
+   * Constructs a slotted file backed by the specified file, with pages of
+   * the default page size.
+   */
+  public SlottedFile(File f, TupleDesc td) {
+    this(f, td, BufferPool.getPageSize());
+  }
+
+  /**
+   * Constructs a slotted file backed by the specified file, with pages of
+   * the specified size, at most SlottedPage.MAX_PAGE_SIZE.
+   */
+  public SlottedFile(File f, TupleDesc td, int pageSize) {
+    super(f, td, pageSize);
+    if (pageSize > SlottedPage.MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException("slotted pages are at most 64 KB");
+    }
+  }
+
+  Page createPage(HeapPageId pid, ByteBuffer frame) {
+    return new SlottedPage(pid, frame);
+  }
+
+  /* Longest string kept in a record. */
+  private int maxInline() {
+    return Math.min(OVERFLOWED - 1, getPageSize() / 4);
+  }
+
+  Iterator<Tuple> tuples(TransactionId tid, Page page)
+      throws DbException, TransactionAbortedException {
+    SlottedPage sp = (SlottedPage) page;
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    int n = sp.getNumSlots();
+
+    for (int slot = 0; slot < n; ++slot) {
+      byte[] record;
+      try {
+        record = sp.getRecord(slot);
+      } catch (NoSuchElementException e) {
+        continue; // An empty slot.
+      }
+      Tuple t = decode(tid, record);
+      t.setRecordId(new RecordId(sp.getId(), slot));
+      tuples.add(t);
+    }
+    return tuples.iterator();
+  }
+
+  /* Decodes a record, reading the strings kept on overflow pages. */
+  private Tuple decode(TransactionId tid, byte[] record)
+      throws DbException, TransactionAbortedException {
+    TupleDesc td = getTupleDesc();
+    Tuple t = new Tuple(td);
+    ByteBuffer in = ByteBuffer.wrap(record);
+
+    for (int i = 0; i < td.numFields(); ++i) {
+      if (td.getFieldType(i) == Type.INT_TYPE) {
+        t.setField(i, new IntField(in.getInt()));
+        continue;
+      }
+
+      int len = in.getShort() & 0xffff;
+      byte[] value;
+      if (len == OVERFLOWED) {
+        value = new byte[in.getInt()];
+        readOverflow(tid, in.getInt(), value);
+      } else {
+        value = new byte[len];
+        in.get(value);
+      }
+      String s = new String(value, UTF8);
+      t.setField(i, new StringField(s, Math.max(Type.STRING_LEN, s.length())));
+    }
+    return t;
+  }
+
+  /* Reads a value from its chain of overflow pages. */
+  private void readOverflow(TransactionId tid, int pageNo, byte[] value)
+      throws DbException, TransactionAbortedException {
+    int off = 0;
+
+    while (pageNo >= 0 && off < value.length) {
+      SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid,
+          new HeapPageId(getId(), pageNo), Permissions.READ_ONLY);
+      byte[] data = page.getOverflowData();
+
+      System.arraycopy(data, 0, value, off, Math.min(data.length, value.length - off));
+      off += data.length;
+      pageNo = page.getOverflowNext();
+    }
+    if (off != value.length) {
+      throw new DbException("overflow chain is too short");
+    }
+  }
+
+  // See DbFile.java for javadocs.
+  public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+      throws DbException, IOException, TransactionAbortedException {
+    if (!t.getTupleDesc().equals(getTupleDesc())) {
+      throw new DbException("TupleDesc is mismatch");
+    }
+
+    ArrayList<Page> ret = new ArrayList<Page>();
+    byte[] record = encode(tid, t, ret);
+    int pageSize = getPageSize();
+    if (record.length > SlottedPage.maxRecordSize(pageSize)) {
+      throw new DbException("tuple is too large for a page");
+    }
+
+    FreeSpaceMap fsm = getFreeSpaceMap();
+    // Pages of the bucket of the record may have a few bytes less than it,
+    // those of the next bucket have room.
+    int minBucket = Math.min(FreeSpaceMap.BUCKETS - 1,
+        FreeSpaceMap.bucket(record.length, pageSize) + 1);
+    int i = fsm.findFree(0, numPages(), minBucket);
+    while (i >= 0) {
+      HeapPageId pid = new HeapPageId(getId(), i);
+      SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid,
+          pid, Permissions.READ_ONLY);
+
+      if (page.getFreeSpace() >= record.length) {
+        // Upgrade the shared lock to exclusive.
+        page = (SlottedPage) Database.getBufferPool().getPage(tid, pid,
+            Permissions.READ_WRITE);
+        insert(page, t, record, ret);
+        return ret;
+      }
+      // As in HeapFile.insertTuple, a page without room is released, and
+      // the map corrected.
+      Database.getBufferPool().releasePage(tid, pid);
+      updateFreeSpace(page);
+      i = fsm.findFree(i + 1, numPages(), minBucket);
+    }
+
+    SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid,
+        new HeapPageId(getId(), newPageNumber()), Permissions.READ_WRITE);
+    insert(page, t, record, ret);
+    return ret;
+  }
+
+  private void insert(SlottedPage page, Tuple t, byte[] record,
+      ArrayList<Page> ret) throws DbException, IOException {
+    int slot = page.insertRecord(record);
+
+    t.setRecordId(new RecordId(page.getId(), slot));
+    updateFreeSpace(page);
+    ret.add(page);
+  }
+
+  /*
+   * Encodes a tuple, writing its long strings to new overflow pages, which
+   * are added to the modified pages.
+   */
+  private byte[] encode(TransactionId tid, Tuple t, ArrayList<Page> modified)
+      throws DbException, IOException, TransactionAbortedException {
+    TupleDesc td = getTupleDesc();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(baos);
+
+    for (int i = 0; i < td.numFields(); ++i) {
+      Field f = t.getField(i);
+      if (td.getFieldType(i) == Type.INT_TYPE) {
+        dos.writeInt(((IntField) f).getValue());
+        continue;
+      }
+
+      byte[] value = ((StringField) f).getValue().getBytes(UTF8);
+      if (value.length <= maxInline()) {
+        dos.writeShort(value.length);
+        dos.write(value);
+      } else {
+        dos.writeShort(OVERFLOWED);
+        dos.writeInt(value.length);
+        dos.writeInt(writeOverflow(tid, value, modified));
+      }
+    }
+    dos.flush();
+    return baos.toByteArray();
+  }
+
+  /* Writes a value to new overflow pages, returning the first one. */
+  private int writeOverflow(TransactionId tid, byte[] value,
+      ArrayList<Page> modified)
+      throws DbException, IOException, TransactionAbortedException {
+    int capacity = SlottedPage.overflowCapacity(getPageSize());
+    int n = (value.length + capacity - 1) / capacity;
+    int[] pageNos = new int[n];
+
+    for (int i = 0; i < n; ++i) {
+      pageNos[i] = newPageNumber();
+    }
+    for (int i = 0; i < n; ++i) {
+      SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid,
+          new HeapPageId(getId(), pageNos[i]), Permissions.READ_WRITE);
+      int off = i * capacity;
+
+      page.setOverflow(i + 1 < n ? pageNos[i + 1] : -1, value, off,
+          Math.min(capacity, value.length - off));
+      updateFreeSpace(page);
+      modified.add(page);
+    }
+    return pageNos[0];
+  }
+
+  // See DbFile.java for javadocs.
+  public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+      throws DbException, IOException, TransactionAbortedException {
+    ArrayList<Page> ret = new ArrayList<Page>();
+    RecordId rid = t.getRecordId();
+    if (rid == null || rid.getPageId().getTableId() != getId()) {
+      throw new DbException("tuple is not in this file");
+    }
+
+    SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid,
+        rid.getPageId(), Permissions.READ_WRITE);
+    byte[] record;
+    try {
+      record = page.getRecord(rid.tupleno());
+    } catch (NoSuchElementException e) {
+      throw new DbException("tuple slot is already empty");
+    }
+    page.deleteRecord(rid.tupleno());
+    updateFreeSpace(page);
+    ret.add(page);
+    freeOverflow(tid, record, ret);
+    return ret;
+  }
+
+  /* Turns the overflow pages of the strings of a record into empty pages. */
+  private void freeOverflow(TransactionId tid, byte[] record,
+      ArrayList<Page> modified)
+      throws DbException, IOException, TransactionAbortedException {
+    TupleDesc td = getTupleDesc();
+    ByteBuffer in = ByteBuffer.wrap(record);
+
+    for (int i = 0; i < td.numFields(); ++i) {
+      if (td.getFieldType(i) == Type.INT_TYPE) {
+        in.getInt();
+        continue;
+      }
+
+      int len = in.getShort() & 0xffff;
+      if (len != OVERFLOWED) {
+        in.position(in.position() + len);
+        continue;
+      }
+      in.getInt();
+      int pageNo = in.getInt();
+      while (pageNo >= 0) {
+        SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid,
+            new HeapPageId(getId(), pageNo), Permissions.READ_WRITE);
+
+        pageNo = page.getOverflowNext();
+        page.reset();
+        updateFreeSpace(page);
+        modified.add(page);
+      }
+    }
+  }
+
+  /* Records the free space of a page in the free-space map. */
+  private void updateFreeSpace(SlottedPage page) throws IOException {
+    getFreeSpaceMap().update(page.getId().pageNumber(), page.getFreeSpace(),
+        getPageSize());
+  }
+}
@@ -0,0 +1,321 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Each instance of SlottedPage stores one page of a SlottedFile: either
+ * variable-length records, found through a slot directory, or a piece of a
+ * value too long to be kept in a record, on an overflow page.
+ *
+ * A data page starts with a header: a kind byte (0), 3 unused bytes, the
+ * number of slots and the offset where the records start, both ints, the
+ * offset 0 standing for the end of the page. The slot directory follows,
+ * an unsigned short offset and length per slot, offset 0 for an empty slot.
+ * Records are packed from the end of the page towards the directory, and
+ * compacted when the free space between them is fragmented. A page of
+ * zeros is an empty data page.
+ *
+ * An overflow page has a kind byte of 1, 3 unused bytes, the number of the
+ * next overflow page of the value or -1, and the number of bytes of the
+ * value on this page, both ints, followed by those bytes.
+ *
+ * Pages are at most 64 KB, so that offsets and lengths fit in the slot
+ * directory. As for a HeapPage, the page's monitor is its latch.
+ *
+ * @see SlottedFile.
+ */
+public class SlottedPage extends FramedPage {
+
+  /** Bytes of the header of a page. */
+  public static final int HEADER_SIZE = 12;
+
+  /** Bytes of an entry of the slot directory. */
+  public static final int SLOT_SIZE = 4;
+
+  /** Largest page size. */
+  public static final int MAX_PAGE_SIZE = 65536;
+
+  private static final byte OVERFLOW = 1;
+
+  private final HeapPageId pid;
+
+  private TransactionId lastDirty;
+
+  /**
+   * Create a SlottedPage from a set of bytes of data read from disk, in the
+   * format described above.
+   */
+  public SlottedPage(HeapPageId id, byte[] data) throws IOException {
+    // The caller may reuse its array.
+    this(id, ByteBuffer.wrap(data.clone()));
+  }
+
+  /**
+   * Create a SlottedPage that keeps its data in the specified heap frame,
+   * without copying it. The frame must hold exactly one page.
+   */
+  public SlottedPage(HeapPageId id, ByteBuffer frame) {
+    super(frame, frame.capacity());
+    this.pid = id;
+    if (pageSize > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException("slotted pages are at most 64 KB");
+    }
+  }
+
+  /* A page sharing the specified bytes, copied before it is modified. */
+  private SlottedPage(SlottedPage page, byte[] data) {
+    super(data, page.pageSize);
+    this.pid = page.pid;
+  }
+
+  /** Returns an empty data page of the specified size. */
+  public static byte[] createEmptyPageData(int pageSize) {
+    return new byte[pageSize]; // all 0
+  }
+
+  public HeapPageId getId() {
+    return pid;
+  }
+
+  public void markDirty(boolean dirty, TransactionId tid) {
+    lastDirty = dirty ? tid : null;
+  }
+
+  public TransactionId isDirty() {
+    return lastDirty;
+  }
+
+  /** Returns a view of this page before it was modified. */
+  public SlottedPage getBeforeImage() {
+    return new SlottedPage(this, getBeforeImageData());
+  }
+
+  /** Returns true if this is an overflow page. */
+  public synchronized boolean isOverflow() {
+    return frame.get(0) == OVERFLOW;
+  }
+
+  /** Returns the number of slots of the directory of a data page. */
+  public synchronized int getNumSlots() {
+    return isOverflow() ? 0 : frame.getInt(4);
+  }
+
+  /* Offset of the first record of a data page. */
+  private int recordStart() {
+    int start = frame.getInt(8);
+    return start == 0 ? pageSize : start;
+  }
+
+  private int slotOffset(int slot) {
+    return frame.getShort(HEADER_SIZE + slot * SLOT_SIZE) & 0xffff;
+  }
+
+  private int slotLength(int slot) {
+    return frame.getShort(HEADER_SIZE + slot * SLOT_SIZE + 2) & 0xffff;
+  }
+
+  private void setSlot(int slot, int offset, int length) {
+    frame.putShort(HEADER_SIZE + slot * SLOT_SIZE, (short) offset);
+    frame.putShort(HEADER_SIZE + slot * SLOT_SIZE + 2, (short) length);
+  }
+
+  /** Returns true if the specified slot of a data page holds a record. */
+  public synchronized boolean isSlotUsed(int slot) {
+    return slot >= 0 && slot < getNumSlots() && slotOffset(slot) != 0;
+  }
+
+  /* Returns the first empty slot, or the number of slots if none is. */
+  private int emptySlot() {
+    int n = getNumSlots();
+
+    for (int i = 0; i < n; ++i) {
+      if (slotOffset(i) == 0) {
+        return i;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Returns the largest record that can be inserted into this page, 0 for
+   * an overflow page.
+   */
+  public synchronized int getFreeSpace() {
+    if (isOverflow()) {
+      return 0;
+    }
+
+    int n = getNumSlots();
+    int used = HEADER_SIZE + n * SLOT_SIZE;
+    for (int i = 0; i < n; ++i) {
+      used += slotLength(i);
+    }
+    if (emptySlot() == n) {
+      used += SLOT_SIZE;
+    }
+    return Math.max(0, pageSize - used);
+  }
+
+  /** Returns the largest record that fits on an empty page of a size. */
+  public static int maxRecordSize(int pageSize) {
+    return pageSize - HEADER_SIZE - SLOT_SIZE;
+  }
+
+  /** Returns a copy of the record in the specified used slot. */
+  public synchronized byte[] getRecord(int slot) throws NoSuchElementException {
+    if (!isSlotUsed(slot)) {
+      throw new NoSuchElementException();
+    }
+
+    byte[] record = new byte[slotLength(slot)];
+    ByteBuffer in = frame.duplicate();
+
+    in.clear();
+    in.position(slotOffset(slot));
+    in.get(record);
+    return record;
+  }
+
+  /**
+   * Adds a record to this data page.
+   *
+   * @return The slot of the record.
+   *
+   * @throws DbException If this is an overflow page, or the record doesn't
+   * fit.
+   */
+  public synchronized int insertRecord(byte[] record) throws DbException {
+    if (record.length == 0 || record.length > getFreeSpace()) {
+      throw new DbException("the page is full");
+    }
+    preserveBeforeImage();
+
+    int slot = emptySlot();
+    int n = getNumSlots();
+    int directoryEnd = HEADER_SIZE + Math.max(n, slot + 1) * SLOT_SIZE;
+    if (recordStart() - directoryEnd < record.length) {
+      compact();
+    }
+
+    int offset = recordStart() - record.length;
+    ByteBuffer out = frame.duplicate();
+    out.clear();
+    out.position(offset);
+    out.put(record);
+
+    if (slot == n) {
+      frame.putInt(4, n + 1);
+    }
+    setSlot(slot, offset, record.length);
+    frame.putInt(8, offset);
+    return slot;
+  }
+
+  /**
+   * Deletes the record in the specified slot of this data page.
+   *
+   * @throws DbException If the slot is empty.
+   */
+  public synchronized void deleteRecord(int slot) throws DbException {
+    if (!isSlotUsed(slot)) {
+      throw new DbException("tuple slot is already empty");
+    }
+    preserveBeforeImage();
+    setSlot(slot, 0, 0);
+    for (int i = 0; i < getNumSlots(); ++i) {
+      if (slotOffset(i) != 0) {
+        return;
+      }
+    }
+    // Nothing left, the page is empty again.
+    frame.putInt(4, 0);
+    frame.putInt(8, 0);
+  }
+
+  /* Moves the records to the end of the page, in their slot order. */
+  private void compact() {
+    int n = getNumSlots();
+    byte[][] records = new byte[n][];
+    ByteBuffer in = frame.duplicate();
+
+    for (int i = 0; i < n; ++i) {
+      if (slotOffset(i) != 0) {
+        records[i] = new byte[slotLength(i)];
+        in.clear();
+        in.position(slotOffset(i));
+        in.get(records[i]);
+      }
+    }
+
+    int offset = pageSize;
+    ByteBuffer out = frame.duplicate();
+    for (int i = 0; i < n; ++i) {
+      if (records[i] != null) {
+        offset -= records[i].length;
+        out.clear();
+        out.position(offset);
+        out.put(records[i]);
+        setSlot(i, offset, records[i].length);
+      }
+    }
+    frame.putInt(8, offset == pageSize ? 0 : offset);
+  }
+
+  /** Returns the largest number of bytes of a value on an overflow page. */
+  public static int overflowCapacity(int pageSize) {
+    return pageSize - HEADER_SIZE;
+  }
+
+  /**
+   * Turns this page into an overflow page holding the specified bytes of a
+   * value.
+   *
+   * @param next The number of the next overflow page of the value, or -1.
+   */
+  public synchronized void setOverflow(int next, byte[] data, int off, int len) {
+    if (len > overflowCapacity(pageSize)) {
+      throw new IllegalArgumentException("too many bytes for a page");
+    }
+    preserveBeforeImage();
+    clear();
+    frame.put(0, OVERFLOW);
+    frame.putInt(4, next);
+    frame.putInt(8, len);
+
+    ByteBuffer out = frame.duplicate();
+    out.clear();
+    out.position(HEADER_SIZE);
+    out.put(data, off, len);
+  }
+
+  /** Returns the number of the next page of an overflow page, or -1. */
+  public synchronized int getOverflowNext() {
+    return frame.getInt(4);
+  }
+
+  /** Returns a copy of the bytes of a value kept on an overflow page. */
+  public synchronized byte[] getOverflowData() {
+    byte[] data = new byte[frame.getInt(8)];
+    ByteBuffer in = frame.duplicate();
+
+    in.clear();
+    in.position(HEADER_SIZE);
+    in.get(data);
+    return data;
+  }
+
+  /** Turns this page back into an empty data page. */
+  public synchronized void reset() {
+    preserveBeforeImage();
+    clear();
+  }
+
+  private void clear() {
+    ByteBuffer out = frame.duplicate();
+
+    out.clear();
+    out.put(new byte[pageSize]);
+  }
+}
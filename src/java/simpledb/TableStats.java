@@ -16,6 +16,7 @@ public class TableStats {
   private static final ConcurrentHashMap<String, TableStats> statsMap =
     new ConcurrentHashMap<String, TableStats>();
 
+  /** Cost of reading a page of the default page size. */
   static final int IOCOSTPERPAGE = 1000;
 
   public static TableStats getTableStats(String tablename) {
@@ -52,12 +53,23 @@ public class TableStats {
     System.out.println("Computing table stats.");
     while (tableIt.hasNext()) {
       int tableid = tableIt.next();
-      TableStats s = new TableStats(tableid, IOCOSTPERPAGE);
+      TableStats s = new TableStats(tableid, ioCostPerPage(tableid));
       setTableStats(Database.getCatalog().getTableName(tableid), s);
     }
     System.out.println("Done.");
   }
 
+  /**
+   * Returns the cost of reading a page of the specified table, which is in
+   * proportion to the page size of the table, so that the cost of a scan
+   * follows the number of bytes read.
+   */
+  static int ioCostPerPage(int tableid) {
+    long cost = (long) IOCOSTPERPAGE * BufferPool.getPageSize(tableid) / BufferPool.PAGE_SIZE;
+
+    return (int) Math.max(1, Math.min(Integer.MAX_VALUE, cost));
+  }
+
   /**
    * Number of bins for the histogram. Feel free to increase this value over
    * 100, though our tests assume that you have at least 100 bins in your
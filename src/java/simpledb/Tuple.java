@@ -1,6 +1,9 @@
 package simpledb;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -16,6 +19,9 @@ public class Tuple implements Serializable {
   private ArrayList<Field> fields = null;
   private RecordId recordId = null;
 
+  /* Encoded fields not decoded yet, see Tuple(TupleDesc, ByteBuffer). */
+  private transient ByteBuffer encoded = null;
+
   /**
    * Create a new tuple with the specified schema (type).
    * 
@@ -26,6 +32,16 @@ public class Tuple implements Serializable {
     resetTupleDesc(td);
   }
 
+  /**
+   * Create a new tuple with the specified schema, whose fields are decoded
+   * from the specified bytes, in the format written by Field.serialize, as
+   * they are first read. The bytes must not change afterwards.
+   */
+  Tuple(TupleDesc td, ByteBuffer encoded) {
+    resetTupleDesc(td);
+    this.encoded = encoded;
+  }
+
   /**
    * Returns the TupleDesc representing the schema of this tuple.
    */
@@ -67,7 +83,23 @@ public class Tuple implements Serializable {
    * @param i Field index to return. Must be a valid index.
    */
   public Field getField(int i) {
-    return fields.get(i);
+    Field f = fields.get(i);
+
+    if (f == null && encoded != null) {
+      f = td.getFieldType(i).parse(encoded, td.getFieldOffset(i));
+      fields.set(i, f);
+    }
+    return f;
+  }
+
+  /* Decodes the fields that haven't been read yet. */
+  private void decodeAll() {
+    if (encoded != null) {
+      for (int i = 0; i < fields.size(); ++i) {
+        getField(i);
+      }
+      encoded = null;
+    }
   }
 
   /**
@@ -79,6 +111,7 @@ public class Tuple implements Serializable {
    * where \t is any whitespace, except newline, and \n is a newline.
    */
   public String toString() {
+    decodeAll();
     String ret = new String();
     for (int i = 0; i < fields.size(); ++i) {
       ret += fields.get(i).toString();
@@ -91,6 +124,7 @@ public class Tuple implements Serializable {
    * Returns an iterator which iterates over all the fields of this tuple.
    * */
   public Iterator<Field> fields() {
+    decodeAll();
     return fields.iterator();
   }
   
@@ -99,10 +133,16 @@ public class Tuple implements Serializable {
    * */
   public void resetTupleDesc(TupleDesc td) {
     this.td = td;
+    this.encoded = null;
 
     this.fields = new ArrayList<Field>(td.numFields());
     for (int i = 0; i < td.numFields(); ++i) {
       this.fields.add(null);
     }
   }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    decodeAll();
+    out.defaultWriteObject();
+  }
 }
@@ -37,6 +37,9 @@ public class TupleDesc implements Serializable {
 
   private final ArrayList<TDItem> tupleds;
 
+  /* Offsets of the fields in an encoded tuple, and its size last. */
+  private transient int[] offsets;
+
   /**
    * @return An iterator which iterates over all the field tupleds that
    * are included in this TupleDesc.
@@ -140,10 +143,33 @@ public class TupleDesc implements Serializable {
    * Note that tuples from a given TupleDesc are of a fixed size.
    */
   public int getSize() {
-    int ret = 0;
+    return getOffsets()[tupleds.size()];
+  }
 
-    for (int i = 0; i < tupleds.size(); ++i) {
-      ret += tupleds.get(i).fieldType.getLen();
+  /**
+   * @return The offset (in bytes) of the ith field in tuples corresponding
+   * to this TupleDesc, as encoded on a page.
+   *
+   * @param i The index of the field. It must be a valid index.
+   *
+   * @throws NoSuchElementException If i is not a valid field reference.
+   */
+  public int getFieldOffset(int i) throws NoSuchElementException {
+    if (i < 0 || i >= numFields()) {
+      throw new NoSuchElementException();
+    }
+    return getOffsets()[i];
+  }
+
+  private int[] getOffsets() {
+    int[] ret = offsets;
+
+    if (ret == null) {
+      ret = new int[tupleds.size() + 1];
+      for (int i = 0; i < tupleds.size(); ++i) {
+        ret[i + 1] = ret[i] + tupleds.get(i).fieldType.getLen();
+      }
+      offsets = ret;
     }
     return ret;
   }
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +25,10 @@ public enum Type implements Serializable {
       }
     }
 
+    @Override
+    public Field parse(ByteBuffer bb, int offset) {
+      return new IntField(bb.getInt(offset));
+    }
   },
   STRING_TYPE() {
     @Override
@@ -43,6 +48,17 @@ public enum Type implements Serializable {
         throw new ParseException("couldn't parse", 0);
       }
     }
+
+    @Override
+    public Field parse(ByteBuffer bb, int offset) {
+      int strLen = Math.max(0, Math.min(STRING_LEN, bb.getInt(offset)));
+      byte bs[] = new byte[strLen];
+
+      for (int i = 0; i < strLen; ++i) {
+        bs[i] = bb.get(offset + 4 + i);
+      }
+      return new StringField(new String(bs), STRING_LEN);
+    }
   };
   
   public static final int STRING_LEN = 128;
@@ -62,4 +78,15 @@ public enum Type implements Serializable {
    * of the appropriate type.
    */
   public abstract Field parse(DataInputStream dis) throws ParseException;
+
+  /**
+   * @return A Field object of the same type as this object that has contents
+   * read from the specified buffer at the specified offset, as written by
+   * {@link Field#serialize}. The position of the buffer is not changed.
+   *
+   * @param bb The buffer to read from.
+   *
+   * @param offset The absolute offset of the field in the buffer.
+   */
+  public abstract Field parse(ByteBuffer bb, int offset);
 }
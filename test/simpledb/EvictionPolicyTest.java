@@ -0,0 +1,114 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static final EvictionPolicy.Filter ANY = new EvictionPolicy.Filter() {
+        public boolean canEvict(PageId pid) {
+            return true;
+        }
+    };
+
+    private static PageId pid(int pgNo) {
+        return new HeapPageId(1, pgNo);
+    }
+
+    private static EvictionPolicy.Filter except(final PageId... pinned) {
+        final Set<PageId> set = new HashSet<PageId>();
+        for (PageId p : pinned)
+            set.add(p);
+        return new EvictionPolicy.Filter() {
+            public boolean canEvict(PageId pid) {
+                return !set.contains(pid);
+            }
+        };
+    }
+
+    /**
+     * Unit test for ClockEvictionPolicy: a page accessed once goes before
+     * pages that keep being referenced.
+     */
+    @Test public void clockPrefersUnreferenced() {
+        EvictionPolicy policy = new ClockEvictionPolicy();
+        for (int i = 0; i < 4; ++i)
+            policy.recordAccess(pid(i));
+        for (int round = 0; round < 3; ++round) {
+            policy.recordAccess(pid(0));
+            policy.recordAccess(pid(1));
+            policy.recordAccess(pid(3));
+        }
+        assertEquals(pid(2), policy.chooseVictim(ANY));
+    }
+
+    /**
+     * Unit test for ClockEvictionPolicy: the filter is honored and removed
+     * pages are never returned.
+     */
+    @Test public void clockFilterAndRemove() {
+        EvictionPolicy policy = new ClockEvictionPolicy();
+        for (int i = 0; i < 3; ++i)
+            policy.recordAccess(pid(i));
+        policy.remove(pid(0));
+        assertEquals(pid(2), policy.chooseVictim(except(pid(1))));
+        assertNull(policy.chooseVictim(except(pid(1))));
+        assertEquals(pid(1), policy.chooseVictim(ANY));
+        assertNull(policy.chooseVictim(ANY));
+    }
+
+    /**
+     * Unit test for LruKEvictionPolicy: pages referenced fewer than K times
+     * go first, then the one with the oldest K-th reference.
+     */
+    @Test public void lru2BackwardDistance() {
+        EvictionPolicy policy = new LruKEvictionPolicy(2);
+        policy.recordAccess(pid(0));
+        policy.recordAccess(pid(1));
+        policy.recordAccess(pid(0));
+        policy.recordAccess(pid(2));
+        policy.recordAccess(pid(1));
+        policy.recordAccess(pid(3));
+
+        // 2 and 3 were seen once, 2 less recently.
+        assertEquals(pid(2), policy.chooseVictim(ANY));
+        assertEquals(pid(3), policy.chooseVictim(ANY));
+        // 0's second most recent access is older than 1's.
+        assertEquals(pid(0), policy.chooseVictim(ANY));
+        assertEquals(pid(1), policy.chooseVictim(ANY));
+        assertNull(policy.chooseVictim(ANY));
+    }
+
+    /**
+     * Unit test for LruKEvictionPolicy: the history of an evicted page is
+     * retained and counts when it comes back.
+     */
+    @Test public void lru2RetainedHistory() {
+        EvictionPolicy policy = new LruKEvictionPolicy(2);
+        policy.recordAccess(pid(0));
+        policy.recordAccess(pid(1));
+        assertEquals(pid(0), policy.chooseVictim(ANY));
+        policy.recordAccess(pid(0));
+        policy.recordAccess(pid(2));
+        // 0 now has two references, 1 and 2 only one.
+        assertEquals(pid(1), policy.chooseVictim(ANY));
+        assertEquals(pid(2), policy.chooseVictim(ANY));
+        assertEquals(pid(0), policy.chooseVictim(ANY));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
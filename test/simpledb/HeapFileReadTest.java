@@ -143,6 +143,41 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertTrue(tup1.getField(0).toString().equals("1"));
     }
      
+    /**
+     * Unit test for HeapFile.close(): the file is opened again on the next
+     * read.
+     */
+    @Test
+    public void readAfterClose() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        hf.readPage(pid);
+        hf.close();
+        hf.close();
+        assertEquals(484, ((HeapPage) hf.readPage(pid)).getNumEmptySlots());
+    }
+
+    /**
+     * A read interrupted in another thread closes the channel, later reads
+     * still work.
+     */
+    @Test
+    public void readAfterInterrupt() throws Exception {
+        final HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        Thread t = new Thread() {
+            public void run() {
+                Thread.currentThread().interrupt();
+                try {
+                    hf.readPage(pid);
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+        };
+        t.start();
+        t.join();
+        assertEquals(484, ((HeapPage) hf.readPage(pid)).getNumEmptySlots());
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.io.File;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +45,76 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    private static void writeEmptyPage(HeapFile hf, int pageNo) throws Exception {
+        hf.writePage(new HeapPage(new HeapPageId(hf.getId(), pageNo),
+                HeapPage.createEmptyPageData()));
+    }
+
+    /**
+     * Unit test for HeapFile extents: the file grows by extents as large as
+     * it is, within bounds, and is truncated to the pages written when
+     * closed.
+     */
+    @Test public void extents() throws Exception {
+        File f = File.createTempFile("extents", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.openHeapFile(2, f);
+        int pageSize = BufferPool.getPageSize();
+        hf.setExtentPages(4, 8);
+
+        writeEmptyPage(hf, 0);
+        assertEquals(4 * pageSize, f.length());
+        writeEmptyPage(hf, 3);
+        assertEquals(4 * pageSize, f.length());
+        writeEmptyPage(hf, 4);
+        assertEquals(8 * pageSize, f.length());
+        writeEmptyPage(hf, 9);
+        assertEquals(16 * pageSize, f.length());
+        writeEmptyPage(hf, 16);
+        assertEquals(24 * pageSize, f.length());
+
+        hf.close();
+        assertEquals(17 * pageSize, f.length());
+    }
+
+    /**
+     * Unit test for HeapFile extents: the pages inserted are kept when the
+     * file is closed, and read back.
+     */
+    @Test public void extentsKeepPages() throws Exception {
+        for (int i = 0; i < 504 * 2 + 1; ++i) {
+            Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(3, empty.numPages());
+        assertTrue(empty.getFile().length() > 3 * BufferPool.getPageSize());
+
+        empty.close();
+        assertEquals(3 * BufferPool.getPageSize(), empty.getFile().length());
+        HeapPage last = (HeapPage) empty.readPage(new HeapPageId(empty.getId(), 2));
+        assertEquals(503, last.getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for HeapFile extents: a file that was not closed opens with
+     * the pages inserted, not with the empty pages of its last extent.
+     */
+    @Test public void extentsNotClosed() throws Exception {
+        for (int i = 0; i < 504 * 2 + 1; ++i) {
+            Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(empty.getFile().length() > 3 * BufferPool.getPageSize());
+
+        HeapFile reopened = new HeapFile(empty.getFile(), empty.getTupleDesc());
+        assertEquals(3, reopened.numPages());
+
+        // Pages written directly count too.
+        writeEmptyPage(empty, 5);
+        reopened = new HeapFile(empty.getFile(), empty.getTupleDesc());
+        assertEquals(6, reopened.numPages());
+    }
+
     /**
      * JUnit suite target
      */
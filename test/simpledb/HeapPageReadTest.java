@@ -4,8 +4,7 @@ import simpledb.TestUtil.SkeletonFile;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.util.*;
 
 import org.junit.Before;
@@ -13,6 +12,7 @@ import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import junit.framework.JUnit4TestAdapter;
 
 public class HeapPageReadTest extends SimpleDbTestBase {
@@ -120,6 +120,45 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for HeapPage.getField()
+     */
+    @Test public void getField() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+
+        for (int row = 0; row < EXAMPLE_VALUES.length; ++row) {
+            assertEquals(new IntField(EXAMPLE_VALUES[row][0]), page.getField(row, 0));
+            assertEquals(new IntField(EXAMPLE_VALUES[row][1]), page.getField(row, 1));
+        }
+        try {
+            page.getField(20, 0);
+            fail("slot 20 is empty");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tuples read from a page don't change with the page, and print and
+     * serialize all their fields.
+     */
+    @Test public void lazyTuple() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        Tuple tup = page.iterator().next();
+        page.deleteTuple(tup);
+
+        assertEquals(EXAMPLE_VALUES[0][0] + " " + EXAMPLE_VALUES[0][1] + "\n", tup.toString());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        Tuple next = page.iterator().next();
+        next.setRecordId(null);
+        out.writeObject(next);
+        out.close();
+        Tuple copy = (Tuple) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(new IntField(EXAMPLE_VALUES[1][1]), copy.getField(1));
+    }
+
     /**
      * JUnit suite target
      */
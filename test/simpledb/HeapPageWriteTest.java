@@ -1,11 +1,14 @@
 package simpledb;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -173,6 +176,81 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for a HeapPage kept in a frame: modifications produce the
+     * same bytes as on a decoded page, and the before-image is preserved.
+     */
+    @Test public void framedPage() throws Exception {
+        ByteBuffer frame = ByteBuffer.allocateDirect(BufferPool.getPageSize());
+        frame.put(HeapPageWriteTest.EXAMPLE_DATA);
+        HeapPage framed = new HeapPage(pid, frame);
+        HeapPage decoded = new HeapPage(pid, HeapPageWriteTest.EXAMPLE_DATA);
+
+        Tuple first = framed.iterator().next();
+        framed.deleteTuple(first);
+        decoded.deleteTuple(decoded.iterator().next());
+        framed.insertTuple(Utility.getHeapTuple(7, 2));
+        framed.insertTuple(Utility.getHeapTuple(8, 2));
+        decoded.insertTuple(Utility.getHeapTuple(7, 2));
+        decoded.insertTuple(Utility.getHeapTuple(8, 2));
+
+        assertEquals(decoded.getNumEmptySlots(), framed.getNumEmptySlots());
+        assertArrayEquals(decoded.getPageData(), framed.getPageData());
+        assertArrayEquals(HeapPageWriteTest.EXAMPLE_DATA,
+                framed.getBeforeImage().getPageData());
+
+        // Moving the page out leaves it intact when the old frame is reused.
+        byte[] data = framed.getPageData();
+        assertTrue(framed.moveTo(ByteBuffer.allocate(BufferPool.getPageSize())) == frame);
+        frame.clear();
+        frame.put(new byte[BufferPool.getPageSize()]);
+        assertArrayEquals(data, framed.getPageData());
+        assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(7, 2), framed.iterator().next()));
+
+        framed.setBeforeImage();
+        assertTrue(Arrays.equals(data, framed.getBeforeImage().getPageData()));
+    }
+
+    /**
+     * Unit test for HeapPage.getPageData: the image handed out is not copied,
+     * and does not change when the page is modified afterwards.
+     */
+    @Test public void pageDataSnapshot() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageWriteTest.EXAMPLE_DATA);
+        byte[] data = page.getPageData();
+        assertTrue(data == page.getPageData());
+
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        assertArrayEquals(HeapPageWriteTest.EXAMPLE_DATA, data);
+        byte[] modified = page.getPageData();
+        assertTrue(data != modified);
+        assertTrue(modified == page.getPageData());
+
+        byte[] copy = modified.clone();
+        page.deleteTuple(page.iterator().next());
+        assertArrayEquals(copy, modified);
+        assertEquals(page.getNumEmptySlots(), new HeapPage(pid, page.getPageData()).getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for HeapPage.getBeforeImage: the image shares the bytes of
+     * the page until either is modified.
+     */
+    @Test public void beforeImageShared() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageWriteTest.EXAMPLE_DATA);
+        HeapPage before = page.getBeforeImage();
+        assertTrue(before.getPageData() == page.getPageData());
+
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        assertArrayEquals(HeapPageWriteTest.EXAMPLE_DATA, before.getPageData());
+        assertTrue(before.getPageData() == page.getBeforeImage().getPageData());
+
+        // Modifying the image leaves the preserved bytes alone.
+        before.deleteTuple(before.iterator().next());
+        assertArrayEquals(HeapPageWriteTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+        assertEquals(page.getNumEmptySlots() + 2, before.getNumEmptySlots());
+    }
+
     /**
      * JUnit suite target
      */
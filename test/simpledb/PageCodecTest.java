@@ -0,0 +1,96 @@
+package simpledb;
+
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageCodecTest extends SimpleDbTestBase {
+  private static final PageCodec[] CODECS = {
+    new LzPageCodec(), new DeflatePageCodec(),
+  };
+
+  /**
+   * Set up initial resources for each unit test.
+   */
+  @Before public void addTable() throws Exception {
+    Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)),
+        SystemTestUtil.getUUID());
+  }
+
+  private static byte[] roundTrip(PageCodec codec, byte[] data) {
+    byte[] compressed = codec.compress(data);
+    assertArrayEquals(data, codec.decompress(compressed, data.length));
+    return compressed;
+  }
+
+  /**
+   * Unit test for PageCodec: empty pages shrink to a few bytes.
+   */
+  @Test public void emptyPage() throws Exception {
+    byte[] data = HeapPage.createEmptyPageData();
+
+    for (PageCodec codec : CODECS) {
+      assertTrue(roundTrip(codec, data).length < 64);
+    }
+    roundTrip(new LzPageCodec(), new byte[0]);
+  }
+
+  /**
+   * Unit test for PageCodec: pages of tuples, and random bytes which don't
+   * compress.
+   */
+  @Test public void dataPages() throws Exception {
+    Random r = new Random(7);
+    HeapPageId pid = new HeapPageId(-1, 0);
+    HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+
+    for (int i = 0; i < 300; ++i) {
+      Tuple t = Utility.getHeapTuple(new int[] { r.nextInt(1000), i });
+      page.insertTuple(t);
+    }
+    byte[] random = new byte[BufferPool.getPageSize()];
+    r.nextBytes(random);
+
+    for (PageCodec codec : CODECS) {
+      assertTrue(roundTrip(codec, page.getPageData()).length
+          < BufferPool.getPageSize() * 3 / 4);
+      roundTrip(codec, random);
+      // Short pages and odd tails.
+      roundTrip(codec, Arrays.copyOf(random, 3));
+      roundTrip(codec, Arrays.copyOf(page.getPageData(), 1001));
+    }
+  }
+
+  /**
+   * Unit test for PageCodec: a corrupt image is refused.
+   */
+  @Test public void corruptData() throws Exception {
+    byte[] data = HeapPage.createEmptyPageData();
+
+    for (PageCodec codec : CODECS) {
+      byte[] compressed = codec.compress(data);
+      try {
+        codec.decompress(Arrays.copyOf(compressed, compressed.length - 1),
+            data.length);
+        fail(codec.getClass().getName() + " accepted a truncated image");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PageCodecTest.class);
+  }
+}
@@ -0,0 +1,128 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+public class PinTest extends TestUtil.CreateHeapFile {
+  private PageId p0, p1, p2;
+  private TransactionId tid;
+  private BufferPool bp;
+
+  /**
+   * Set up initial resources for each unit test.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+
+    // create a new empty HeapFile and populate it with three pages.
+    TransactionId t = new TransactionId();
+    for (int i = 0; i < 1025; ++i) {
+      empty.insertTuple(t, Utility.getHeapTuple(i, 2));
+    }
+    assertEquals(3, empty.numPages());
+    Database.getBufferPool().flushAllPages();
+
+    this.p0 = new HeapPageId(empty.getId(), 0);
+    this.p1 = new HeapPageId(empty.getId(), 1);
+    this.p2 = new HeapPageId(empty.getId(), 2);
+    this.tid = new TransactionId();
+    this.bp = Database.resetBufferPool(2);
+  }
+
+  /**
+   * Unit test for BufferPool.pin(): a pinned page stays cached while other
+   * pages cycle through the pool.
+   */
+  @Test public void pinnedPageNotEvicted() throws Exception {
+    Page page = bp.pin(tid, p0, Permissions.READ_ONLY);
+    assertEquals(1, bp.getPinCount(p0));
+
+    for (int i = 0; i < 3; ++i) {
+      bp.getPage(tid, p1, Permissions.READ_ONLY);
+      bp.getPage(tid, p2, Permissions.READ_ONLY);
+    }
+    long misses = bp.getMissCount();
+    assertSame(page, bp.getPage(tid, p0, Permissions.READ_ONLY));
+    assertEquals(misses, bp.getMissCount());
+  }
+
+  /**
+   * Unit test for BufferPool.unpin(): pins are counted, and the page can
+   * only go once the last pin is dropped.
+   */
+  @Test public void pinCount() throws Exception {
+    bp.pin(tid, p0, Permissions.READ_ONLY);
+    bp.pin(tid, p1, Permissions.READ_ONLY);
+    bp.pin(tid, p1, Permissions.READ_ONLY);
+    assertEquals(2, bp.getPinCount(p1));
+
+    try {
+      bp.getPage(tid, p2, Permissions.READ_ONLY);
+      fail("all frames are pinned; expected DbException");
+    } catch (DbException e) {
+      // explicitly ignored
+    }
+
+    bp.unpin(tid, p1);
+    assertEquals(1, bp.getPinCount(p1));
+    bp.unpin(tid, p0);
+    assertEquals(0, bp.getPinCount(p0));
+    bp.getPage(tid, p2, Permissions.READ_ONLY);
+    // Unpinning a page twice is harmless.
+    bp.unpin(tid, p0);
+    assertEquals(0, bp.getPinCount(p0));
+  }
+
+  /**
+   * Unit test for BufferPool.getPage(): a miss on a pool whose frames are
+   * all pinned waits for another thread to unpin one.
+   */
+  @Test public void missWaitsForUnpin() throws Exception {
+    final TransactionId other = new TransactionId();
+    bp.pin(other, p0, Permissions.READ_ONLY);
+    bp.pin(other, p1, Permissions.READ_ONLY);
+
+    Thread unpinner = new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          return;
+        }
+        bp.unpin(other, p1);
+      }
+    };
+    unpinner.start();
+    bp.getPage(tid, p2, Permissions.READ_ONLY);
+    unpinner.join();
+    assertEquals(1, bp.getPinCount(p0));
+  }
+
+  /**
+   * Unit test for BufferPool.transactionComplete(): the pins of a
+   * transaction are dropped with its locks.
+   */
+  @Test public void completeDropsPins() throws Exception {
+    TransactionId other = new TransactionId();
+    bp.pin(tid, p0, Permissions.READ_ONLY);
+    bp.pin(other, p0, Permissions.READ_ONLY);
+    bp.pin(tid, p1, Permissions.READ_ONLY);
+    assertEquals(2, bp.getPinCount(p0));
+
+    bp.transactionComplete(tid);
+    assertEquals(1, bp.getPinCount(p0));
+    assertEquals(0, bp.getPinCount(p1));
+    bp.getPage(other, p2, Permissions.READ_ONLY);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PinTest.class);
+  }
+}
@@ -0,0 +1,79 @@
+package simpledb;
+
+import java.util.*;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+public class SizeAdvisorTest {
+
+  /** Loops over pages pages of a table, rounds times. */
+  private static void loop(SizeAdvisor advisor, int pages, int rounds) {
+    for (int r = 0; r < rounds; ++r) {
+      for (int i = 0; i < pages; ++i) {
+        advisor.recordAccess(new HeapPageId(1, i));
+      }
+    }
+  }
+
+  /**
+   * Unit test for SizeAdvisor: a loop over 100 pages only hits in a cache
+   * of 100 pages or more.
+   */
+  @Test public void loopCurve() {
+    SizeAdvisor advisor = new SizeAdvisor(400);
+    loop(advisor, 100, 10);
+
+    assertEquals(1000, advisor.getAccessCount());
+    assertEquals(0.0, advisor.getHitRatio(99), 0.0);
+    assertEquals(0.9, advisor.getHitRatio(112), 0.001);
+    assertEquals(0.9, advisor.getHitRatio(400), 0.001);
+
+    int suggested = advisor.suggestPages(0.01);
+    assertTrue(suggested >= 100 && suggested < 100 + 400 / SizeAdvisor.BUCKETS + 1);
+  }
+
+  /**
+   * Unit test for SizeAdvisor: a hot set reused at short distances gets a
+   * small suggestion even among cold accesses.
+   */
+  @Test public void hotSet() {
+    SizeAdvisor advisor = new SizeAdvisor(1000);
+    Random r = new Random(1);
+
+    for (int i = 0; i < 20000; ++i) {
+      if (i % 2 == 0) {
+        advisor.recordAccess(new HeapPageId(1, r.nextInt(20)));
+      } else {
+        advisor.recordAccess(new HeapPageId(2, i)); // never reused
+      }
+    }
+    assertEquals(0.5, advisor.getHitRatio(1000), 0.01);
+    // Hot pages are reused some 20 hot and 20 cold accesses apart.
+    assertTrue(advisor.suggestPages(0.05) <= 100);
+
+    advisor.reset();
+    assertEquals(0.0, advisor.getHitRatio(1000), 0.0);
+  }
+
+  /**
+   * Unit test for SizeAdvisor: sampling large sizes keeps the curve of a
+   * loop.
+   */
+  @Test public void sampled() {
+    SizeAdvisor advisor = new SizeAdvisor(100000);
+    loop(advisor, 20000, 5);
+
+    assertTrue(advisor.getAccessCount() < 100000 / 4);
+    assertEquals(0.0, advisor.getHitRatio(18000), 0.05);
+    assertEquals(0.8, advisor.getHitRatio(22000), 0.05);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SizeAdvisorTest.class);
+  }
+}
@@ -0,0 +1,140 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.NoSuchElementException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SlottedPageTest extends SimpleDbTestBase {
+    private static final int PAGE_SIZE = 1024;
+
+    private HeapPageId pid;
+    private SlottedPage page;
+
+    private static byte[] record(int length, int value) {
+        byte[] record = new byte[length];
+        for (int i = 0; i < length; ++i)
+            record[i] = (byte) (value + i);
+        return record;
+    }
+
+    @Before public void setUp() throws Exception {
+        pid = new HeapPageId(-1, -1);
+        page = new SlottedPage(pid, SlottedPage.createEmptyPageData(PAGE_SIZE));
+    }
+
+    /** A page of zeros is an empty data page. */
+    @Test public void emptyPage() {
+        assertFalse(page.isOverflow());
+        assertEquals(0, page.getNumSlots());
+        assertEquals(SlottedPage.maxRecordSize(PAGE_SIZE), page.getFreeSpace());
+    }
+
+    @Test public void insertRecords() throws Exception {
+        for (int i = 0; i < 10; ++i)
+            assertEquals(i, page.insertRecord(record(5 + i * 3, i)));
+
+        assertEquals(10, page.getNumSlots());
+        for (int i = 0; i < 10; ++i)
+            assertArrayEquals(record(5 + i * 3, i), page.getRecord(i));
+        // 10 records of 5 to 32 bytes, 11 slots and the header.
+        assertEquals(PAGE_SIZE - 185 - 11 * SlottedPage.SLOT_SIZE - SlottedPage.HEADER_SIZE,
+                page.getFreeSpace());
+    }
+
+    @Test(expected=DbException.class)
+    public void pageFull() throws Exception {
+        page.insertRecord(record(SlottedPage.maxRecordSize(PAGE_SIZE), 0));
+        assertEquals(0, page.getFreeSpace());
+        page.insertRecord(record(1, 0));
+    }
+
+    @Test public void deleteRecords() throws Exception {
+        for (int i = 0; i < 3; ++i)
+            page.insertRecord(record(10, i));
+
+        page.deleteRecord(1);
+        assertFalse(page.isSlotUsed(1));
+        assertTrue(page.isSlotUsed(2));
+        // The empty slot is used again.
+        assertEquals(1, page.insertRecord(record(20, 7)));
+        assertArrayEquals(record(20, 7), page.getRecord(1));
+
+        for (int i = 0; i < 3; ++i)
+            page.deleteRecord(i);
+        assertEquals(0, page.getNumSlots());
+        assertEquals(SlottedPage.maxRecordSize(PAGE_SIZE), page.getFreeSpace());
+    }
+
+    @Test(expected=NoSuchElementException.class)
+    public void getDeletedRecord() throws Exception {
+        page.insertRecord(record(10, 0));
+        page.deleteRecord(0);
+        page.getRecord(0);
+    }
+
+    /** Free space left between records is reclaimed by compacting them. */
+    @Test public void compact() throws Exception {
+        int length = (SlottedPage.maxRecordSize(PAGE_SIZE) - 3 * SlottedPage.SLOT_SIZE) / 4;
+        for (int i = 0; i < 4; ++i)
+            page.insertRecord(record(length, i));
+        page.deleteRecord(0);
+        page.deleteRecord(2);
+
+        int slot = page.insertRecord(record(2 * length, 9));
+        assertArrayEquals(record(2 * length, 9), page.getRecord(slot));
+        assertArrayEquals(record(length, 1), page.getRecord(1));
+        assertArrayEquals(record(length, 3), page.getRecord(3));
+    }
+
+    @Test public void overflow() throws Exception {
+        byte[] value = record(3000, 0);
+        int capacity = SlottedPage.overflowCapacity(PAGE_SIZE);
+
+        page.setOverflow(5, value, 100, capacity);
+        assertTrue(page.isOverflow());
+        assertEquals(0, page.getNumSlots());
+        assertEquals(0, page.getFreeSpace());
+        assertEquals(5, page.getOverflowNext());
+        assertArrayEquals(record(capacity, 100), page.getOverflowData());
+
+        page.reset();
+        assertFalse(page.isOverflow());
+        assertEquals(SlottedPage.maxRecordSize(PAGE_SIZE), page.getFreeSpace());
+    }
+
+    @Test public void pageData() throws Exception {
+        page.insertRecord(record(30, 1));
+        page.insertRecord(record(40, 2));
+        SlottedPage copy = new SlottedPage(pid, page.getPageData());
+
+        assertEquals(2, copy.getNumSlots());
+        assertArrayEquals(record(40, 2), copy.getRecord(1));
+    }
+
+    @Test public void beforeImage() throws Exception {
+        page.insertRecord(record(30, 1));
+        page.setBeforeImage();
+        page.deleteRecord(0);
+
+        SlottedPage before = page.getBeforeImage();
+        assertArrayEquals(record(30, 1), before.getRecord(0));
+        assertFalse(page.isSlotUsed(0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedPageTest.class);
+    }
+}
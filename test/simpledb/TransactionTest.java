@@ -112,6 +112,28 @@ public class TransactionTest extends TestUtil.CreateHeapFile {
     testTransactionComplete(false);
   }
 
+  /**
+   * Unit test for BufferPool.transactionComplete() with two running
+   * transactions. Verify that only the pages of the completed transaction
+   * are written out, and that its write set is dropped.
+   */
+  @Test public void completeOnlyOwnPages() throws Exception {
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    bp.getPage(tid1, p1, Permissions.READ_WRITE).markDirty(true, tid1);
+    bp.getPage(tid2, p2, Permissions.READ_WRITE).markDirty(true, tid2);
+
+    assertEquals(Collections.singleton(p1), bp.getWriteSet(tid1));
+    assertEquals(Collections.singleton(p2), bp.getWriteSet(tid2));
+
+    bp.transactionComplete(tid1, true);
+    assertEquals(null, bp.getPage(tid2, p1, Permissions.READ_ONLY).isDirty());
+    assertEquals(tid2, bp.getPage(tid2, p2, Permissions.READ_ONLY).isDirty());
+    assertEquals(0, bp.getWriteSet(tid1).size());
+
+    bp.transactionComplete(tid2, false);
+    assertEquals(null, bp.getPage(tid1, p2, Permissions.READ_ONLY).isDirty());
+  }
+
   /**
    * JUnit suite target
    */
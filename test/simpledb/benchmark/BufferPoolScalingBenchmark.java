@@ -0,0 +1,81 @@
+package simpledb.benchmark;
+
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures getPage throughput of several threads probing random pages of a
+ * table twice the size of the pool, so that about half of the calls miss
+ * and go through eviction. Each pool configuration is run with a growing
+ * number of threads, once with a single partition (a single eviction latch)
+ * and once with the default partitioning.
+ *
+ * Every thread runs its own transaction. Locks are still taken by
+ * LockManager, whose single mutex is shared by all partitions, so the
+ * numbers show the gain from the page table alone. On a single core machine
+ * no gain is to be expected.
+ *
+ * Usage: java simpledb.benchmark.BufferPoolScalingBenchmark [poolPages]
+ */
+public class BufferPoolScalingBenchmark {
+
+    private static final int ACCESSES_PER_THREAD = 50000;
+    private static final int[] THREADS = { 1, 2, 4, 8 };
+
+    static double run(final BufferPool bp, final HeapFile f, final int tablePages,
+            int nthreads) throws Exception {
+        final Throwable[] error = new Throwable[1];
+        Thread[] threads = new Thread[nthreads];
+
+        for (int i = 0; i < nthreads; ++i) {
+            final long seed = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    Random r = new Random(seed);
+                    TransactionId tid = new TransactionId();
+                    try {
+                        for (int j = 0; j < ACCESSES_PER_THREAD; ++j) {
+                            PageId pid = new HeapPageId(f.getId(), r.nextInt(tablePages));
+                            bp.getPage(tid, pid, Permissions.READ_ONLY);
+                        }
+                        bp.transactionComplete(tid);
+                    } catch (Throwable e) {
+                        error[0] = e;
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        long elapsed = System.nanoTime() - start;
+
+        if (error[0] != null)
+            throw new RuntimeException(error[0]);
+        return (double) nthreads * ACCESSES_PER_THREAD / (elapsed / 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int tablePages = 2 * poolPages;
+        HeapFile f = EvictionPolicyBenchmark.createTable(tablePages);
+        int[] partitions = { 1, Math.max(2, new BufferPool(poolPages).getNumPartitions()) };
+
+        System.out.printf("pool %d pages, %d random pages, %d processors%n",
+                poolPages, tablePages, Runtime.getRuntime().availableProcessors());
+        for (int n : partitions) {
+            for (int nthreads : THREADS) {
+                BufferPool bp = new BufferPool(poolPages, n, ClockEvictionPolicy.factory());
+                double rate = run(bp, f, tablePages, nthreads);
+                System.out.printf("partitions %3d  threads %2d  %10.0f getPage/s  hit rate %5.1f%%%n",
+                        bp.getNumPartitions(), nthreads, rate,
+                        100.0 * bp.getHitCount() / (bp.getHitCount() + bp.getMissCount()));
+                bp.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import simpledb.*;
+
+/**
+ * Appends full pages to a table, as a bulk load flushing its pages would,
+ * and syncs the file every 32 pages, once growing the file a page at a time
+ * and once by preallocated extents.
+ *
+ * Usage: java simpledb.benchmark.BulkLoadBenchmark [pages]
+ */
+public class BulkLoadBenchmark {
+
+    static void run(String name, int pages, int first, int max) throws Exception {
+        File f = File.createTempFile("bulkload", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.openHeapFile(2, f);
+        hf.setExtentPages(first, max);
+
+        HeapPage full = new HeapPage(new HeapPageId(hf.getId(), 0),
+                HeapPage.createEmptyPageData());
+        for (int i = 0; i < 504; ++i)
+            full.insertTuple(Utility.getHeapTuple(i, 2));
+        byte[] data = full.getPageData();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+
+        long start = System.nanoTime();
+        for (int p = 0; p < pages; ++p) {
+            hf.writePage(new HeapPage(new HeapPageId(hf.getId(), p), data));
+            if (p % 32 == 31)
+                raf.getFD().sync();
+        }
+        raf.getFD().sync();
+        long elapsed = System.nanoTime() - start;
+        hf.close();
+        raf.close();
+
+        System.out.printf("%-8s %6.1f us/page, file %d pages%n", name,
+                elapsed / 1e3 / pages, f.length() / BufferPool.getPageSize());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+
+        run("page", pages, 1, 1);
+        run("extents", pages, HeapFile.DEFAULT_EXTENT_PAGES, HeapFile.DEFAULT_MAX_EXTENT_PAGES);
+        run("page", pages, 1, 1);
+        run("extents", pages, HeapFile.DEFAULT_EXTENT_PAGES, HeapFile.DEFAULT_MAX_EXTENT_PAGES);
+    }
+}
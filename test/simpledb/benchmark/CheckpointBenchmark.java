@@ -0,0 +1,77 @@
+package simpledb.benchmark;
+
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Writes a random fraction of the pages of a table out of the pool, with
+ * fsync, once a page at a time in random order, as flushAllPages used to,
+ * and once with flushAllPages, which sorts them and writes runs of adjacent
+ * pages at once.
+ *
+ * Usage: java simpledb.benchmark.CheckpointBenchmark [tablePages] [fraction]
+ */
+public class CheckpointBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    /**
+     * Caches a random fraction of the pages of the table. They aren't marked
+     * dirty, so that flushAllPages writes them without logging them first.
+     */
+    static ArrayList<Page> cache(BufferPool bp, HeapFile f, TransactionId tid,
+            double fraction) throws Exception {
+        ArrayList<Page> pages = new ArrayList<Page>();
+        Random r = new Random(42);
+
+        for (int i = 0; i < f.numPages(); ++i) {
+            if (r.nextDouble() < fraction)
+                pages.add(bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY));
+        }
+        Collections.shuffle(pages, r);
+        return pages;
+    }
+
+    static void sync(HeapFile f) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(f.getFile(), "rw");
+        raf.getFD().sync();
+        raf.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        double fraction = args.length > 1 ? Double.parseDouble(args[1]) : 0.5;
+        HeapFile f = EvictionPolicyBenchmark.createTable(tablePages);
+        BufferPool bp;
+        long single = Long.MAX_VALUE, coalesced = Long.MAX_VALUE;
+        int n = 0;
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            TransactionId tid = new TransactionId();
+            bp = Database.resetBufferPool(tablePages);
+            ArrayList<Page> pages = cache(bp, f, tid, fraction);
+            n = pages.size();
+
+            long start = System.nanoTime();
+            for (Page p : pages)
+                f.writePage(p);
+            sync(f);
+            single = Math.min(single, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            bp.flushAllPages();
+            sync(f);
+            coalesced = Math.min(coalesced, System.nanoTime() - start);
+
+            bp.transactionComplete(tid);
+        }
+
+        System.out.printf("%d pages written of %d%n", n, tablePages);
+        System.out.printf("page at a time   %7.1f ms%n", single / 1e6);
+        System.out.printf("sorted, coalesced %6.1f ms%n", coalesced / 1e6);
+    }
+}
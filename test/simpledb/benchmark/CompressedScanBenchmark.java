@@ -0,0 +1,107 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Compares full scans of a HeapFile and CompressedHeapFiles of each codec,
+ * holding the same table of an id, a short name padded to a StringField and
+ * a small int: the bytes read from the file by a scan, and its time from an
+ * empty BufferPool. The files stay in the OS page cache, so the time is the
+ * CPU cost of reading and decompressing the pages; the last column is the
+ * disk bandwidth under which the bytes saved pay for that cost.
+ *
+ * Usage: java simpledb.benchmark.CompressedScanBenchmark [rows]
+ */
+public class CompressedScanBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final Type[] TYPES = { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+    private static final TupleDesc TD = new TupleDesc(TYPES);
+
+    static HeapFile createHeapFile(int rows) throws Exception {
+        File csv = File.createTempFile("compressed", ".txt");
+        csv.deleteOnExit();
+        FileWriter w = new FileWriter(csv);
+        Random r = new Random(42);
+        for (int i = 0; i < rows; ++i) {
+            char[] name = new char[4 + r.nextInt(9)];
+            for (int j = 0; j < name.length; ++j)
+                name[j] = (char) ('a' + r.nextInt(26));
+            w.write(i + "," + new String(name) + "," + r.nextInt(10) + "\n");
+        }
+        w.close();
+
+        File file = File.createTempFile("compressed", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        HeapFileEncoder.convert(csv, file, BufferPool.getPageSize(), TYPES.length, TYPES);
+        HeapFile f = new HeapFile(file, TD);
+        Database.getCatalog().addTable(f, "heap");
+        return f;
+    }
+
+    static CompressedHeapFile compress(HeapFile source, PageCodec codec, String name)
+            throws Exception {
+        File file = File.createTempFile("compressed", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".map").deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        CompressedHeapFile f = new CompressedHeapFile(file, TD, codec);
+        for (int i = 0; i < source.numPages(); ++i)
+            f.writePage(source.readPage(new HeapPageId(source.getId(), i)));
+        // Reopened, to count the pages written.
+        f.close();
+        f = new CompressedHeapFile(file, TD, codec);
+        Database.getCatalog().addTable(f, name);
+        return f;
+    }
+
+    /** Returns the best time of a full scan from an empty BufferPool. */
+    static long scan(HeapFile f) throws Exception {
+        long best = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            while (it.hasNext())
+                it.next();
+            it.close();
+            best = Math.min(best, System.nanoTime() - start);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        HeapFile heap = createHeapFile(rows);
+        long heapBytes = (long) heap.numPages() * heap.getPageSize();
+        long heapTime = scan(heap);
+
+        System.out.printf("%d rows, %d pages%n", rows, heap.numPages());
+        System.out.printf("%-8s %8.2f MB read  scan %7.1f ms%n", "heap",
+                heapBytes / 1048576.0, heapTime / 1e6);
+
+        String[] names = { "lz", "deflate" };
+        PageCodec[] codecs = { new LzPageCodec(), new DeflatePageCodec() };
+        for (int i = 0; i < codecs.length; ++i) {
+            CompressedHeapFile f = compress(heap, codecs[i], names[i]);
+            long bytes = f.getFile().length();
+            long time = scan(f);
+            long extra = time - heapTime;
+
+            System.out.printf("%-8s %8.2f MB read  scan %7.1f ms  %5.1fx smaller  %s%n",
+                    names[i], bytes / 1048576.0, time / 1e6, (double) heapBytes / bytes,
+                    extra <= 0 ? "faster at any bandwidth"
+                            : String.format("pays off under %.0f MB/s",
+                                    (heapBytes - bytes) / 1048576.0 / (extra / 1e9)));
+        }
+    }
+}
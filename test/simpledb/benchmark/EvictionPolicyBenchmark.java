@@ -0,0 +1,106 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import simpledb.*;
+
+/**
+ * Compares the buffer pool hit rate of the eviction policies on a working
+ * set a little bigger than the pool: a small hot "dimension" table probed
+ * at random, interleaved with a sequential scan of a large table.
+ *
+ * The "hash-order" row reproduces the old behavior, which evicted whatever
+ * clean pages came first in the iteration order of the page table.
+ *
+ * Usage: java simpledb.benchmark.EvictionPolicyBenchmark [poolPages]
+ */
+public class EvictionPolicyBenchmark {
+
+    private static final int HOT_PAGES = 40;
+    private static final int COLD_PAGES = 1000;
+    private static final int ACCESSES = 100000;
+    private static final double HOT_FRACTION = 0.7;
+
+    /** The old policy: first evictable page in hash-table order. */
+    static class HashOrderEvictionPolicy implements EvictionPolicy {
+        private final ConcurrentHashMap<PageId, Boolean> pages =
+                new ConcurrentHashMap<PageId, Boolean>();
+
+        public void recordAccess(PageId pid) {
+            pages.put(pid, Boolean.TRUE);
+        }
+
+        public void remove(PageId pid) {
+            pages.remove(pid);
+        }
+
+        public PageId chooseVictim(Filter filter) {
+            for (PageId pid : pages.keySet()) {
+                if (filter.canEvict(pid)) {
+                    pages.remove(pid);
+                    return pid;
+                }
+            }
+            return null;
+        }
+
+        public List<PageId> hottest() {
+            return new ArrayList<PageId>(pages.keySet());
+        }
+    }
+
+    static HeapFile createTable(int pages) throws IOException {
+        File f = File.createTempFile("evictbench", ".dat");
+        f.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(f);
+        // All-zero pages are valid empty heap pages.
+        fos.write(new byte[pages * BufferPool.getPageSize()]);
+        fos.close();
+        return Utility.openHeapFile(1, f);
+    }
+
+    static double run(String name, BufferPool bp, HeapFile hot, HeapFile cold)
+            throws Exception {
+        Random r = new Random(42);
+        TransactionId tid = new TransactionId();
+        int scanPos = 0;
+
+        for (int i = 0; i < ACCESSES; ++i) {
+            PageId pid;
+            if (r.nextDouble() < HOT_FRACTION) {
+                pid = new HeapPageId(hot.getId(), r.nextInt(HOT_PAGES));
+            } else {
+                pid = new HeapPageId(cold.getId(), scanPos);
+                scanPos = (scanPos + 1) % COLD_PAGES;
+            }
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+        }
+        bp.transactionComplete(tid);
+
+        double rate = (double) bp.getHitCount()
+                / (bp.getHitCount() + bp.getMissCount());
+        System.out.printf("%-12s hits %7d  misses %7d  hit rate %5.1f%%%n",
+                name, bp.getHitCount(), bp.getMissCount(), rate * 100);
+        return rate;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+
+        HeapFile hot = createTable(HOT_PAGES);
+        HeapFile cold = createTable(COLD_PAGES);
+
+        System.out.printf("pool %d pages, hot set %d pages (%.0f%% of accesses), "
+                + "scan over %d pages%n", poolPages, HOT_PAGES,
+                HOT_FRACTION * 100, COLD_PAGES);
+        run("hash-order", new BufferPool(poolPages, new HashOrderEvictionPolicy()), hot, cold);
+        run("clock", new BufferPool(poolPages, new ClockEvictionPolicy()), hot, cold);
+        run("lru-2", new BufferPool(poolPages, new LruKEvictionPolicy(2)), hot, cold);
+    }
+}
@@ -0,0 +1,62 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Fetches batches of random pages of a table, as RID fetches or join probes
+ * would, once with a getPage call per page and once with getPages. The
+ * table is read with direct I/O where supported, so that the reads go to
+ * the disk rather than the OS page cache.
+ *
+ * Usage: java simpledb.benchmark.GetPagesBenchmark [tablePages] [batch]
+ */
+public class GetPagesBenchmark {
+
+    private static final int BATCHES = 50;
+
+    static double run(HeapFile f, int batch, boolean batched) throws Exception {
+        Random r = new Random(42);
+        long elapsed = 0;
+        // Off-heap, so that pages are not decoded and only I/O is measured.
+        BufferPool bp = Database.resetBufferPool(new BufferPool(batch, 1,
+                ClockEvictionPolicy.factory(), true));
+
+        for (int b = 0; b < BATCHES; ++b) {
+            TransactionId tid = new TransactionId();
+            List<PageId> pids = new ArrayList<PageId>();
+            for (int i = 0; i < batch; ++i)
+                pids.add(new HeapPageId(f.getId(), r.nextInt(f.numPages())));
+
+            long start = System.nanoTime();
+            if (batched) {
+                bp.getPages(tid, pids, Permissions.READ_ONLY);
+            } else {
+                for (PageId pid : pids)
+                    bp.getPage(tid, pid, Permissions.READ_ONLY);
+            }
+            elapsed += System.nanoTime() - start;
+            bp.transactionComplete(tid);
+            // A cold pool for every batch.
+            for (PageId pid : pids)
+                bp.discardPage(pid);
+        }
+        return elapsed / 1e3 / BATCHES / batch;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int batch = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        HeapFile f = EvictionPolicyBenchmark.createTable(tablePages);
+        boolean direct = f.setDirectIO(true);
+
+        System.out.printf("table %d pages, batches of %d pages, direct I/O %s%n",
+                tablePages, batch, direct ? "on" : "off");
+        run(f, batch, false); // warm up
+        System.out.printf("getPage loop %7.1f us/page%n", run(f, batch, false));
+        System.out.printf("getPages     %7.1f us/page%n", run(f, batch, true));
+    }
+}
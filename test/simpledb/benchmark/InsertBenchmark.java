@@ -0,0 +1,40 @@
+package simpledb.benchmark;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Inserts single rows, a transaction each, into a table of full pages
+ * larger than the BufferPool, and reports the time and the pages read per
+ * insert. The first insert, which may fill in the free-space map of the
+ * table, is not counted.
+ *
+ * Usage: java simpledb.benchmark.InsertBenchmark [tablePages] [inserts]
+ */
+public class InsertBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int inserts = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * tablePages, null, null);
+        BufferPool bp = Database.resetBufferPool(tablePages / 10);
+        Tuple t = Utility.getHeapTuple(1, 2);
+
+        TransactionId tid = new TransactionId();
+        bp.insertTuple(tid, f.getId(), t);
+        bp.transactionComplete(tid);
+
+        long misses = bp.getMissCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < inserts; ++i) {
+            tid = new TransactionId();
+            bp.insertTuple(tid, f.getId(), Utility.getHeapTuple(i, 2));
+            bp.transactionComplete(tid);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("table %d pages, pool %d pages%n", tablePages, tablePages / 10);
+        System.out.printf("%8.1f us/insert  %6.1f pages read/insert%n",
+                elapsed / 1e3 / inserts, (double) (bp.getMissCount() - misses) / inserts);
+    }
+}
@@ -0,0 +1,58 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Scans a table through a BufferPool much smaller than it, so that every
+ * page is read from its file, once as a HeapFile and once as a
+ * MappedHeapFile. The file stays in the OS page cache.
+ *
+ * Usage: java simpledb.benchmark.MappedScanBenchmark [tablePages]
+ */
+public class MappedScanBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    static void run(String name, HeapFile f) throws Exception {
+        Database.getCatalog().addTable(f);
+        BufferPool bp = Database.resetBufferPool(16);
+        bp.setScanRingFraction(Double.POSITIVE_INFINITY);
+
+        long best = Long.MAX_VALUE;
+        long n = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            n = 0;
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+            it.close();
+            best = Math.min(best, System.nanoTime() - start);
+            bp.transactionComplete(tid);
+        }
+
+        System.out.printf("%-7s %6.1f us/page  %5.1f ns/tuple  %7.0f MB/s%n", name,
+                best / 1e3 / f.numPages(), (double) best / n,
+                (double) f.numPages() * BufferPool.getPageSize() / best * 1e3);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        // 2 int columns, 504 tuples per page.
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * tablePages,
+                Integer.MAX_VALUE, null, null);
+        file.deleteOnExit();
+        TupleDesc td = Utility.getTupleDesc(2);
+
+        System.out.printf("table %d pages, pool 16 pages%n", tablePages);
+        run("heap", new HeapFile(file, td));
+        run("mapped", new MappedHeapFile(file, td));
+    }
+}
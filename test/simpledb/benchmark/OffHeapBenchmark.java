@@ -0,0 +1,63 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares the Java heap used by a full buffer pool with pages decoded on
+ * the heap and with pages kept in the off-heap arena, and the time of a
+ * scan over the cached table.
+ *
+ * Usage: java simpledb.benchmark.OffHeapBenchmark [poolPages]
+ */
+public class OffHeapBenchmark {
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i)
+            System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    static void run(String name, BufferPool bp, HeapFile f) throws Exception {
+        Database.resetBufferPool(bp);
+        long before = usedHeap();
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < f.numPages(); ++i)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        long used = Math.max(0, usedHeap() - before);
+
+        long start = System.nanoTime();
+        long n = 0;
+        for (int round = 0; round < 5; ++round) {
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+            it.close();
+        }
+        long elapsed = System.nanoTime() - start;
+        bp.transactionComplete(tid);
+
+        System.out.printf("%-9s heap %8d KB  (%5d bytes/page)  scan %6.1f ns/tuple%n",
+                name, used / 1024, used / f.numPages(), (double) elapsed / n);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        // 2 int columns, 504 tuples per page.
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * poolPages,
+                Integer.MAX_VALUE, null, null);
+        file.deleteOnExit();
+        HeapFile f = Utility.openHeapFile(2, file);
+
+        System.out.printf("pool %d pages%n", poolPages);
+        run("on-heap", new BufferPool(poolPages, 1, ClockEvictionPolicy.factory(), false), f);
+        run("off-heap", new BufferPool(poolPages, 1, ClockEvictionPolicy.factory(), true), f);
+    }
+}
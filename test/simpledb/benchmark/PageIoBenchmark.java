@@ -0,0 +1,119 @@
+package simpledb.benchmark;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures pages per second read and written by HeapFile, which keeps its
+ * file open and uses positional I/O, against opening a RandomAccessFile,
+ * seeking and closing it for every page as HeapFile used to. Reads are
+ * random and also run from several threads at once; the file stays in the
+ * OS page cache, so this measures the per-call overhead.
+ *
+ * Usage: java simpledb.benchmark.PageIoBenchmark [tablePages] [threads]
+ */
+public class PageIoBenchmark {
+
+    private static final int OPS = 20000;
+
+    /** One page I/O, done on the table with a given page number. */
+    interface PageOp {
+        void run(HeapFile f, int pageNo) throws Exception;
+    }
+
+    /*
+     * Pages are read into frames, so that they aren't decoded, and written
+     * from pages kept in frames, so that they aren't encoded: only the I/O is
+     * measured.
+     */
+
+    static final PageOp OPEN_READ = new PageOp() {
+        public void run(HeapFile f, int pageNo) throws Exception {
+            byte[] buffer = new byte[BufferPool.getPageSize()];
+            RandomAccessFile reader = new RandomAccessFile(f.getFile(), "r");
+            reader.seek((long) pageNo * BufferPool.getPageSize());
+            reader.read(buffer, 0, BufferPool.getPageSize());
+            reader.close();
+        }
+    };
+
+    static final PageOp CHANNEL_READ = new PageOp() {
+        public void run(HeapFile f, int pageNo) throws Exception {
+            f.readPage(new HeapPageId(f.getId(), pageNo),
+                    ByteBuffer.allocate(BufferPool.getPageSize()));
+        }
+    };
+
+    static HeapPage[] pages;
+
+    static final PageOp OPEN_WRITE = new PageOp() {
+        public void run(HeapFile f, int pageNo) throws Exception {
+            RandomAccessFile writer = new RandomAccessFile(f.getFile(), "rw");
+            writer.seek((long) pageNo * BufferPool.getPageSize());
+            writer.write(pages[pageNo].getPageData());
+            writer.close();
+        }
+    };
+
+    static final PageOp CHANNEL_WRITE = new PageOp() {
+        public void run(HeapFile f, int pageNo) throws Exception {
+            f.writePage(pages[pageNo]);
+        }
+    };
+
+    static double run(final PageOp op, final HeapFile f, int threads) throws Exception {
+        final int ops = OPS / threads;
+        final Exception[] failure = new Exception[1];
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; ++t) {
+            final Random r = new Random(t);
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < ops; ++i)
+                            op.run(f, r.nextInt(f.numPages()));
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread w : workers)
+            w.start();
+        for (Thread w : workers)
+            w.join();
+        long elapsed = System.nanoTime() - start;
+        if (failure[0] != null)
+            throw failure[0];
+        return ops * threads / (elapsed / 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        HeapFile f = EvictionPolicyBenchmark.createTable(tablePages);
+        pages = new HeapPage[tablePages];
+        for (int i = 0; i < tablePages; ++i)
+            pages[i] = new HeapPage(new HeapPageId(f.getId(), i),
+                    ByteBuffer.wrap(HeapPage.createEmptyPageData()));
+
+        // Warm up the JIT and the OS page cache.
+        run(OPEN_READ, f, 1);
+        run(CHANNEL_READ, f, 1);
+
+        System.out.printf("table %d pages, %d ops per run%n", tablePages, OPS);
+        System.out.printf("read,  1 thread:   open/seek/close %8.0f pages/s  channel %8.0f pages/s%n",
+                run(OPEN_READ, f, 1), run(CHANNEL_READ, f, 1));
+        System.out.printf("read,  %d threads:  open/seek/close %8.0f pages/s  channel %8.0f pages/s%n",
+                threads, run(OPEN_READ, f, threads), run(CHANNEL_READ, f, threads));
+        System.out.printf("write, 1 thread:   open/seek/close %8.0f pages/s  channel %8.0f pages/s%n",
+                run(OPEN_WRITE, f, 1), run(CHANNEL_WRITE, f, 1));
+        f.close();
+    }
+}
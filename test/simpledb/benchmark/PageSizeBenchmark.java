@@ -0,0 +1,93 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Compares page sizes on a table of 2 int columns of the same number of
+ * bytes, with a BufferPool of the same number of bytes, an eighth of the
+ * table: a full scan, random point reads of a tuple, and single-row
+ * inserts, a transaction each, which write their page out on commit. The
+ * file stays in the OS page cache.
+ *
+ * Usage: java simpledb.benchmark.PageSizeBenchmark [tableMB]
+ */
+public class PageSizeBenchmark {
+
+    private static final int[] PAGE_SIZES = { 1024, 4096, 16384, 65536 };
+    private static final int ROUNDS = 3;
+    private static final int READS = 20000;
+    private static final int INSERTS = 500;
+
+    static HeapFile createTable(File csv, int pageSize) throws Exception {
+        File file = File.createTempFile("pagesize", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        HeapFileEncoder.convert(csv, file, pageSize, 2);
+        HeapFile f = new HeapFile(file, Utility.getTupleDesc(2), pageSize);
+        Database.getCatalog().addTable(f, "t" + pageSize);
+        return f;
+    }
+
+    static void run(File csv, int pageSize, long tableBytes) throws Exception {
+        HeapFile f = createTable(csv, pageSize);
+        int poolPages = (int) (tableBytes / 8 / pageSize);
+        int perPage = (pageSize * 8) / (8 * 8 + 1);
+        long scan = Long.MAX_VALUE, read = Long.MAX_VALUE, insert = Long.MAX_VALUE;
+        Random r = new Random(42);
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            BufferPool bp = Database.resetBufferPool(poolPages);
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            while (it.hasNext())
+                it.next();
+            it.close();
+            scan = Math.min(scan, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < READS; ++i) {
+                HeapPageId pid = new HeapPageId(f.getId(), r.nextInt(f.numPages() - 1));
+                HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+                page.getField(r.nextInt(perPage), 0);
+            }
+            read = Math.min(read, System.nanoTime() - start);
+            bp.transactionComplete(tid);
+
+            start = System.nanoTime();
+            for (int i = 0; i < INSERTS; ++i) {
+                tid = new TransactionId();
+                bp.insertTuple(tid, f.getId(), Utility.getHeapTuple(i, 2));
+                bp.transactionComplete(tid);
+            }
+            insert = Math.min(insert, System.nanoTime() - start);
+        }
+        f.close();
+
+        System.out.printf("%6d B  %6d pages  scan %7.1f ms  read %6.2f us  insert %7.1f us%n",
+                pageSize, f.numPages(), scan / 1e6, read / 1e3 / READS,
+                insert / 1e3 / INSERTS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tableMB = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        long tableBytes = tableMB << 20;
+        long rows = tableBytes / 8;
+
+        File csv = File.createTempFile("pagesize", ".txt");
+        csv.deleteOnExit();
+        FileWriter w = new FileWriter(csv);
+        for (long i = 0; i < rows; ++i)
+            w.write(i + "," + (rows - i) + "\n");
+        w.close();
+
+        System.out.printf("table %d MB, pool %d MB%n", tableMB, tableMB / 8);
+        for (int pageSize : PAGE_SIZES)
+            run(csv, pageSize, tableBytes);
+    }
+}
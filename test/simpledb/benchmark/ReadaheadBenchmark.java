@@ -0,0 +1,59 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Times full scans of a table with a cold buffer pool, with and without
+ * readahead. The table file is likely in the OS page cache after the first
+ * run, in which case this measures the overlap of reads with tuple
+ * processing rather than device latency.
+ *
+ * Usage: java simpledb.benchmark.ReadaheadBenchmark [tablePages] [poolPages]
+ */
+public class ReadaheadBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    static void run(String name, HeapFile f, int poolPages, boolean readahead)
+            throws Exception {
+        long best = Long.MAX_VALUE;
+        long prefetched = 0, misses = 0;
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            BufferPool bp = Database.resetBufferPool(poolPages);
+            bp.setReadahead(readahead);
+
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            while (it.hasNext())
+                it.next();
+            it.close();
+            best = Math.min(best, System.nanoTime() - start);
+            bp.transactionComplete(tid);
+
+            prefetched = bp.getPrefetchCount();
+            misses = bp.getMissCount();
+        }
+        System.out.printf("%-13s best of %d %8.1f ms  synchronous reads %6d  read ahead %6d%n",
+                name, ROUNDS, best / 1e6, misses, prefetched);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int poolPages = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        // 2 int columns, 504 tuples per page.
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * tablePages,
+                Integer.MAX_VALUE, null, null);
+        file.deleteOnExit();
+        HeapFile f = Utility.openHeapFile(2, file);
+
+        System.out.printf("table %d pages, pool %d pages%n", tablePages, poolPages);
+        run("no readahead", f, poolPages, false);
+        run("readahead", f, poolPages, true);
+    }
+}
@@ -0,0 +1,74 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Mixes point queries on a hot table with sequential scans of a large
+ * table, and reports the hit rate of the point queries with scans going
+ * through a ScanRing and without.
+ *
+ * Usage: java simpledb.benchmark.ScanRingBenchmark [poolPages]
+ */
+public class ScanRingBenchmark {
+
+    private static final int SCANS = 3;
+    private static final int PROBES_PER_PAGE = 1;
+
+    static void run(String name, int poolPages, double fraction,
+            HeapFile hot, HeapFile big) throws Exception {
+        BufferPool bp = Database.resetBufferPool(poolPages);
+        bp.setScanRingFraction(fraction);
+        Random r = new Random(42);
+        TransactionId tid = new TransactionId();
+
+        // Warm up the hot set.
+        for (int i = 0; i < hot.numPages(); ++i)
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+
+        long probes = 0, probeMisses = 0;
+        long start = System.nanoTime();
+        for (int scan = 0; scan < SCANS; ++scan) {
+            DbFileIterator it = big.iterator(tid);
+            it.open();
+            int n = 0;
+            while (it.hasNext()) {
+                it.next();
+                if (++n % 504 != 0)
+                    continue;
+                // About one scanned page between bursts of point queries.
+                for (int i = 0; i < PROBES_PER_PAGE; ++i) {
+                    long misses = bp.getMissCount();
+                    bp.getPage(tid, new HeapPageId(hot.getId(), r.nextInt(hot.numPages())),
+                            Permissions.READ_ONLY);
+                    probeMisses += bp.getMissCount() - misses;
+                    probes++;
+                }
+            }
+            it.close();
+        }
+        long elapsed = System.nanoTime() - start;
+        bp.transactionComplete(tid);
+
+        System.out.printf("%-10s point query hit rate %5.1f%%  total %7.1f ms%n",
+                name, 100.0 * (probes - probeMisses) / probes, elapsed / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        HeapFile hot = EvictionPolicyBenchmark.createTable(poolPages * 4 / 5);
+        // 2 int columns, 504 tuples per page.
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * poolPages * 6,
+                Integer.MAX_VALUE, null, null);
+        file.deleteOnExit();
+        HeapFile big = Utility.openHeapFile(2, file);
+
+        System.out.printf("pool %d pages, hot table %d pages, %d scans of %d pages%n",
+                poolPages, hot.numPages(), SCANS, big.numPages());
+        run("no ring", poolPages, Double.POSITIVE_INFINITY, hot, big);
+        run("ring", poolPages, 0.25, hot, big);
+    }
+}
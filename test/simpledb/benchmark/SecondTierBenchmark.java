@@ -0,0 +1,64 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Reads random pages of a table larger than the BufferPool, with and
+ * without a compressed second tier as big as the pool in bytes, and
+ * reports how many reads still go to disk.
+ *
+ * Usage: java simpledb.benchmark.SecondTierBenchmark [poolPages]
+ */
+public class SecondTierBenchmark {
+
+    private static final int ACCESSES = 200000;
+
+    static void run(String name, int poolPages, PageCodec codec, HeapFile table)
+            throws Exception {
+        BufferPool bp = Database.resetBufferPool(poolPages);
+        CompressedPageCache tier = null;
+        if (codec != null) {
+            tier = new CompressedPageCache((long) poolPages * BufferPool.getPageSize(), codec);
+            bp.setSecondTier(tier);
+        }
+        Random r = new Random(42);
+        TransactionId tid = new TransactionId();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ACCESSES; ++i) {
+            // Skewed towards the first pages, like a hot index range.
+            int pageNo = (int) (table.numPages() * Math.pow(r.nextDouble(), 2));
+            bp.getPage(tid, new HeapPageId(table.getId(), pageNo), Permissions.READ_ONLY);
+        }
+        long elapsed = System.nanoTime() - start;
+        bp.transactionComplete(tid);
+
+        long diskReads = bp.getMissCount() - (tier == null ? 0 : tier.getHitCount());
+        System.out.printf("%-8s disk reads %6.2f%%  %6.2f us/access", name,
+                100.0 * diskReads / ACCESSES, elapsed / 1e3 / ACCESSES);
+        if (tier != null) {
+            System.out.printf("  second tier %d pages, %.0f bytes/page",
+                    tier.size(), (double) tier.getBytes() / Math.max(1, tier.size()));
+        }
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        // 4 int columns below 10000, 252 tuples per page.
+        File file = SystemTestUtil.createRandomHeapFileUnopened(4, 252 * poolPages * 4,
+                10000, null, null);
+        file.deleteOnExit();
+        HeapFile table = Utility.openHeapFile(4, file);
+
+        System.out.printf("pool %d pages, table %d pages, %d random reads%n",
+                poolPages, table.numPages(), ACCESSES);
+        run("none", poolPages, null, table);
+        run("lz", poolPages, new LzPageCodec(), table);
+        run("deflate", poolPages, new DeflatePageCodec(), table);
+    }
+}
@@ -0,0 +1,66 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.Iterator;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Sums one column of a wide table held in the BufferPool, reading it once
+ * through the tuples of each page, which decode only the fields read, and
+ * once with HeapPage.getField, which reads them in place.
+ *
+ * Usage: java simpledb.benchmark.SelectiveScanBenchmark [tablePages] [columns]
+ */
+public class SelectiveScanBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int perPage = (BufferPool.getPageSize() * 8) / (columns * 4 * 8 + 1);
+        File file = SystemTestUtil.createRandomHeapFileUnopened(columns,
+                perPage * tablePages, Integer.MAX_VALUE, null, null);
+        file.deleteOnExit();
+        HeapFile f = new HeapFile(file, Utility.getTupleDesc(columns));
+        Database.getCatalog().addTable(f);
+        BufferPool bp = Database.resetBufferPool(tablePages);
+        TransactionId tid = new TransactionId();
+
+        HeapPage[] pages = new HeapPage[tablePages];
+        for (int i = 0; i < tablePages; ++i)
+            pages[i] = (HeapPage) bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+
+        long tuples = Long.MAX_VALUE, fields = Long.MAX_VALUE, sum1 = 0, sum2 = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            sum1 = 0;
+            for (HeapPage p : pages) {
+                Iterator<Tuple> it = p.iterator();
+                while (it.hasNext())
+                    sum1 += ((IntField) it.next().getField(columns - 1)).getValue();
+            }
+            tuples = Math.min(tuples, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            sum2 = 0;
+            for (HeapPage p : pages) {
+                for (int slot = 0; slot < perPage; ++slot) {
+                    if (p.isSlotUsed(slot))
+                        sum2 += ((IntField) p.getField(slot, columns - 1)).getValue();
+                }
+            }
+            fields = Math.min(fields, System.nanoTime() - start);
+        }
+        bp.transactionComplete(tid);
+        if (sum1 != sum2)
+            throw new AssertionError(sum1 + " != " + sum2);
+
+        long n = (long) perPage * tablePages;
+        System.out.printf("table %d pages, %d columns, %d tuples%n", tablePages, columns, n);
+        System.out.printf("tuples   %6.1f ns/tuple%n", (double) tuples / n);
+        System.out.printf("getField %6.1f ns/tuple%n", (double) fields / n);
+    }
+}
@@ -0,0 +1,54 @@
+package simpledb.benchmark;
+
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Runs a skewed random workload on a small BufferPool with a SizeAdvisor,
+ * then resizes the pool online to several sizes and compares the hit rate
+ * predicted by the advisor with the one measured.
+ *
+ * Usage: java simpledb.benchmark.SizeAdvisorBenchmark [tablePages]
+ */
+public class SizeAdvisorBenchmark {
+
+    private static final int ACCESSES = 100000;
+
+    static double run(BufferPool bp, HeapFile table) throws Exception {
+        Random r = new Random(42);
+        TransactionId tid = new TransactionId();
+        long hits = bp.getHitCount();
+
+        for (int i = 0; i < ACCESSES; ++i) {
+            int pageNo = (int) (table.numPages() * Math.pow(r.nextDouble(), 3));
+            bp.getPage(tid, new HeapPageId(table.getId(), pageNo), Permissions.READ_ONLY);
+        }
+        bp.transactionComplete(tid);
+        return 100.0 * (bp.getHitCount() - hits) / ACCESSES;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        HeapFile table = EvictionPolicyBenchmark.createTable(tablePages);
+        BufferPool bp = Database.resetBufferPool(tablePages / 16);
+        SizeAdvisor advisor = new SizeAdvisor(tablePages);
+        bp.setSizeAdvisor(advisor);
+
+        long start = System.nanoTime();
+        double measured = run(bp, table);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("table %d pages, advisor sampled %d of %d accesses, %.2f us/access%n",
+                tablePages, advisor.getAccessCount(), ACCESSES, elapsed / 1e3 / ACCESSES);
+        System.out.printf("suggested size (1%% tolerance): %d pages%n",
+                advisor.suggestPages(0.01));
+
+        for (int pages = tablePages / 16; pages <= tablePages; pages *= 2) {
+            bp.resize(pages);
+            run(bp, table); // warm up at the new size
+            measured = run(bp, table);
+            System.out.printf("pool %5d pages  predicted hit rate %5.1f%%  measured %5.1f%%%n",
+                    pages, 100 * advisor.getHitRatio(pages), measured);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package simpledb.benchmark;
+
+import simpledb.*;
+
+/**
+ * Measures the cost of completing small transactions as the number of
+ * pages cached in the BufferPool grows. Each transaction touches a single
+ * page, so the cost should not depend on the size of the pool.
+ *
+ * Read-only commits and aborts are measured, commits of dirty pages are
+ * dominated by the forced page write.
+ *
+ * Usage: java simpledb.benchmark.TransactionCompleteBenchmark [transactions]
+ */
+public class TransactionCompleteBenchmark {
+
+    private static final int[] POOL_PAGES = { 1000, 10000, 50000 };
+
+    static void run(int poolPages, int transactions) throws Exception {
+        HeapFile table = EvictionPolicyBenchmark.createTable(poolPages);
+        BufferPool bp = Database.resetBufferPool(poolPages);
+
+        // Fill the pool.
+        TransactionId warm = new TransactionId();
+        for (int i = 0; i < poolPages; ++i)
+            bp.getPage(warm, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        bp.transactionComplete(warm);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < transactions; ++i) {
+            TransactionId tid = new TransactionId();
+            bp.getPage(tid, new HeapPageId(table.getId(), i % poolPages),
+                    Permissions.READ_ONLY);
+            bp.transactionComplete(tid, true);
+        }
+        long readOnly = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < transactions; ++i) {
+            TransactionId tid = new TransactionId();
+            bp.getPage(tid, new HeapPageId(table.getId(), i % poolPages),
+                    Permissions.READ_WRITE).markDirty(true, tid);
+            bp.transactionComplete(tid, false);
+        }
+        long abort = System.nanoTime() - start;
+
+        System.out.printf("pool %6d pages  read-only commit %8.2f us  abort %8.2f us%n",
+                poolPages, readOnly / 1e3 / transactions, abort / 1e3 / transactions);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        for (int poolPages : POOL_PAGES)
+            run(poolPages, transactions);
+    }
+}
@@ -0,0 +1,102 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Compares a HeapFile and a SlottedFile holding the same table of an int
+ * and a short string of 4 to 12 letters, like a code or a name: the size of
+ * the files and a full scan from an empty BufferPool, decoding the string
+ * of each tuple. The files stay in the OS page cache.
+ *
+ * Usage: java simpledb.benchmark.VarcharScanBenchmark [rows]
+ */
+public class VarcharScanBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int BATCH = 1000;
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE }, new String[] { "id", "name" });
+
+    static String name(Random r) {
+        char[] c = new char[4 + r.nextInt(9)];
+        for (int i = 0; i < c.length; ++i)
+            c[i] = (char) ('a' + r.nextInt(26));
+        return new String(c);
+    }
+
+    static HeapFile createHeapFile(int rows) throws Exception {
+        File csv = File.createTempFile("varchar", ".txt");
+        csv.deleteOnExit();
+        FileWriter w = new FileWriter(csv);
+        Random r = new Random(42);
+        for (int i = 0; i < rows; ++i)
+            w.write(i + "," + name(r) + "\n");
+        w.close();
+
+        File file = File.createTempFile("varchar", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        HeapFileEncoder.convert(csv, file, BufferPool.getPageSize(), 2,
+                new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        HeapFile f = new HeapFile(file, TD);
+        Database.getCatalog().addTable(f, "heap");
+        return f;
+    }
+
+    static HeapFile createSlottedFile(int rows) throws Exception {
+        File file = File.createTempFile("varchar", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        SlottedFile f = new SlottedFile(file, TD);
+        Database.getCatalog().addTable(f, "slotted");
+
+        Random r = new Random(42);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < rows; ++i) {
+            Tuple t = new Tuple(TD);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(name(r), Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, f.getId(), t);
+            if ((i + 1) % BATCH == 0) {
+                Database.getBufferPool().transactionComplete(tid);
+                tid = new TransactionId();
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        return f;
+    }
+
+    static void run(String label, HeapFile f) throws Exception {
+        long scan = Long.MAX_VALUE;
+        long length = 0;
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            length = 0;
+            while (it.hasNext())
+                length += ((StringField) it.next().getField(1)).getValue().length();
+            it.close();
+            scan = Math.min(scan, System.nanoTime() - start);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+
+        System.out.printf("%-8s %6d pages  %8.2f MB  scan %7.1f ms  (%d chars)%n",
+                label, f.numPages(), f.getFile().length() / 1048576.0, scan / 1e6, length);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        System.out.printf("%d rows%n", rows);
+        run("heap", createHeapFile(rows));
+        run("slotted", createSlottedFile(rows));
+    }
+}
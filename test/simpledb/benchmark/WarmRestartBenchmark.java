@@ -0,0 +1,65 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Restarts a BufferPool that cached a random hot set of a table, cold and
+ * warm, and reports the hit rate of the first accesses to the hot set and
+ * how long the warm-up took.
+ *
+ * Usage: java simpledb.benchmark.WarmRestartBenchmark [poolPages]
+ */
+public class WarmRestartBenchmark {
+
+    private static final int ACCESSES = 20000;
+
+    static double hitRate(BufferPool bp, HeapFile table, int[] hot) throws Exception {
+        Random r = new Random(42);
+        TransactionId tid = new TransactionId();
+        long misses = bp.getMissCount();
+
+        for (int i = 0; i < ACCESSES; ++i)
+            bp.getPage(tid, new HeapPageId(table.getId(), hot[r.nextInt(hot.length)]),
+                    Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        return 100.0 * (ACCESSES - (bp.getMissCount() - misses)) / ACCESSES;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        HeapFile table = EvictionPolicyBenchmark.createTable(poolPages * 4);
+        File list = File.createTempFile("hotpages", ".dat");
+        list.delete();
+        list.deleteOnExit();
+
+        // Hot set of 3/4 of the pool, scattered over the table.
+        Random r = new Random(7);
+        int[] hot = new int[poolPages * 3 / 4];
+        for (int i = 0; i < hot.length; ++i)
+            hot[i] = r.nextInt(table.numPages());
+
+        BufferPool bp = Database.resetBufferPool(poolPages);
+        bp.startWarmRestart(list);
+        hitRate(bp, table, hot);
+        bp.saveHotPages();
+
+        bp = Database.resetBufferPool(poolPages);
+        System.out.printf("pool %d pages, table %d pages, hot set %d pages%n",
+                poolPages, table.numPages(), hot.length);
+        System.out.printf("cold  first %d accesses hit rate %5.1f%%%n",
+                ACCESSES, hitRate(bp, table, hot));
+
+        bp = Database.resetBufferPool(poolPages);
+        long start = System.nanoTime();
+        bp.startWarmRestart(list);
+        while (!bp.isWarm())
+            Thread.sleep(1);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("warm  first %d accesses hit rate %5.1f%%  (%d pages loaded in %.1f ms)%n",
+                ACCESSES, hitRate(bp, table, hot), bp.getWarmedCount(), elapsed / 1e6);
+        bp.shutdown();
+    }
+}
@@ -0,0 +1,88 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that the BufferPool writes dirty pages in (table, page number)
+ * order, and adjacent pages with a single writePages call.
+ */
+public class CoalescedFlushTest extends SimpleDbTestBase {
+    private static final int TABLE_PAGES = 10;
+
+    /** Records the runs of pages written. */
+    static class RecordingHeapFile extends HeapFile {
+        final List<String> runs = new ArrayList<String>();
+
+        RecordingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public void writePage(Page page) throws IOException {
+            runs.add(page.getId().pageNumber() + "");
+            super.writePage(page);
+        }
+
+        public void writePages(int pageNo, List<byte[]> pages) throws IOException {
+            runs.add(pageNo + "+" + pages.size());
+            super.writePages(pageNo, pages);
+        }
+    }
+
+    private static RecordingHeapFile createTable(ArrayList<ArrayList<Integer>> tuples)
+            throws Exception {
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * TABLE_PAGES,
+                Integer.MAX_VALUE, null, tuples);
+        RecordingHeapFile f = new RecordingHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(f);
+        return f;
+    }
+
+    /** Deletes the first tuple of each of the specified pages. */
+    private static void deleteFirst(TransactionId tid, HeapFile f,
+            ArrayList<ArrayList<Integer>> tuples, int... pageNos) throws Exception {
+        for (int pageNo : pageNos) {
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(f.getId(), pageNo), Permissions.READ_WRITE);
+            Tuple t = page.iterator().next();
+            Database.getBufferPool().deleteTuple(tid, t);
+            assertTrue(tuples.remove(SystemTestUtil.tupleToList(t)));
+        }
+    }
+
+    @Test public void testCommitRuns() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        RecordingHeapFile f = createTable(tuples);
+        TransactionId tid = new TransactionId();
+
+        deleteFirst(tid, f, tuples, 5, 1, 2, 3, 7, 6, 9);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals("[1+3, 5+3, 9+1]", f.runs.toString());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    @Test public void testFlushAllPages() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        RecordingHeapFile f = createTable(tuples);
+        TransactionId tid = new TransactionId();
+
+        deleteFirst(tid, f, tuples, 8, 4, 3);
+        Database.getBufferPool().flushAllPages();
+        assertEquals("[3+2, 8+1]", f.runs.toString());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(CoalescedFlushTest.class);
+    }
+}
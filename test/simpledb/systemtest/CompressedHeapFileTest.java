@@ -0,0 +1,226 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that a CompressedHeapFile stores its pages compressed with either
+ * codec, and that they read back the same through inserts and deletes that
+ * move them to other extents, aborts, and reopening the file.
+ */
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 3;
+    private static final int ROWS = 3000;
+
+    private static final PageCodec[] CODECS = {
+        new LzPageCodec(), new DeflatePageCodec()
+    };
+
+    /** A compressed copy of a table of random ints and repeated values. */
+    private static CompressedHeapFile createTable(PageCodec codec,
+            ArrayList<ArrayList<Integer>> tuples) throws Exception {
+        HashMap<Integer, Integer> columns = new HashMap<Integer, Integer>();
+        columns.put(1, 0);
+        columns.put(2, 42);
+        HeapFile source = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, 100, columns, tuples);
+        File file = File.createTempFile("compressed", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".map").deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+
+        CompressedHeapFile f = new CompressedHeapFile(file, source.getTupleDesc(), codec);
+        for (int i = 0; i < source.numPages(); ++i)
+            f.writePage(source.readPage(new HeapPageId(source.getId(), i)));
+        f.close();
+        return open(f);
+    }
+
+    private static CompressedHeapFile open(CompressedHeapFile f) throws Exception {
+        CompressedHeapFile reopened = new CompressedHeapFile(f.getFile(),
+                f.getTupleDesc(), f.getCodec());
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        return reopened;
+    }
+
+    @Test public void testRead() throws Exception {
+        for (PageCodec codec : CODECS) {
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            CompressedHeapFile f = createTable(codec, tuples);
+
+            int perPage = (f.getPageSize() * 8) / (COLUMNS * 32 + 1);
+            int pages = (ROWS + perPage - 1) / perPage;
+            assertEquals(pages, f.numPages());
+            assertTrue(f.getStoredBytes() < (long) pages * f.getPageSize() / 2);
+            assertTrue(f.getFile().length() <= f.getStoredBytes());
+            SystemTestUtil.matchTuples(f, tuples);
+        }
+    }
+
+    @Test public void testInsertDelete() throws Exception {
+        for (PageCodec codec : CODECS) {
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            CompressedHeapFile f = createTable(codec, tuples);
+            long stored = f.getStoredBytes();
+
+            // Large values grow the pages past their extents.
+            TransactionId tid = new TransactionId();
+            for (int i = 0; i < 500; ++i) {
+                Tuple t = Utility.getHeapTuple(new int[] { i * 7919, -i * 104729, i << 20 });
+                Database.getBufferPool().insertTuple(tid, f.getId(), t);
+                tuples.add(SystemTestUtil.tupleToList(t));
+            }
+            Database.getBufferPool().transactionComplete(tid);
+            assertTrue(f.getStoredBytes() > stored);
+
+            tid = new TransactionId();
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            for (int i = 0; i < 1000 && it.hasNext(); ++i) {
+                Tuple t = it.next();
+                Database.getBufferPool().deleteTuple(tid, t);
+                tuples.remove(SystemTestUtil.tupleToList(t));
+            }
+            it.close();
+            Database.getBufferPool().transactionComplete(tid);
+
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            SystemTestUtil.matchTuples(f, tuples);
+
+            f.close();
+            f = open(f);
+            SystemTestUtil.matchTuples(f, tuples);
+        }
+    }
+
+    /**
+     * Pages that grow move to new extents, and the extents they leave are
+     * used again for new pages, also once the file is reopened.
+     */
+    @Test public void testFreeExtents() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        CompressedHeapFile f = createTable(new LzPageCodec(), tuples);
+        HeapFile random = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, null, null);
+        int n = f.numPages();
+        long small = f.getStoredBytes();
+
+        for (int i = 0; i < n / 2; ++i)
+            f.writePage(random.readPage(new HeapPageId(random.getId(), i)));
+        long grown = f.getStoredBytes();
+        assertTrue(grown > small);
+
+        f.close();
+        f = open(f);
+        ArrayList<ArrayList<Integer>> expected = tuplesOf(random, n / 2);
+        expected.addAll(tuples.subList(expected.size(), tuples.size()));
+        for (int i = 0; i < n / 2; ++i) {
+            byte[] data = f.readPage(new HeapPageId(f.getId(), n - 1 - i)).getPageData();
+            f.writePage(new HeapPage(new HeapPageId(f.getId(), n + i), data));
+        }
+        for (int i = 0; i < n / 2; ++i)
+            expected.addAll(tuplesOf(f, n - 1 - i, 1));
+        // Written at the end of the file, the new pages would take half of
+        // small; some of them went into free extents.
+        assertTrue(f.getStoredBytes() < grown + small / 2);
+
+        f.close();
+        f = open(f);
+        assertEquals(n + n / 2, f.numPages());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(f, expected);
+    }
+
+    /**
+     * A page written again moves to another extent, and the one it left is
+     * used again, so that writing it over and over doesn't grow the file.
+     */
+    @Test public void testRewrite() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        CompressedHeapFile f = createTable(new LzPageCodec(), tuples);
+        long stored = f.getStoredBytes();
+        HeapPageId pid = new HeapPageId(f.getId(), 0);
+        byte[] data = f.readPage(pid).getPageData();
+
+        for (int i = 0; i < 10; ++i)
+            f.writePage(new HeapPage(pid, data));
+        assertTrue(f.getStoredBytes() <= stored + f.getPageSize());
+
+        f.close();
+        f = open(f);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    /** Returns the tuples of the first pages of a file. */
+    private static ArrayList<ArrayList<Integer>> tuplesOf(HeapFile f, int pages) throws Exception {
+        return tuplesOf(f, 0, pages);
+    }
+
+    private static ArrayList<ArrayList<Integer>> tuplesOf(HeapFile f, int first, int pages)
+            throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = first; i < first + pages; ++i) {
+            HeapPage page = (HeapPage) f.readPage(new HeapPageId(f.getId(), i));
+            Iterator<Tuple> it = page.iterator();
+            while (it.hasNext())
+                tuples.add(SystemTestUtil.tupleToList(it.next()));
+        }
+        return tuples;
+    }
+
+    /** Pages written out by an aborted transaction are restored from the log. */
+    @Test public void testRollback() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        CompressedHeapFile f = createTable(new DeflatePageCodec(), tuples);
+
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), f.getId(),
+                Utility.getHeapTuple(new int[] { 1 << 30, 1 << 29, 1 << 28 }));
+        Database.getBufferPool().flushAllPages();
+        Database.getLogFile().logAbort(t.getId());
+        Database.getBufferPool().flushAllPages();
+        Database.getBufferPool().transactionComplete(t.getId(), false);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    @Test public void testSchemaFile() throws Exception {
+        File dir = File.createTempFile("schema", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File schema = new File(dir, "catalog.txt");
+        schema.deleteOnExit();
+        FileWriter w = new FileWriter(schema);
+        w.write("fast (a int, b int) compress lz\n");
+        w.write("small (a int, b int) compress deflate pagesize 16384\n");
+        w.close();
+        for (String name : new String[] { "fast", "small" }) {
+            new File(dir, name + ".dat").deleteOnExit();
+            new File(dir, name + ".dat.map").deleteOnExit();
+            new File(dir, name + ".dat.fsm").deleteOnExit();
+        }
+
+        Database.getCatalog().loadSchema(schema.getPath());
+        Catalog catalog = Database.getCatalog();
+        DbFile fast = catalog.getDatabaseFile(catalog.getTableId("fast"));
+        DbFile small = catalog.getDatabaseFile(catalog.getTableId("small"));
+        assertTrue(((CompressedHeapFile) fast).getCodec() instanceof LzPageCodec);
+        assertTrue(((CompressedHeapFile) small).getCodec() instanceof DeflatePageCodec);
+        assertEquals(16384, BufferPool.getPageSize(small.getId()));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,56 @@
+package simpledb.systemtest;
+
+import java.util.ArrayList;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that a HeapFile reads and writes the same pages with direct I/O,
+ * or with buffered I/O where the file system doesn't support it.
+ */
+public class DirectIOTest extends SimpleDbTestBase {
+
+    @Test public void testReadWrite() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * 3 + 7, null, tuples);
+        boolean direct = f.setDirectIO(true);
+        assertEquals(direct, f.isDirectIO());
+        SystemTestUtil.matchTuples(f, tuples);
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 600; ++i) {
+            Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(i, 2));
+            tuples.add(SystemTestUtil.tupleToList(Utility.getHeapTuple(i, 2)));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(5, f.numPages());
+
+        // Read back what was written, directly and through the page cache.
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(f, tuples);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertFalse(f.setDirectIO(false));
+        assertFalse(f.isDirectIO());
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    /** A file closed and reopened keeps its mode. */
+    @Test public void testReopen() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 + 7, null, tuples);
+        boolean direct = f.setDirectIO(true);
+
+        f.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(f, tuples);
+        assertEquals(direct, f.isDirectIO());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(DirectIOTest.class);
+    }
+}
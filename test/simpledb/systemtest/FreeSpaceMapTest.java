@@ -0,0 +1,124 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that HeapFile.insertTuple reads only the pages its free-space map
+ * points to, that the map follows deletes, survives reopening the file, and
+ * is corrected where it is out of date.
+ */
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private static final int TABLE_PAGES = 20;
+
+    /** Inserts a tuple and commits, returning the page it went to. */
+    private static int insert(HeapFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(1, 2);
+        Database.getBufferPool().insertTuple(tid, f.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        return t.getRecordId().getPageId().pageNumber();
+    }
+
+    /** Returns the number of pages read by an insert into an empty pool. */
+    private static long insertMisses(HeapFile f, int expectedPage) throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        long misses = bp.getMissCount();
+        assertEquals(expectedPage, insert(f));
+        return bp.getMissCount() - misses;
+    }
+
+    /** A table of full pages, whose map has been filled by a first insert. */
+    private static HeapFile createTable() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        // The map doesn't know the pages yet, so they are all read once.
+        assertEquals(TABLE_PAGES + 1, insertMisses(f, TABLE_PAGES));
+        return f;
+    }
+
+    @Test public void testInsert() throws Exception {
+        HeapFile f = createTable();
+        assertEquals(1, insertMisses(f, TABLE_PAGES));
+        assertEquals(TABLE_PAGES + 1, f.numPages());
+    }
+
+    @Test public void testDelete() throws Exception {
+        HeapFile f = createTable();
+        TransactionId tid = new TransactionId();
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(f.getId(), 7), Permissions.READ_WRITE);
+        Database.getBufferPool().deleteTuple(tid, page.iterator().next());
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(1, insertMisses(f, 7));
+        assertEquals(1, insertMisses(f, TABLE_PAGES));
+    }
+
+    @Test public void testReopen() throws Exception {
+        HeapFile f = createTable();
+        f.close();
+        assertTrue(new File(f.getFile().getPath() + ".fsm").exists());
+
+        HeapFile reopened = new HeapFile(f.getFile(), f.getTupleDesc());
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertEquals(1, insertMisses(reopened, TABLE_PAGES));
+    }
+
+    /** An aborted delete leaves the map pointing to a full page. */
+    @Test public void testOutOfDate() throws Exception {
+        HeapFile f = createTable();
+        TransactionId tid = new TransactionId();
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(f.getId(), 3), Permissions.READ_WRITE);
+        Database.getBufferPool().deleteTuple(tid, page.iterator().next());
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        assertEquals(2, insertMisses(f, TABLE_PAGES));
+        assertEquals(1, insertMisses(f, TABLE_PAGES));
+
+        page = (HeapPage) Database.getBufferPool().getPage(new TransactionId(),
+                new HeapPageId(f.getId(), 3), Permissions.READ_ONLY);
+        assertEquals(0, page.getNumEmptySlots());
+    }
+
+    /** An aborted insert that filled a page leaves it with room. */
+    @Test public void testAbortedInsert() throws Exception {
+        HeapFile f = createTable();
+        // Fill the last page, which has the tuple of the first insert.
+        TransactionId tid = new TransactionId();
+        for (int i = 1; i < 504; ++i)
+            Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(i, 2));
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        assertEquals(1, insertMisses(f, TABLE_PAGES));
+        assertEquals(TABLE_PAGES + 1, f.numPages());
+    }
+
+    /** The map of a data file written again by other means is not used. */
+    @Test public void testStaleMap() throws Exception {
+        HeapFile f = createTable();
+        f.close();
+
+        // Two full pages and one with room, where the map has full pages.
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 504 * 2 + 10; ++i)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        HeapFileEncoder.convert(tuples, f.getFile(), BufferPool.getPageSize(), 2);
+
+        HeapFile reopened = new HeapFile(f.getFile(), f.getTupleDesc());
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertEquals(3, insertMisses(reopened, 2));
+        assertEquals(1, insertMisses(reopened, 2));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -0,0 +1,83 @@
+package simpledb.systemtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that BufferPool.getPages returns the pages asked for, in order,
+ * reads each missing page once and locks them all.
+ */
+public class GetPagesTest extends SimpleDbTestBase {
+    private static final int TABLE_PAGES = 30;
+
+    private static List<PageId> pids(HeapFile f, int... pageNos) {
+        ArrayList<PageId> pids = new ArrayList<PageId>();
+        for (int pageNo : pageNos)
+            pids.add(new HeapPageId(f.getId(), pageNo));
+        return pids;
+    }
+
+    @Test public void testOrderAndMisses() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, tuples);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+
+        bp.getPage(tid, new HeapPageId(f.getId(), 9), Permissions.READ_ONLY);
+        long misses = bp.getMissCount();
+        List<PageId> pids = pids(f, 5, 2, 9, 2, 20, 29);
+        List<Page> pages = bp.getPages(tid, pids, Permissions.READ_ONLY);
+
+        assertEquals(4, bp.getMissCount() - misses);
+        assertEquals(pids.size(), pages.size());
+        for (int i = 0; i < pids.size(); ++i)
+            assertEquals(pids.get(i), pages.get(i).getId());
+        assertSame(pages.get(1), pages.get(3));
+        assertSame(pages.get(2), bp.getPage(tid, pids.get(2), Permissions.READ_ONLY));
+
+        // The pages are cached, and hold the table's data.
+        misses = bp.getMissCount();
+        bp.getPages(tid, pids, Permissions.READ_ONLY);
+        assertEquals(0, bp.getMissCount() - misses);
+        Tuple first = ((HeapPage) pages.get(1)).iterator().next();
+        assertEquals(tuples.get(2 * 504), SystemTestUtil.tupleToList(first));
+        bp.transactionComplete(tid);
+    }
+
+    @Test public void testLocks() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        List<PageId> pids = pids(f, 3, 1, 4);
+
+        bp.getPages(tid, pids, Permissions.READ_WRITE);
+        for (PageId pid : pids)
+            assertTrue(bp.holdsLock(tid, pid));
+        bp.transactionComplete(tid);
+        for (PageId pid : pids)
+            assertFalse(bp.holdsLock(tid, pid));
+    }
+
+    /** More misses than the pool holds evicts pages read earlier. */
+    @Test public void testSmallPool() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        TransactionId tid = new TransactionId();
+
+        List<Page> pages = bp.getPages(tid, pids(f, 0, 1, 2, 3, 4, 5, 6, 7), Permissions.READ_ONLY);
+        assertEquals(8, pages.size());
+        assertEquals(4, bp.getNumCachedPages());
+        assertEquals(new HeapPageId(f.getId(), 7), pages.get(7).getId());
+        bp.transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(GetPagesTest.class);
+    }
+}
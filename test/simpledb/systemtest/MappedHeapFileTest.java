@@ -0,0 +1,83 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that a MappedHeapFile serves the pages of its file, keeps its
+ * mapping unchanged until pages are written, and maps the pages the file
+ * grows by.
+ */
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private static final int SEGMENT_PAGES = 2;
+
+    private static MappedHeapFile createMapped(int rows, ArrayList<ArrayList<Integer>> tuples)
+            throws Exception {
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, rows,
+                Integer.MAX_VALUE, null, tuples);
+        MappedHeapFile f = new MappedHeapFile(file, Utility.getTupleDesc(2), SEGMENT_PAGES);
+        Database.getCatalog().addTable(f);
+        return f;
+    }
+
+    @Test public void testScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        MappedHeapFile f = createMapped(504 * 5 + 10, tuples);
+        assertEquals(6, f.numPages());
+        SystemTestUtil.matchTuples(f, tuples);
+
+        // Through the pool too, pages are still read from the mapping.
+        Database.resetBufferPool(2);
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    @Test public void testModifyCopiesPage() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        MappedHeapFile f = createMapped(10, tuples);
+        TransactionId tid = new TransactionId();
+
+        Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(7, 2));
+        HeapPage cached = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        assertEquals(504 - 11, cached.getNumEmptySlots());
+        // Not written yet: the file and its mapping are unchanged.
+        HeapPage page = (HeapPage) f.readPage(new HeapPageId(f.getId(), 0));
+        assertEquals(504 - 10, page.getNumEmptySlots());
+
+        Database.getBufferPool().transactionComplete(tid, false);
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    @Test public void testGrowth() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        MappedHeapFile f = createMapped(504, tuples);
+        SystemTestUtil.matchTuples(f, tuples);
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 504 * 3; ++i) {
+            Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(i, 2));
+            tuples.add(SystemTestUtil.tupleToList(Utility.getHeapTuple(i, 2)));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(4, f.numPages());
+
+        // The pages written since are mapped, in the first segment and a new one.
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(f, tuples);
+        HeapPage last = (HeapPage) f.readPage(new HeapPageId(f.getId(), 3));
+        assertEquals(0, last.getNumEmptySlots());
+
+        f.close();
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,89 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that tables bound to a named cache of the BufferPool keep their
+ * pages while other tables stream through the default cache.
+ */
+public class NamedCacheTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 8;
+    private static final int LOOKUP_PAGES = 4;
+
+    private static long scanAndTouch(boolean bound) throws Exception {
+        HeapFile lookup = SystemTestUtil.createRandomHeapFile(2, 504 * LOOKUP_PAGES, null, null);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * 3 * POOL_PAGES, null, tuples);
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        bp.setScanRingFraction(Double.POSITIVE_INFINITY);
+        if (bound) {
+            bp.createCache("lookup", LOOKUP_PAGES);
+            Database.getCatalog().setCacheName(lookup.getId(), "lookup");
+        }
+
+        return SystemTestUtil.scanAndTouch(bp, lookup, LOOKUP_PAGES, big, tuples);
+    }
+
+    @Test public void testBoundTableStays() throws Exception {
+        assertEquals(0, scanAndTouch(true));
+        BufferPool bp = Database.getBufferPool();
+        assertEquals(LOOKUP_PAGES, bp.getMissCount("lookup"));
+        assertEquals(LOOKUP_PAGES, bp.getHitCount("lookup"));
+        assertEquals(POOL_PAGES, bp.getNumPages());
+        assertEquals(LOOKUP_PAGES, bp.getNumPages("lookup"));
+    }
+
+    @Test public void testUnboundTableEvicted() throws Exception {
+        assertEquals(LOOKUP_PAGES, scanAndTouch(false));
+    }
+
+    /** A named cache only holds its own pages. */
+    @Test public void testCacheQuota() throws Exception {
+        HeapFile lookup = SystemTestUtil.createRandomHeapFile(2, 504 * LOOKUP_PAGES, null, null);
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        bp.createCache("lookup", 2);
+        Database.getCatalog().setCacheName(lookup.getId(), "lookup");
+
+        SystemTestUtil.touch(bp, lookup, LOOKUP_PAGES);
+        assertEquals(2, bp.getNumCachedPages());
+        assertEquals("lookup", bp.getCacheName(lookup.getId()));
+
+        bp.createCache("lookup", LOOKUP_PAGES);
+        SystemTestUtil.touch(bp, lookup, LOOKUP_PAGES);
+        assertEquals(0, SystemTestUtil.touch(bp, lookup, LOOKUP_PAGES));
+    }
+
+    @Test public void testSchemaFile() throws Exception {
+        File dir = File.createTempFile("schema", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File schema = new File(dir, "catalog.txt");
+        schema.deleteOnExit();
+        FileWriter w = new FileWriter(schema);
+        w.write("cache lookup 16\n");
+        w.write("small (a int, b int) cache lookup\n");
+        w.write("large (a int pk, b int)\n");
+        w.close();
+
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        Database.getCatalog().loadSchema(schema.getPath());
+        Catalog catalog = Database.getCatalog();
+        assertEquals("lookup", catalog.getCacheName(catalog.getTableId("small")));
+        assertNull(catalog.getCacheName(catalog.getTableId("large")));
+        assertEquals(16, bp.getNumPages("lookup"));
+        assertEquals(BufferPool.DEFAULT_CACHE, bp.getCacheName(catalog.getTableId("large")));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(NamedCacheTest.class);
+    }
+}
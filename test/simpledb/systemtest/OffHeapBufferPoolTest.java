@@ -0,0 +1,82 @@
+package simpledb.systemtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Runs scans and updates against a small buffer pool keeping its pages in
+ * off-heap frames.
+ */
+public class OffHeapBufferPoolTest extends SimpleDbTestBase {
+    private static final int ROWS = 512 * 10;
+
+    private static BufferPool offHeapPool(int pages) {
+        return Database.resetBufferPool(
+                new BufferPool(pages, 2, ClockEvictionPolicy.factory(), true));
+    }
+
+    @Test public void testScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, tuples);
+        assertTrue(offHeapPool(4).isOffHeap());
+
+        SystemTestUtil.matchTuples(f, tuples);
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    /** A page kept by a reader stays valid after its frame is reused. */
+    @Test public void testEvictedPageDetached() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, tuples);
+        BufferPool bp = offHeapPool(2);
+        TransactionId tid = new TransactionId();
+
+        HeapPage page = (HeapPage) bp.getPage(tid, new HeapPageId(f.getId(), 0),
+                Permissions.READ_ONLY);
+        for (int i = 1; i < f.numPages(); ++i)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+
+        Iterator<Tuple> it = page.iterator();
+        for (int i = 0; it.hasNext(); ++i)
+            assertEquals(tuples.get(i), SystemTestUtil.tupleToList(it.next()));
+        bp.transactionComplete(tid);
+    }
+
+    @Test public void testAbortAndCommit()
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS / 4, null, tuples);
+        offHeapPool(8);
+
+        Transaction t = new Transaction();
+        t.start();
+        Delete delete = new Delete(t.getId(), new SeqScan(t.getId(), f.getId(), ""));
+        delete.open();
+        assertEquals(ROWS / 4, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        t.transactionComplete(true);
+
+        SystemTestUtil.matchTuples(f, tuples);
+
+        t = new Transaction();
+        t.start();
+        EvictionTest.insertRow(f, t);
+        t.commit();
+
+        t = new Transaction();
+        t.start();
+        assertTrue(EvictionTest.findMagicTuple(f, t));
+        t.commit();
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(OffHeapBufferPoolTest.class);
+    }
+}
@@ -0,0 +1,118 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that tables with pages of other sizes than the default are read,
+ * written, logged and rolled back with their own page size.
+ */
+public class PageSizeTest extends SimpleDbTestBase {
+
+    /** Creates a table of 2 columns with pages of the specified size. */
+    private static HeapFile createTable(int pageSize, int rows,
+            ArrayList<ArrayList<Integer>> tuples) throws Exception {
+        for (int i = 0; i < rows; ++i)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, -i)));
+        File file = File.createTempFile("table", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        HeapFileEncoder.convert(tuples, file, pageSize, 2);
+
+        HeapFile f = new HeapFile(file, Utility.getTupleDesc(2), pageSize);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    @After public void resetPageSize() {
+        BufferPool.resetPageSize();
+    }
+
+    @Test public void testReadWrite() throws Exception {
+        for (int pageSize : new int[] { 1024, 16384, 65536 }) {
+            int perPage = (pageSize * 8) / (8 * 8 + 1);
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            HeapFile f = createTable(pageSize, perPage * 2 + 3, tuples);
+            assertEquals(3, f.numPages());
+            assertEquals(3L * pageSize, f.getFile().length());
+            SystemTestUtil.matchTuples(f, tuples);
+
+            TransactionId tid = new TransactionId();
+            for (int i = 0; i < perPage; ++i) {
+                Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(i, 2));
+                tuples.add(SystemTestUtil.tupleToList(Utility.getHeapTuple(i, 2)));
+            }
+            Database.getBufferPool().transactionComplete(tid);
+            assertEquals(4, f.numPages());
+
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(new TransactionId(),
+                    new HeapPageId(f.getId(), 3), Permissions.READ_ONLY);
+            assertEquals(pageSize, page.getPageSize());
+            assertEquals(pageSize, page.getPageData().length);
+            SystemTestUtil.matchTuples(f, tuples);
+        }
+    }
+
+    /** Page images of another size are logged and rolled back whole. */
+    @Test public void testRollback() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = createTable(16384, 100, tuples);
+
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), f.getId(), Utility.getHeapTuple(1000, 2));
+        // Write the page out, logging it, so that only the log can undo it.
+        Database.getBufferPool().flushAllPages();
+        Database.getLogFile().logAbort(t.getId());
+        Database.getBufferPool().flushAllPages();
+        Database.getBufferPool().transactionComplete(t.getId(), false);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    @Test public void testDefault() throws Exception {
+        BufferPool.setPageSize(8192);
+        File file = File.createTempFile("empty", ".dat");
+        file.deleteOnExit();
+        HeapFile f = Utility.createEmptyHeapFile(file.getPath(), 2);
+
+        assertEquals(8192, f.getPageSize());
+        HeapPage page = (HeapPage) f.readPage(new HeapPageId(f.getId(), 0));
+        assertEquals((8192 * 8) / (8 * 8 + 1), page.getNumEmptySlots());
+    }
+
+    @Test public void testSchemaFile() throws Exception {
+        File dir = File.createTempFile("schema", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File schema = new File(dir, "catalog.txt");
+        schema.deleteOnExit();
+        FileWriter w = new FileWriter(schema);
+        w.write("large (a int, b int) pagesize 65536\n");
+        w.write("small (a int, b int) mapped pagesize 1024\n");
+        w.write("other (a int, b int)\n");
+        w.close();
+
+        Database.getCatalog().loadSchema(schema.getPath());
+        Catalog catalog = Database.getCatalog();
+        assertEquals(65536, BufferPool.getPageSize(catalog.getTableId("large")));
+        assertEquals(1024, BufferPool.getPageSize(catalog.getTableId("small")));
+        assertEquals(BufferPool.PAGE_SIZE, BufferPool.getPageSize(catalog.getTableId("other")));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PageSizeTest.class);
+    }
+}
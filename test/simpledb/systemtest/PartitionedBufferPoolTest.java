@@ -0,0 +1,99 @@
+package simpledb.systemtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Runs scans and updates against a buffer pool split into several hash
+ * partitions, each much smaller than the table.
+ */
+public class PartitionedBufferPoolTest extends SimpleDbTestBase {
+    private static final int ROWS = 512 * 10;
+
+    private static int count(HeapFile f, TransactionId tid)
+            throws DbException, TransactionAbortedException {
+        SeqScan scan = new SeqScan(tid, f.getId(), "");
+        int n = 0;
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        return n;
+    }
+
+    @Test public void testPartitionSizes() {
+        BufferPool bp = new BufferPool(10, 4, ClockEvictionPolicy.factory());
+        assertEquals(4, bp.getNumPartitions());
+        bp = new BufferPool(3, 8, ClockEvictionPolicy.factory());
+        assertEquals(3, bp.getNumPartitions());
+        assertEquals(1, new BufferPool(2).getNumPartitions());
+    }
+
+    /** Concurrent scans of a table bigger than the pool see every tuple. */
+    @Test public void testConcurrentScans() throws Exception {
+        final HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        Database.resetBufferPool(new BufferPool(8, 4, LruKEvictionPolicy.factory(2)));
+
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        final int[] counts = new int[4];
+        Thread[] threads = new Thread[counts.length];
+        for (int i = 0; i < threads.length; ++i) {
+            final int id = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        TransactionId tid = new TransactionId();
+                        for (int j = 0; j < 3; ++j)
+                            counts[id] += count(f, tid);
+                        Database.getBufferPool().transactionComplete(tid);
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals(new ArrayList<Throwable>(), errors);
+        for (int c : counts)
+            assertEquals(3 * ROWS, c);
+    }
+
+    /** Aborted deletes are undone in every partition. */
+    @Test public void testAbortAcrossPartitions()
+            throws IOException, DbException, TransactionAbortedException {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS / 4, null, null);
+        Database.resetBufferPool(new BufferPool(16, 4, ClockEvictionPolicy.factory()));
+
+        Transaction t = new Transaction();
+        t.start();
+        Delete delete = new Delete(t.getId(), new SeqScan(t.getId(), f.getId(), ""));
+        delete.open();
+        assertEquals(ROWS / 4, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        assertEquals(0, count(f, t.getId()));
+        t.transactionComplete(true);
+
+        t = new Transaction();
+        t.start();
+        assertEquals(ROWS / 4, count(f, t.getId()));
+        t.commit();
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PartitionedBufferPoolTest.class);
+    }
+}
@@ -0,0 +1,62 @@
+package simpledb.systemtest;
+
+import java.util.ArrayList;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Scans tables with readahead on, and checks that the pages after the
+ * first few come from readahead rather than from synchronous reads.
+ */
+public class ReadaheadTest extends SimpleDbTestBase {
+    private static final int ROWS = 504 * 30;
+
+    @Test public void testSequentialScanReadsAhead() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, tuples);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setReadahead(true);
+        assertTrue(bp.isReadahead());
+
+        SystemTestUtil.matchTuples(f, tuples);
+        assertEquals(30, f.numPages());
+        assertTrue(bp.getPrefetchCount() > 0);
+        assertTrue(bp.getMissCount() < f.numPages() / 2);
+        assertEquals(f.numPages(), bp.getMissCount() + bp.getPrefetchCount());
+    }
+
+    /** Random accesses never trigger readahead. */
+    @Test public void testRandomAccessNoReadahead() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setReadahead(true);
+
+        TransactionId tid = new TransactionId();
+        int[] pages = { 7, 3, 21, 4, 15, 0, 29, 11 };
+        for (int pageNo : pages)
+            bp.getPage(tid, new HeapPageId(f.getId(), pageNo), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        assertEquals(0, bp.getPrefetchCount());
+    }
+
+    /** A scan bigger than the pool reads ahead without running out of room. */
+    @Test public void testScanLargerThanPool() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, tuples);
+        BufferPool bp = Database.resetBufferPool(8);
+        bp.setReadahead(true);
+
+        SystemTestUtil.matchTuples(f, tuples);
+        SystemTestUtil.matchTuples(f, tuples);
+        bp.setReadahead(false);
+        assertFalse(bp.isReadahead());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ReadaheadTest.class);
+    }
+}
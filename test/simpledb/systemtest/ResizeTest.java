@@ -0,0 +1,99 @@
+package simpledb.systemtest;
+
+import java.util.ArrayList;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that a BufferPool can be resized while caching pages.
+ */
+public class ResizeTest extends SimpleDbTestBase {
+    private static final int TABLE_PAGES = 20;
+
+    /** Reads pages [0, n) of the table, returning the number of misses. */
+    private static long read(BufferPool bp, HeapFile table, int n) throws Exception {
+        long misses = bp.getMissCount();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < n; ++i)
+            bp.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        return bp.getMissCount() - misses;
+    }
+
+    @Test public void testShrinkAndGrow() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        BufferPool bp = Database.resetBufferPool(TABLE_PAGES);
+
+        assertEquals(TABLE_PAGES, read(bp, table, TABLE_PAGES));
+        assertEquals(TABLE_PAGES, bp.getNumCachedPages());
+
+        bp.resize(8);
+        assertEquals(8, bp.getNumPages());
+        assertEquals(8, bp.getNumCachedPages());
+        // A loop over more pages than the pool always misses.
+        assertEquals(TABLE_PAGES, read(bp, table, TABLE_PAGES));
+
+        bp.resize(TABLE_PAGES);
+        read(bp, table, TABLE_PAGES);
+        assertEquals(0, read(bp, table, TABLE_PAGES));
+    }
+
+    @Test public void testSizeBytes() throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setSizeBytes(10L * BufferPool.getPageSize() + 100);
+        assertEquals(10, bp.getNumPages());
+        assertEquals(10L * BufferPool.getPageSize(), bp.getSizeBytes());
+    }
+
+    /** Shrinking keeps dirty pages, they go once written. */
+    @Test public void testShrinkKeepsDirtyPages() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        BufferPool bp = Database.resetBufferPool(TABLE_PAGES);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 5; ++i)
+            bp.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_WRITE)
+                    .markDirty(true, tid);
+
+        bp.resize(2);
+        assertEquals(5, bp.getNumCachedPages());
+        bp.transactionComplete(tid);
+
+        bp.getPage(tid, new HeapPageId(table.getId(), 10), Permissions.READ_ONLY);
+        assertEquals(2, bp.getNumCachedPages());
+        bp.transactionComplete(tid);
+    }
+
+    @Test public void testGrowOffHeap() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, tuples);
+        BufferPool bp = Database.resetBufferPool(new BufferPool(4, 1,
+                ClockEvictionPolicy.factory(), true));
+
+        bp.resize(TABLE_PAGES);
+        bp.setScanRingFraction(Double.POSITIVE_INFINITY);
+        SystemTestUtil.matchTuples(table, tuples);
+        assertEquals(0, read(bp, table, TABLE_PAGES));
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    /** The advisor sees the loop that the pool is too small for. */
+    @Test public void testAdvisor() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        BufferPool bp = Database.resetBufferPool(8);
+        bp.setSizeAdvisor(new SizeAdvisor(64));
+
+        for (int i = 0; i < 5; ++i)
+            read(bp, table, TABLE_PAGES);
+        assertEquals(0.8, bp.getSizeAdvisor().getHitRatio(TABLE_PAGES), 0.001);
+        int suggested = bp.getSizeAdvisor().suggestPages(0.01);
+        assertTrue(suggested >= TABLE_PAGES && suggested <= TABLE_PAGES + 1);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ResizeTest.class);
+    }
+}
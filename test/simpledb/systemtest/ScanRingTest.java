@@ -0,0 +1,99 @@
+package simpledb.systemtest;
+
+import java.util.ArrayList;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that sequential scans of large tables through a ScanRing leave
+ * the other cached pages alone.
+ */
+public class ScanRingTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 20;
+    private static final int HOT_PAGES = 8;
+
+    private static long scanAndTouch(double fraction) throws Exception {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 504 * HOT_PAGES, null, null);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * 3 * POOL_PAGES, null, tuples);
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        bp.setScanRingFraction(fraction);
+
+        return SystemTestUtil.scanAndTouch(bp, hot, HOT_PAGES, big, tuples);
+    }
+
+    @Test public void testScanKeepsHotPages() throws Exception {
+        assertEquals(0, scanAndTouch(0.25));
+    }
+
+    @Test public void testScanWithoutRingFlushesHotPages() throws Exception {
+        assertEquals(HOT_PAGES, scanAndTouch(Double.POSITIVE_INFINITY));
+    }
+
+    /** A ring page used by another reader stays cached when the ring goes. */
+    @Test public void testSharedRingPageStays() throws Exception {
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * 3 * POOL_PAGES, null, null);
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        ScanRing ring = bp.getScanRing(big.numPages());
+        assertNotNull(ring);
+        assertNull(bp.getScanRing(POOL_PAGES / 2));
+
+        TransactionId tid = new TransactionId();
+        PageId p0 = new HeapPageId(big.getId(), 0);
+        PageId p1 = new HeapPageId(big.getId(), 1);
+        bp.getPage(tid, p0, Permissions.READ_ONLY, ring);
+        bp.getPage(tid, p1, Permissions.READ_ONLY, ring);
+        bp.getPage(tid, p1, Permissions.READ_ONLY);
+        bp.releaseScanRing(ring);
+
+        long misses = bp.getMissCount();
+        bp.getPage(tid, p1, Permissions.READ_ONLY);
+        assertEquals(misses, bp.getMissCount());
+        bp.getPage(tid, p0, Permissions.READ_ONLY);
+        assertEquals(misses + 1, bp.getMissCount());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Clean pages of rings are evicted when a partition holds nothing else,
+     * rather than running out of frames.
+     */
+    @Test public void testRingPagesEvictable() throws Exception {
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, null);
+        BufferPool bp = Database.resetBufferPool(new BufferPool(4, new ClockEvictionPolicy()));
+        bp.setScanRingFraction(0);
+        ScanRing first = bp.getScanRing(big.numPages());
+        ScanRing second = bp.getScanRing(big.numPages());
+        assertEquals(2, first.getSize());
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 4; ++i)
+            bp.getPage(tid, new HeapPageId(big.getId(), i), Permissions.READ_ONLY,
+                    i < 2 ? first : second);
+        bp.getPage(tid, new HeapPageId(big.getId(), 4), Permissions.READ_ONLY);
+        // The ring finds its page gone and goes on.
+        bp.getPage(tid, new HeapPageId(big.getId(), 5), Permissions.READ_ONLY, first);
+        assertEquals(4, bp.getNumCachedPages());
+        bp.releaseScanRing(first);
+        bp.releaseScanRing(second);
+        bp.transactionComplete(tid);
+    }
+
+    /** A ring fits in a partition, whatever the size of the pool. */
+    @Test public void testRingSizePerPartition() throws Exception {
+        BufferPool bp = new BufferPool(256, 16, ClockEvictionPolicy.factory());
+        bp.setScanRingFraction(0);
+        assertEquals(2, bp.getScanRing(1000).getSize());
+        bp = new BufferPool(256, 1, ClockEvictionPolicy.factory());
+        bp.setScanRingFraction(0);
+        assertEquals(16, bp.getScanRing(1000).getSize());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ScanRingTest.class);
+    }
+}
@@ -0,0 +1,97 @@
+package simpledb.systemtest;
+
+import java.util.ArrayList;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that clean pages evicted from the BufferPool are served from its
+ * compressed second tier.
+ */
+public class SecondTierCacheTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 8;
+    private static final int TABLE_PAGES = 24;
+
+    private static void scanTwice(BufferPool bp, PageCodec codec) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(
+                2, 504 * TABLE_PAGES, 1000, null, tuples);
+        CompressedPageCache tier = new CompressedPageCache(1 << 20, codec);
+        bp.setSecondTier(tier);
+        // Pages read through a scan ring don't go to the second tier.
+        bp.setScanRingFraction(Double.POSITIVE_INFINITY);
+
+        SystemTestUtil.matchTuples(table, tuples);
+        assertEquals(0, tier.getHitCount());
+        assertEquals(TABLE_PAGES - POOL_PAGES, tier.size());
+        assertTrue(tier.getBytes() < tier.size() * BufferPool.getPageSize());
+
+        // Every page of the second scan was evicted by the first one, or
+        // earlier on in the second one.
+        SystemTestUtil.matchTuples(table, tuples);
+        assertEquals(TABLE_PAGES, tier.getHitCount());
+        assertEquals(TABLE_PAGES - POOL_PAGES, tier.size());
+    }
+
+    @Test public void testScan() throws Exception {
+        scanTwice(Database.resetBufferPool(POOL_PAGES), new LzPageCodec());
+    }
+
+    @Test public void testScanDeflate() throws Exception {
+        scanTwice(Database.resetBufferPool(POOL_PAGES), new DeflatePageCodec());
+    }
+
+    @Test public void testScanOffHeap() throws Exception {
+        scanTwice(Database.resetBufferPool(new BufferPool(POOL_PAGES, 1,
+                ClockEvictionPolicy.factory(), true)), new LzPageCodec());
+    }
+
+    /** A discarded page is not served from the second tier. */
+    @Test public void testDiscard() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * 2, null, null);
+        BufferPool bp = Database.resetBufferPool(1);
+        CompressedPageCache tier = new CompressedPageCache(1 << 20, new LzPageCodec());
+        bp.setSecondTier(tier);
+
+        TransactionId tid = new TransactionId();
+        PageId p0 = new HeapPageId(table.getId(), 0);
+        PageId p1 = new HeapPageId(table.getId(), 1);
+        bp.getPage(tid, p0, Permissions.READ_ONLY);
+        bp.getPage(tid, p1, Permissions.READ_ONLY);
+        assertTrue(tier.contains(p0));
+
+        bp.discardPage(p0);
+        assertFalse(tier.contains(p0));
+        bp.getPage(tid, p0, Permissions.READ_ONLY);
+        assertEquals(0, tier.getHitCount());
+        assertTrue(tier.contains(p1));
+        bp.transactionComplete(tid);
+    }
+
+    /** The oldest pages are dropped to stay within budget. */
+    @Test public void testBudget() throws Exception {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        PageCodec codec = new LzPageCodec();
+        int entry = codec.compress(data).length + CompressedPageCache.ENTRY_OVERHEAD;
+        CompressedPageCache tier = new CompressedPageCache(3 * entry, codec);
+
+        for (int i = 0; i < 5; ++i)
+            tier.put(new HeapPageId(1, i), data);
+        assertEquals(3, tier.size());
+        assertEquals(2, tier.getDropCount());
+        assertFalse(tier.contains(new HeapPageId(1, 1)));
+        assertTrue(tier.contains(new HeapPageId(1, 2)));
+
+        assertArrayEquals(data, tier.get(new HeapPageId(1, 4), data.length));
+        assertFalse(tier.contains(new HeapPageId(1, 4)));
+        assertEquals(2 * entry, tier.getBytes());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SecondTierCacheTest.class);
+    }
+}
@@ -0,0 +1,220 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that a SlottedFile keeps strings in the bytes of their value,
+ * including those longer than a page on overflow pages, through inserts,
+ * deletes, aborts and reading the pages back from disk.
+ */
+public class SlottedFileTest extends SimpleDbTestBase {
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE }, new String[] { "id", "name" });
+
+    private static SlottedFile createTable() throws Exception {
+        File file = File.createTempFile("slotted", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        SlottedFile f = new SlottedFile(file, TD);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    /** A string of the specified length, different for each id. */
+    private static String value(int id, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; ++i)
+            sb.append((char) ('a' + (id + i) % 26));
+        return sb.toString();
+    }
+
+    private static Tuple tuple(int id, String s) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(s, Math.max(Type.STRING_LEN, s.length())));
+        return t;
+    }
+
+    private static void insert(SlottedFile f, ArrayList<String> expected,
+            int id, int length) throws Exception {
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, f.getId(), tuple(id, value(id, length)));
+        Database.getBufferPool().transactionComplete(tid);
+        expected.add(id + ":" + value(id, length));
+    }
+
+    /** Scans the file, checking that it holds the expected tuples. */
+    private static ArrayList<Tuple> match(SlottedFile f, ArrayList<String> expected)
+            throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        ArrayList<String> actual = new ArrayList<String>();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            tuples.add(t);
+            actual.add(((IntField) t.getField(0)).getValue() + ":"
+                    + ((StringField) t.getField(1)).getValue());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        ArrayList<String> sorted = new ArrayList<String>(expected);
+        Collections.sort(sorted);
+        Collections.sort(actual);
+        assertEquals(sorted, actual);
+        return tuples;
+    }
+
+    @Test public void testShortStrings() throws Exception {
+        SlottedFile f = createTable();
+        ArrayList<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 1000; ++i)
+            insert(f, expected, i, i % 20);
+
+        match(f, expected);
+        // A fixed-length heap file takes 136 bytes a tuple, 33 pages.
+        assertTrue(f.numPages() <= 6);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        match(f, expected);
+    }
+
+    @Test public void testOverflow() throws Exception {
+        SlottedFile f = createTable();
+        ArrayList<String> expected = new ArrayList<String>();
+        insert(f, expected, 1, 10);
+        insert(f, expected, 2, 3 * BufferPool.getPageSize());
+        insert(f, expected, 3, BufferPool.getPageSize() / 2);
+        insert(f, expected, 4, 200);
+
+        match(f, expected);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        match(f, expected);
+    }
+
+    /** The overflow pages of a deleted value are used again. */
+    @Test public void testDelete() throws Exception {
+        SlottedFile f = createTable();
+        ArrayList<String> expected = new ArrayList<String>();
+        insert(f, expected, 1, 10);
+        insert(f, expected, 2, 3 * BufferPool.getPageSize());
+        int pages = f.numPages();
+
+        for (Tuple t : match(f, expected)) {
+            if (((IntField) t.getField(0)).getValue() == 2) {
+                TransactionId tid = new TransactionId();
+                Database.getBufferPool().deleteTuple(tid, t);
+                Database.getBufferPool().transactionComplete(tid);
+            }
+        }
+        expected.remove(1);
+        match(f, expected);
+
+        for (int i = 3; i < 100; ++i)
+            insert(f, expected, i, 100);
+        assertEquals(pages, f.numPages());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        match(f, expected);
+    }
+
+    @Test public void testAbort() throws Exception {
+        SlottedFile f = createTable();
+        ArrayList<String> expected = new ArrayList<String>();
+        insert(f, expected, 1, 10);
+
+        Transaction t = new Transaction();
+        t.start();
+        Database.getBufferPool().insertTuple(t.getId(), f.getId(), tuple(2, value(2, 20)));
+        Database.getBufferPool().insertTuple(t.getId(), f.getId(),
+                tuple(3, value(3, 2 * BufferPool.getPageSize())));
+        t.transactionComplete(true);
+
+        match(f, expected);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        match(f, expected);
+    }
+
+    /**
+     * Long strings copied into a HeapFile are cut to the fixed width of its
+     * slots, leaving the tuples next to them alone.
+     */
+    @Test public void testCopyToHeapFile() throws Exception {
+        SlottedFile f = createTable();
+        ArrayList<String> expected = new ArrayList<String>();
+        insert(f, expected, 1, 10);
+        insert(f, expected, 2, 1000);
+        insert(f, expected, 3, 20);
+
+        File file = File.createTempFile("heap", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        HeapFile heap = new HeapFile(file, TD);
+        Database.getCatalog().addTable(heap, SystemTestUtil.getUUID());
+        Tuple[] byId = new Tuple[4];
+        for (Tuple t : match(f, expected))
+            byId[((IntField) t.getField(0)).getValue()] = t;
+
+        // The long string goes into the first slot, in front of the others.
+        TransactionId tid = new TransactionId();
+        Tuple first = tuple(0, "");
+        Database.getBufferPool().insertTuple(tid, heap.getId(), first);
+        Database.getBufferPool().insertTuple(tid, heap.getId(), byId[1]);
+        Database.getBufferPool().insertTuple(tid, heap.getId(), byId[3]);
+        Database.getBufferPool().deleteTuple(tid, first);
+        Database.getBufferPool().insertTuple(tid, heap.getId(), byId[2]);
+        Database.getBufferPool().transactionComplete(tid);
+
+        ArrayList<String> actual = new ArrayList<String>();
+        tid = new TransactionId();
+        DbFileIterator it = heap.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            actual.add(((IntField) t.getField(0)).getValue() + ":"
+                    + ((StringField) t.getField(1)).getValue());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        Collections.sort(actual);
+        assertEquals(3, actual.size());
+        assertEquals("1:" + value(1, 10), actual.get(0));
+        assertEquals("2:" + value(2, Type.STRING_LEN), actual.get(1));
+        assertEquals("3:" + value(3, 20), actual.get(2));
+    }
+
+    @Test public void testSchemaFile() throws Exception {
+        File dir = File.createTempFile("schema", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File schema = new File(dir, "catalog.txt");
+        schema.deleteOnExit();
+        FileWriter w = new FileWriter(schema);
+        w.write("names (id int, name varchar) pagesize 1024\n");
+        w.close();
+        new File(dir, "names.dat").deleteOnExit();
+        new File(dir, "names.dat.fsm").deleteOnExit();
+
+        Database.getCatalog().loadSchema(schema.getPath());
+        DbFile f = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("names"));
+        assertTrue(f instanceof SlottedFile);
+        assertEquals(1024, BufferPool.getPageSize(f.getId()));
+        assertEquals(Type.STRING_TYPE, f.getTupleDesc().getFieldType(1));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SlottedFileTest.class);
+    }
+}
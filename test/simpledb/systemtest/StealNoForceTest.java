@@ -0,0 +1,129 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Runs transactions against a tiny buffer pool in STEAL/NO FORCE mode, where
+ * dirty pages get written out before commit and committed pages are only
+ * made durable by the log.
+ */
+public class StealNoForceTest extends SimpleDbTestBase {
+    private static final int ROWS = 512 * 10;
+
+    /** Allocates a file with ~10 pages of data and a 2 page STEAL pool. */
+    private HeapFile createTable()
+            throws IOException, DbException, TransactionAbortedException {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        Database.resetBufferPool(2).setStealNoForce(true);
+        return f;
+    }
+
+    private static int deleteAll(HeapFile f, Transaction t)
+            throws DbException, TransactionAbortedException {
+        Delete delete = new Delete(t.getId(), new SeqScan(t.getId(), f.getId(), ""));
+        delete.open();
+        int deleted = ((IntField) delete.next().getField(0)).getValue();
+        delete.close();
+        return deleted;
+    }
+
+    private static int count(HeapFile f, Transaction t)
+            throws DbException, TransactionAbortedException {
+        SeqScan scan = new SeqScan(t.getId(), f.getId(), "");
+        int n = 0;
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        return n;
+    }
+
+    /** A scan must be able to steal the only frame from a dirty page. */
+    @Test public void testScanStealsDirtyPage()
+            throws IOException, DbException, TransactionAbortedException {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        Database.resetBufferPool(1).setStealNoForce(true);
+
+        Transaction t = new Transaction();
+        t.start();
+        EvictionTest.insertRow(f, t);
+        assertTrue(EvictionTest.findMagicTuple(f, t));
+        t.commit();
+
+        t = new Transaction();
+        t.start();
+        assertTrue(EvictionTest.findMagicTuple(f, t));
+        t.commit();
+    }
+
+    /** Dirtying more pages than the pool holds, then aborting. */
+    @Test public void testAbortStolenPages()
+            throws IOException, DbException, TransactionAbortedException {
+        HeapFile f = createTable();
+
+        Transaction t = new Transaction();
+        t.start();
+        assertEquals(ROWS, deleteAll(f, t));
+        assertEquals(0, count(f, t));
+        t.transactionComplete(true);
+
+        t = new Transaction();
+        t.start();
+        assertEquals(ROWS, count(f, t));
+        t.commit();
+    }
+
+    /** Dirtying more pages than the pool holds, then committing. */
+    @Test public void testCommitStolenPages()
+            throws IOException, DbException, TransactionAbortedException {
+        HeapFile f = createTable();
+
+        Transaction t = new Transaction();
+        t.start();
+        assertEquals(ROWS, deleteAll(f, t));
+        t.commit();
+
+        t = new Transaction();
+        t.start();
+        assertEquals(0, count(f, t));
+        t.commit();
+    }
+
+    /** A committed insert that only made it to the log survives a crash. */
+    @Test public void testNoForceCommitRecovers()
+            throws IOException, DbException, TransactionAbortedException {
+        File file = new File("stealnoforce.db");
+        file.delete();
+        HeapFile hf = Utility.createEmptyHeapFile(file.getAbsolutePath(), 2);
+        Database.getBufferPool().setStealNoForce(true);
+
+        Transaction t = new Transaction();
+        t.start();
+        EvictionTest.insertRow(hf, t);
+        t.commit();
+
+        // Crash, then recover from the log.
+        Database.reset();
+        hf = Utility.openHeapFile(2, file);
+        Database.getLogFile().recover();
+
+        t = new Transaction();
+        t.start();
+        assertTrue(EvictionTest.findMagicTuple(hf, t));
+        t.commit();
+        file.delete();
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(StealNoForceTest.class);
+    }
+}
@@ -81,6 +81,8 @@ public class SystemTestUtil {
         // Convert the tuples list to a heap file and open it
         File temp = File.createTempFile("table", ".dat");
         temp.deleteOnExit();
+        // And the free-space map of the table, once it has one.
+        new File(temp.getPath() + ".fsm").deleteOnExit();
         HeapFileEncoder.convert(tuples, temp, BufferPool.getPageSize(), columns);
         return temp;
     }
@@ -146,6 +148,34 @@ public class SystemTestUtil {
         }
     }
 
+    /**
+     * Reads the first pages of a table through the specified BufferPool,
+     * returning the number of misses.
+     */
+    public static long touch(BufferPool bp, HeapFile f, int pages)
+            throws DbException, TransactionAbortedException, IOException {
+        long misses = bp.getMissCount();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < pages; ++i)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        return bp.getMissCount() - misses;
+    }
+
+    /**
+     * Reads the first pages of a table, which must all miss, scans another
+     * table, matching its tuples, and reads the pages again. Returns the
+     * number of misses of the second reading, i.e. of the pages the scan
+     * evicted.
+     */
+    public static long scanAndTouch(BufferPool bp, HeapFile f, int pages,
+            DbFile scanned, List<ArrayList<Integer>> tuples)
+            throws DbException, TransactionAbortedException, IOException {
+        Assert.assertEquals(pages, touch(bp, f, pages));
+        matchTuples(scanned, tuples);
+        return touch(bp, f, pages);
+    }
+
     /**
      * Returns number of bytes of RAM used by JVM after calling System.gc many times.
      * @return amount of RAM (in bytes) used by JVM
@@ -0,0 +1,121 @@
+package simpledb.systemtest;
+
+import java.io.File;
+
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that the pages cached by a BufferPool are loaded back by the next
+ * one on a warm restart.
+ */
+public class WarmRestartTest extends SimpleDbTestBase {
+    private static final int TABLE_PAGES = 10;
+
+    private static BufferPool start(int pages, File list) throws Exception {
+        BufferPool bp = Database.resetBufferPool(pages);
+        bp.startWarmRestart(list);
+        while (!bp.isWarm())
+            Thread.sleep(10);
+        return bp;
+    }
+
+    private static File listFile() throws Exception {
+        File list = File.createTempFile("hotpages", ".dat");
+        list.delete();
+        list.deleteOnExit();
+        return list;
+    }
+
+    /** Reads the specified pages, returning the number of misses. */
+    private static long read(BufferPool bp, HeapFile table, int... pageNos)
+            throws Exception {
+        long misses = bp.getMissCount();
+        TransactionId tid = new TransactionId();
+        for (int pageNo : pageNos)
+            bp.getPage(tid, new HeapPageId(table.getId(), pageNo), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        return bp.getMissCount() - misses;
+    }
+
+    @Test public void testRestart() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        File list = listFile();
+
+        BufferPool bp = start(20, list);
+        assertEquals(0, bp.getWarmedCount());
+        assertEquals(3, read(bp, table, 7, 2, 5));
+        bp.saveHotPages();
+        assertTrue(list.exists());
+
+        bp = start(20, list);
+        assertEquals(3, bp.getWarmedCount());
+        assertEquals(0, read(bp, table, 2, 5, 7));
+        assertEquals(1, read(bp, table, 3));
+    }
+
+    /** LogFile.shutdown saves the list. */
+    @Test public void testLogShutdown() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        File list = listFile();
+
+        BufferPool bp = start(20, list);
+        read(bp, table, 4);
+        Database.getLogFile().shutdown();
+
+        bp = start(20, list);
+        assertEquals(1, bp.getWarmedCount());
+        assertEquals(0, read(bp, table, 4));
+    }
+
+    /** Only what fits is loaded, and pages of unknown tables are skipped. */
+    @Test public void testSmallerPool() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        HeapFile other = SystemTestUtil.createRandomHeapFile(2, 504, null, null);
+        File list = listFile();
+
+        BufferPool bp = start(20, list);
+        read(bp, other, 0);
+        read(bp, table, 0, 1, 2, 3, 4, 5, 6, 7);
+        bp.saveHotPages();
+
+        Database.getCatalog().clear();
+        Database.getCatalog().addTable(table, "table");
+        bp = start(4, list);
+        assertEquals(4, bp.getWarmedCount());
+        // Loaded in page order.
+        assertEquals(0, read(bp, table, 0, 1, 2, 3));
+    }
+
+    /**
+     * Only the hottest pages are saved: those read again, ranked first by
+     * either policy, and not those read once.
+     */
+    @Test public void testHottest() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        EvictionPolicy[] policies = { new ClockEvictionPolicy(), new LruKEvictionPolicy() };
+
+        for (EvictionPolicy policy : policies) {
+            File list = listFile();
+            BufferPool bp = Database.resetBufferPool(new BufferPool(8, policy));
+            bp.startWarmRestart(list);
+            while (!bp.isWarm())
+                Thread.sleep(10);
+            read(bp, table, 0, 1, 2, 3, 4, 5, 6, 7);
+            read(bp, table, 1, 3, 5, 7);
+            bp.saveHotPages();
+
+            bp = start(20, list);
+            assertEquals(4, bp.getWarmedCount());
+            assertEquals(0, read(bp, table, 1, 3, 5, 7));
+            assertEquals(4, read(bp, table, 0, 2, 4, 6));
+        }
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(WarmRestartTest.class);
+    }
+}